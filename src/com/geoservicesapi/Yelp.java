@@ -16,6 +16,10 @@
 
 package com.geoservicesapi;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import com.geoservicesapi.YelpApi;
 
 import org.scribe.builder.ServiceBuilder;
@@ -27,6 +31,11 @@ import org.scribe.oauth.OAuthService;
 
 public class Yelp {
 
+	/** Most businesses the Search API returns for one request. */
+	public static final int MAX_LIMIT = 20;
+	/** Largest search radius in meters the Search API accepts. */
+	public static final int MAX_RADIUS = 40000;
+
 	OAuthService service;
 	Token accessToken;
 	
@@ -44,21 +53,24 @@ public class Yelp {
 	}
 
 	/**
-	   * Creates and sends a request to the Search API by term and location.
+	   * Creates and sends a request to the Search API with the given parameters.
 	   * <p>
 	   * See <a href="http://www.yelp.com/developers/documentation/v2/search_api">Yelp Search API V2</a>
 	   * for more info.
 	   * 
-	   * @param term <tt>String</tt> of the search term to be queried
-	   * @param latitude <tt>double</tt> of the location
-	   * @param longitude <tt>double</tt> of the location
+	   * @param parameters query parameters of the search, such as <tt>term</tt>, <tt>ll</tt> or <tt>bounds</tt>
+	   * @param timeoutMillis connect and read timeout in milliseconds, or 0 for none
 	   * @return <tt>String</tt> JSON Response
 	   */
-	private String search(String term, double latitude, double longitude) {
+	private String search(Map<String, String> parameters, int timeoutMillis) {
 		OAuthRequest request = new OAuthRequest(Verb.GET, "http://api.yelp.com/v2/search");
-		request.addQuerystringParameter("term", term);
-		request.addQuerystringParameter("ll", latitude + "," + longitude);		
-		request.addQuerystringParameter("limit", "20");
+		if(timeoutMillis > 0) {
+			request.setConnectTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+			request.setReadTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		for(Map.Entry<String, String> parameter : parameters.entrySet()) {
+			request.addQuerystringParameter(parameter.getKey(), parameter.getValue());
+		}
 		this.service.signRequest(this.accessToken, request);
 		Response response = request.send();
 		return response.getBody();
@@ -76,11 +88,124 @@ public class Yelp {
 	   * @return <tt>String</tt> JSON Response
 	   */
 	public static String getResponse(String consumerKey, String consumerSecret, String token, String tokenSecret, double latitude, double longitude) {
+		return getResponse(consumerKey, consumerSecret, token, tokenSecret, latitude, longitude, 0);
+	}
+	
+	/**
+	   * Creates and sends a request to the Search API by term and location, giving up after a timeout.
+	   * 
+	   * @param consumerKey Consumer key
+	   * @param consumerSecret Consumer secret
+	   * @param token Token
+	   * @param tokenSecret Token secret
+	   * @param latitude <tt>double</tt> of the location
+	   * @param longitude <tt>double</tt> of the location
+	   * @param timeoutMillis connect and read timeout in milliseconds, or 0 for none
+	   * @return <tt>String</tt> JSON Response
+	   */
+	public static String getResponse(String consumerKey, String consumerSecret, String token, String tokenSecret, double latitude, double longitude, int timeoutMillis) {
+		return getResponse(consumerKey, consumerSecret, token, tokenSecret, "restaurants", latitude, longitude, timeoutMillis);
+	}
+	
+	/**
+	   * Creates and sends a request to the Search API by term and location, giving up after a timeout.
+	   * 
+	   * @param consumerKey Consumer key
+	   * @param consumerSecret Consumer secret
+	   * @param token Token
+	   * @param tokenSecret Token secret
+	   * @param term <tt>String</tt> of the search term to be queried, such as a category
+	   * @param latitude <tt>double</tt> of the location
+	   * @param longitude <tt>double</tt> of the location
+	   * @param timeoutMillis connect and read timeout in milliseconds, or 0 for none
+	   * @return <tt>String</tt> JSON Response
+	   */
+	public static String getResponse(String consumerKey, String consumerSecret, String token, String tokenSecret, String term, double latitude, double longitude, int timeoutMillis) {
+		return getResponse(consumerKey, consumerSecret, token, tokenSecret, searchAround(term, latitude, longitude), timeoutMillis);
+	}
+	
+	/**
+	   * Creates and sends a request to the Search API with the given parameters, giving up after a timeout.
+	   * 
+	   * @param consumerKey Consumer key
+	   * @param consumerSecret Consumer secret
+	   * @param token Token
+	   * @param tokenSecret Token secret
+	   * @param parameters query parameters of the search, in order
+	   * @param timeoutMillis connect and read timeout in milliseconds, or 0 for none
+	   * @return <tt>String</tt> JSON Response
+	   */
+	public static String getResponse(String consumerKey, String consumerSecret, String token, String tokenSecret, Map<String, String> parameters, int timeoutMillis) {
 		Yelp yelp = new Yelp(consumerKey, consumerSecret, token, tokenSecret);
-		
-		//Change "restaurants" to anything you want to search
-		String response = yelp.search("restaurants", latitude, longitude);
-		
-		return response;
+		return yelp.search(parameters, timeoutMillis);
+	}
+	
+	/**
+	   * Parameters of a search by term around a location, returning a full page of results.
+	   * 
+	   * @param term <tt>String</tt> of the search term to be queried
+	   * @param latitude <tt>double</tt> of the location
+	   * @param longitude <tt>double</tt> of the location
+	   * @return The query parameters
+	   */
+	public static Map<String, String> searchAround(String term, double latitude, double longitude) {
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put("term", term);
+		parameters.put("ll", latitude + "," + longitude);
+		parameters.put("limit", String.valueOf(MAX_LIMIT));
+		return parameters;
+	}
+	
+	/**
+	   * Parameters of a search by term around a coordinate, returning one page of results.
+	   * 
+	   * @param term <tt>String</tt> of the search term to be queried
+	   * @param latitude <tt>double</tt> of the location
+	   * @param longitude <tt>double</tt> of the location
+	   * @param offset <tt>int</tt> number of results before the page
+	   * @param limit <tt>int</tt> number of results in the page, at most {@link #MAX_LIMIT}
+	   * @return The query parameters
+	   */
+	public static Map<String, String> searchAround(String term, double latitude, double longitude, int offset, int limit) {
+		Map<String, String> parameters = searchAround(term, latitude, longitude);
+		parameters.put("limit", String.valueOf(limit));
+		if(offset > 0) {
+			parameters.put("offset", String.valueOf(offset));
+		}
+		return parameters;
+	}
+	
+	/**
+	   * Parameters of a search by term within a radius of a location, nearest first.
+	   * 
+	   * @param term <tt>String</tt> of the search term to be queried
+	   * @param latitude <tt>double</tt> of the location
+	   * @param longitude <tt>double</tt> of the location
+	   * @param radius <tt>double</tt> meters from the location, at most {@link #MAX_RADIUS}
+	   * @return The query parameters
+	   */
+	public static Map<String, String> searchWithinRadius(String term, double latitude, double longitude, double radius) {
+		Map<String, String> parameters = searchAround(term, latitude, longitude);
+		parameters.put("radius_filter", String.valueOf((int) Math.ceil(Math.min(radius, MAX_RADIUS))));
+		parameters.put("sort", "1");
+		return parameters;
+	}
+	
+	/**
+	   * Parameters of a search by term within a bounding box, returning a full page of results.
+	   * 
+	   * @param term <tt>String</tt> of the search term to be queried
+	   * @param south <tt>double</tt> latitude of the southwest corner
+	   * @param west <tt>double</tt> longitude of the southwest corner
+	   * @param north <tt>double</tt> latitude of the northeast corner
+	   * @param east <tt>double</tt> longitude of the northeast corner
+	   * @return The query parameters
+	   */
+	public static Map<String, String> searchWithin(String term, double south, double west, double north, double east) {
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put("term", term);
+		parameters.put("bounds", south + "," + west + "|" + north + "," + east);
+		parameters.put("limit", String.valueOf(MAX_LIMIT));
+		return parameters;
 	}
 }
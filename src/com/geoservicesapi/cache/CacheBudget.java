@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * CacheBudget is a memory budget in bytes shared by any number of {@link ServiceCache}s.
+ * <p>
+ * When the combined weight of all caches exceeds the budget, entries are evicted in
+ * Greedy-Dual-Size-Frequency order: an entry's priority is
+ * <code>inflation + frequency * cost / weight</code>, where cost is how long the entry took to
+ * load. Small, popular entries that were expensive to fetch are kept; large, rarely used ones go
+ * first, whichever cache they belong to. The inflation value rises to the priority of each
+ * evicted entry so that entries which were popular long ago age out.
+ * <p>
+ * All bookkeeping of the caches attached to a budget is done while holding the budget's lock.
+ */
+public class CacheBudget {
+
+	static final Comparator<Node> ORDER = new Comparator<Node>() {
+		public int compare(Node a, Node b) {
+			int c = Double.compare(a.priority, b.priority);
+			return c != 0 ? c : Long.compare(a.sequence, b.sequence);
+		}
+	};
+
+	// Declared after ORDER, which its queue needs at construction.
+	private static final CacheBudget SHARED = new CacheBudget(64L * 1024 * 1024);
+
+	private final TreeSet<Node> queue = new TreeSet<Node>(ORDER);
+	private volatile long maxWeight;
+	private long weight;
+	private double inflation;
+	private long sequence;
+
+    /**
+     * Construct a CacheBudget.
+     *
+     * @param maxWeight
+     *            Maximum combined weight in bytes of all attached caches.
+     */
+	public CacheBudget(long maxWeight) {
+		if(maxWeight <= 0) {
+			throw new IllegalArgumentException("maxWeight must be positive");
+		}
+		this.maxWeight = maxWeight;
+	}
+
+    /**
+     * Get the budget used by services that are not given one explicitly (64 MB).
+     *
+     * @return The process-wide budget.
+     */
+	public static CacheBudget shared() {
+		return SHARED;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+    /**
+     * Change the budget, evicting entries immediately if it shrinks.
+     *
+     * @param maxWeight
+     *            New maximum combined weight in bytes.
+     */
+	public void setMaxWeight(long maxWeight) {
+		if(maxWeight <= 0) {
+			throw new IllegalArgumentException("maxWeight must be positive");
+		}
+		synchronized(this) {
+			this.maxWeight = maxWeight;
+			evict();
+		}
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/* Called with the lock held. */
+	void add(Node node) {
+		node.sequence = sequence++;
+		node.priority = inflation + node.frequency * node.cost / node.weight;
+		queue.add(node);
+		weight += node.weight;
+		node.owner.added(node);
+		evict();
+	}
+
+	/* Called with the lock held. */
+	void touch(Node node) {
+		queue.remove(node);
+		node.owner.reordering(node);
+		node.frequency++;
+		node.sequence = sequence++;
+		node.priority = inflation + node.frequency * node.cost / node.weight;
+		queue.add(node);
+		node.owner.reordered(node);
+	}
+
+	/* Called with the lock held. */
+	void remove(Node node) {
+		if(queue.remove(node)) {
+			weight -= node.weight;
+			node.owner.removed(node, false);
+		}
+	}
+
+	/* Called with the lock held; evicts within one cache until it fits its own limit. */
+	void evictFrom(ServiceCache<?, ?> cache) {
+		Node victim;
+		while(cache.overLimit() && (victim = cache.lowest()) != null) {
+			evict(victim);
+		}
+	}
+
+	private void evict() {
+		while(weight > maxWeight && !queue.isEmpty()) {
+			evict(queue.first());
+		}
+	}
+
+	private void evict(Node victim) {
+		queue.remove(victim);
+		weight -= victim.weight;
+		inflation = Math.max(inflation, victim.priority);
+		victim.owner.removed(victim, true);
+	}
+
+	/**
+	 * Bookkeeping state of one cache entry.
+	 */
+	abstract static class Node {
+		final ServiceCache<?, ?> owner;
+		final long weight;
+		final double cost;
+		long frequency = 1;
+		double priority;
+		long sequence;
+
+		Node(ServiceCache<?, ?> owner, long weight, double cost) {
+			this.owner = owner;
+			this.weight = Math.max(1, weight);
+			this.cost = Math.max(1, cost);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+/**
+ * How a {@link ServiceCache} lookup was answered.
+ */
+public enum CacheOutcome {
+
+	/** No cache was consulted. */
+	NONE,
+
+	/** A fresh entry was found. */
+	HIT,
+
+	/** The value was loaded by the calling thread. */
+	MISS,
+
+	/** The calling thread waited for a load started by another thread. */
+	COALESCED,
+
+	/** The reload failed and an expired entry was returned. */
+	STALE
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.geoservicesapi.metrics.LatencyHistogram;
+
+/**
+ * CacheStats counts the activity of one {@link ServiceCache}.
+ */
+public class CacheStats {
+
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder loadSuccesses = new LongAdder();
+	final LongAdder loadFailures = new LongAdder();
+	final LongAdder evictions = new LongAdder();
+	final LongAdder coalescedWaits = new LongAdder();
+	final LongAdder staleServes = new LongAdder();
+	final LatencyHistogram loadTime = new LatencyHistogram();
+
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+    /**
+     * Get the fraction of lookups that were served from the cache.
+     *
+     * @return The hit rate between 0 and 1, or 1 if there were no lookups.
+     */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 1.0 : (double) hitCount / total;
+	}
+
+    /**
+     * Get the number of loads that completed, whether or not their value was cached.
+     *
+     * @return The load success count.
+     */
+	public long getLoadSuccessCount() {
+		return loadSuccesses.sum();
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailures.sum();
+	}
+
+	public double getLoadFailureRate() {
+		long failures = loadFailures.sum();
+		long total = failures + loadSuccesses.sum();
+		return total == 0 ? 0.0 : (double) failures / total;
+	}
+
+    /**
+     * Get the number of entries removed to stay within the weight limits.
+     *
+     * @return The eviction count.
+     */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+    /**
+     * Get the number of misses that waited for another thread's load of the same key.
+     *
+     * @return The coalesced wait count.
+     */
+	public long getCoalescedWaitCount() {
+		return coalescedWaits.sum();
+	}
+
+    /**
+     * Get the number of expired entries served because their reload failed.
+     *
+     * @return The stale serve count.
+     */
+	public long getStaleServeCount() {
+		return staleServes.sum();
+	}
+
+	public LatencyHistogram getLoadTime() {
+		return loadTime;
+	}
+}
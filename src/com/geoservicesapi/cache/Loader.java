@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+/**
+ * Loader computes the value of a cache entry on a miss.
+ */
+public interface Loader<K, V> {
+
+    /**
+     * Load the value of a key.
+     *
+     * @param key
+     *            Key to load.
+     * @return The value, or null if the result should not be cached.
+     * @throws Exception
+     *             If the value could not be loaded.
+     */
+	V load(K key) throws Exception;
+}
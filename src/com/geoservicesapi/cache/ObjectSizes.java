@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * ObjectSizes gives rough retained-size estimates for the values kept in service caches,
+ * assuming a 64-bit JVM with compressed references.
+ */
+public final class ObjectSizes {
+
+	/** Header of a plain object. */
+	public static final long OBJECT = 16;
+
+	/** Header of an array. */
+	public static final long ARRAY = 16;
+
+	/** Fixed cost of a cache entry: the entry itself plus its map and queue nodes. */
+	public static final long ENTRY = 112;
+
+	private ObjectSizes() {
+	}
+
+	public static long of(String s) {
+		if(s == null) {
+			return 0;
+		}
+		// String object plus its backing array, one byte per char for latin-1 text.
+		return 24 + align(ARRAY + s.length());
+	}
+
+	public static long of(double[] a) {
+		return a == null ? 0 : align(ARRAY + 8L * a.length);
+	}
+
+	public static long of(int[] a) {
+		return a == null ? 0 : align(ARRAY + 4L * a.length);
+	}
+
+	public static long of(String[] a) {
+		if(a == null) {
+			return 0;
+		}
+		long size = align(ARRAY + 4L * a.length);
+		for(String s : a) {
+			size += of(s);
+		}
+		return size;
+	}
+
+    /**
+     * Estimate the size of a JSON value tree.
+     *
+     * @param value
+     *            A JSONObject, JSONArray, String, Number or Boolean.
+     * @return The estimated size in bytes.
+     */
+	public static long ofJSON(Object value) {
+		if(value instanceof JSONObject) {
+			JSONObject object = (JSONObject) value;
+			// JSONObject wraps a HashMap: table plus one 32 byte node per key.
+			long size = OBJECT + 48 + align(ARRAY + 4L * Math.max(16, object.length() * 2));
+			Iterator<?> keys = object.keys();
+			while(keys.hasNext()) {
+				String key = (String) keys.next();
+				size += 32 + of(key) + ofJSON(object.opt(key));
+			}
+			return size;
+		} else if(value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			long size = OBJECT + 24 + align(ARRAY + 4L * Math.max(10, array.length()));
+			for(int i=0; i<array.length(); i++) {
+				size += ofJSON(array.opt(i));
+			}
+			return size;
+		} else if(value instanceof String) {
+			return of((String) value);
+		} else if(value instanceof Boolean) {
+			return 0;
+		}
+		return value == null ? 0 : OBJECT + 8;
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.geoservicesapi.metrics.Metrics;
+
+/**
+ * ServiceCache is a weight-bounded cache of upstream results.
+ * <p>
+ * Entries are charged against a {@link CacheBudget}, optionally shared with other caches, and
+ * against an optional per-cache limit. Concurrent misses on the same key are coalesced into a
+ * single load, except that a caller never waits for a load started at a lower priority. An
+ * entry older than the time-to-live is reloaded on the next request, but is still served if
+ * that reload fails.
+ * <p>
+ * Every cache keeps {@link CacheStats} and is registered with the installed
+ * {@link com.geoservicesapi.metrics.MetricsSink} when it is created.
+ */
+public class ServiceCache<K, V> {
+
+	private static final ThreadLocal<CacheOutcome> LAST_OUTCOME = new ThreadLocal<CacheOutcome>();
+
+	private final String name;
+	private final CacheBudget budget;
+	private final Weigher<? super K, ? super V> weigher;
+	private final long ttlNanos;
+	private final long maxWeight;
+
+	/* Guarded by the budget's lock. */
+	private final HashMap<K, Entry<K, V>> map = new HashMap<K, Entry<K, V>>();
+	private final TreeSet<CacheBudget.Node> queue = new TreeSet<CacheBudget.Node>(CacheBudget.ORDER);
+	private long weight;
+
+	private final ConcurrentHashMap<K, Load<V>> loading = new ConcurrentHashMap<K, Load<V>>();
+	private final CacheStats stats = new CacheStats();
+
+    /**
+     * Construct a ServiceCache limited only by its budget.
+     *
+     * @param name
+     *            Name of the cache, used in metrics.
+     * @param budget
+     *            Memory budget the entries are charged against.
+     * @param weigher
+     *            Size estimator for entries.
+     * @param ttlMillis
+     *            Time-to-live of an entry in milliseconds, or 0 for entries that never expire.
+     */
+	public ServiceCache(String name, CacheBudget budget, Weigher<? super K, ? super V> weigher, long ttlMillis) {
+		this(name, budget, weigher, ttlMillis, 0);
+	}
+
+    /**
+     * Construct a ServiceCache.
+     *
+     * @param name
+     *            Name of the cache, used in metrics.
+     * @param budget
+     *            Memory budget the entries are charged against.
+     * @param weigher
+     *            Size estimator for entries.
+     * @param ttlMillis
+     *            Time-to-live of an entry in milliseconds, or 0 for entries that never expire.
+     * @param maxWeight
+     *            Limit in bytes for this cache alone, or 0 to be limited only by the budget.
+     */
+	public ServiceCache(String name, CacheBudget budget, Weigher<? super K, ? super V> weigher, long ttlMillis, long maxWeight) {
+		this.name = name;
+		this.budget = budget;
+		this.weigher = weigher;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.maxWeight = maxWeight;
+		Metrics.sink().registerCache(this);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public CacheBudget getBudget() {
+		return budget;
+	}
+
+	public CacheStats getStats() {
+		return stats;
+	}
+
+    /**
+     * Get how the calling thread's most recent lookup in any cache was answered, for
+     * diagnostics that cannot change the signature of the lookup.
+     *
+     * @return The outcome, or {@link CacheOutcome#NONE} if this thread has not used a cache.
+     */
+	public static CacheOutcome lastOutcome() {
+		CacheOutcome outcome = LAST_OUTCOME.get();
+		return outcome == null ? CacheOutcome.NONE : outcome;
+	}
+
+    /**
+     * Reset the outcome reported by {@link #lastOutcome()} for the calling thread.
+     */
+	public static void clearLastOutcome() {
+		LAST_OUTCOME.remove();
+	}
+
+    /**
+     * Get a fresh value without loading it.
+     *
+     * @param key
+     *            Key to look up.
+     * @return The value, or null if the key is absent or expired.
+     */
+	public V getIfPresent(K key) {
+		synchronized(budget) {
+			Entry<K, V> entry = map.get(key);
+			if(entry == null || isExpired(entry, System.nanoTime())) {
+				stats.misses.increment();
+				LAST_OUTCOME.set(CacheOutcome.MISS);
+				return null;
+			}
+			budget.touch(entry);
+			stats.hits.increment();
+			LAST_OUTCOME.set(CacheOutcome.HIT);
+			return entry.value;
+		}
+	}
+
+    /**
+     * Get a value, loading it on a miss. If another thread is already loading the same key,
+     * wait for its result instead of loading again.
+     *
+     * @param key
+     *            Key to look up.
+     * @param loader
+     *            Computes the value on a miss.
+     * @return The value, or null if the loader returned null.
+     * @throws Exception
+     *             The exception thrown by the loader, if no stale value could be served instead.
+     */
+	public V get(K key, Loader<? super K, V> loader) throws Exception {
+		return get(key, loader, Long.MAX_VALUE);
+	}
+
+    /**
+     * Get a value, loading it on a miss, but wait at most the given time for a load already
+     * started by another thread. A load run by the calling thread is bounded by the loader
+     * itself.
+     *
+     * @param key
+     *            Key to look up.
+     * @param loader
+     *            Computes the value on a miss.
+     * @param timeoutNanos
+     *            Longest wait for another thread's load.
+     * @return The value, or null if the loader returned null.
+     * @throws TimeoutException
+     *             If the other thread's load did not finish in time and no stale value could be
+     *             served instead.
+     * @throws Exception
+     *             The exception thrown by the loader, if no stale value could be served instead.
+     */
+	public V get(K key, Loader<? super K, V> loader, long timeoutNanos) throws Exception {
+		return get(key, loader, timeoutNanos, 0);
+	}
+
+    /**
+     * Get a value, loading it on a miss, and wait for a load already started by another thread
+     * only if that load was started at the same or a higher priority. A lower-priority load may be
+     * held back by the lower-priority traffic of its caller, so the calling thread loads the value
+     * itself, and later callers at its priority wait for that load instead.
+     *
+     * @param key
+     *            Key to look up.
+     * @param loader
+     *            Computes the value on a miss.
+     * @param timeoutNanos
+     *            Longest wait for another thread's load.
+     * @param priority
+     *            Priority of the calling thread's load; higher values are more urgent.
+     * @return The value, or null if the loader returned null.
+     * @throws TimeoutException
+     *             If the other thread's load did not finish in time and no stale value could be
+     *             served instead.
+     * @throws Exception
+     *             The exception thrown by the loader, if no stale value could be served instead.
+     */
+	public V get(final K key, final Loader<? super K, V> loader, long timeoutNanos, int priority) throws Exception {
+		Entry<K, V> stale;
+		synchronized(budget) {
+			stale = map.get(key);
+			if(stale != null) {
+				budget.touch(stale);
+				if(!isExpired(stale, System.nanoTime())) {
+					stats.hits.increment();
+					LAST_OUTCOME.set(CacheOutcome.HIT);
+					return stale.value;
+				}
+			}
+		}
+		stats.misses.increment();
+
+		FutureTask<V> task = new FutureTask<V>(new java.util.concurrent.Callable<V>() {
+			public V call() throws Exception {
+				return loader.load(key);
+			}
+		});
+		Load<V> load = new Load<V>(task, priority);
+		Load<V> running;
+		while((running = loading.putIfAbsent(key, load)) != null && running.priority < priority) {
+			if(loading.replace(key, running, load)) {
+				running = null;
+				break;
+			}
+		}
+		if(running != null) {
+			stats.coalescedWaits.increment();
+			LAST_OUTCOME.set(CacheOutcome.COALESCED);
+			try {
+				return running.task.get(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+			} catch(ExecutionException e) {
+				if(stale != null) {
+					stats.staleServes.increment();
+					LAST_OUTCOME.set(CacheOutcome.STALE);
+					return stale.value;
+				}
+				throw unwrap(e);
+			} catch(TimeoutException e) {
+				if(stale != null) {
+					stats.staleServes.increment();
+					LAST_OUTCOME.set(CacheOutcome.STALE);
+					return stale.value;
+				}
+				throw e;
+			}
+		}
+
+		LAST_OUTCOME.set(CacheOutcome.MISS);
+		long start = System.nanoTime();
+		try {
+			task.run();
+			V value;
+			try {
+				value = task.get();
+			} finally {
+				stats.loadTime.record(System.nanoTime() - start);
+			}
+			stats.loadSuccesses.increment();
+			if(value != null) {
+				put(key, value, System.nanoTime() - start);
+			}
+			return value;
+		} catch(ExecutionException e) {
+			stats.loadFailures.increment();
+			if(stale != null) {
+				stats.staleServes.increment();
+				LAST_OUTCOME.set(CacheOutcome.STALE);
+				return stale.value;
+			}
+			throw unwrap(e);
+		} finally {
+			loading.remove(key, load);
+		}
+	}
+
+    /**
+     * Add or replace a value.
+     *
+     * @param key
+     *            Key of the entry.
+     * @param value
+     *            Value of the entry.
+     */
+	public void put(K key, V value) {
+		put(key, value, 0);
+	}
+
+    /**
+     * Add or replace a value that was computed outside of {@link #get(Object, Loader)}.
+     *
+     * @param key
+     *            Key of the entry.
+     * @param value
+     *            Value of the entry.
+     * @param costNanos
+     *            How long the value took to compute, used to rank it for eviction.
+     */
+	public void put(K key, V value, long costNanos) {
+		long entryWeight = ObjectSizes.ENTRY + weigher.weigh(key, value);
+		// Cost is the load time in microseconds, so a 200 ms route outranks a 20 ms geocode.
+		Entry<K, V> entry = new Entry<K, V>(this, key, value, entryWeight, costNanos / 1000.0, System.nanoTime());
+		synchronized(budget) {
+			Entry<K, V> old = map.get(key);
+			if(old != null) {
+				entry.frequency += old.frequency;
+				budget.remove(old);
+			}
+			map.put(key, entry);
+			budget.add(entry);
+			budget.evictFrom(this);
+		}
+	}
+
+	public void invalidate(K key) {
+		synchronized(budget) {
+			Entry<K, V> entry = map.get(key);
+			if(entry != null) {
+				budget.remove(entry);
+			}
+		}
+	}
+
+	public void clear() {
+		synchronized(budget) {
+			while(!queue.isEmpty()) {
+				budget.remove(queue.first());
+			}
+		}
+	}
+
+	public int size() {
+		synchronized(budget) {
+			return map.size();
+		}
+	}
+
+	public long weight() {
+		synchronized(budget) {
+			return weight;
+		}
+	}
+
+	private boolean isExpired(Entry<K, V> entry, long now) {
+		return ttlNanos > 0 && now - entry.loadedAt > ttlNanos;
+	}
+
+	private static Exception unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if(cause instanceof Exception) {
+			return (Exception) cause;
+		}
+		throw (Error) cause;
+	}
+
+	/* Budget callbacks, called with the budget's lock held. */
+
+	boolean overLimit() {
+		return maxWeight > 0 && weight > maxWeight;
+	}
+
+	CacheBudget.Node lowest() {
+		return queue.isEmpty() ? null : queue.first();
+	}
+
+	void added(CacheBudget.Node node) {
+		queue.add(node);
+		weight += node.weight;
+	}
+
+	void reordering(CacheBudget.Node node) {
+		queue.remove(node);
+	}
+
+	void reordered(CacheBudget.Node node) {
+		queue.add(node);
+	}
+
+	void removed(CacheBudget.Node node, boolean evicted) {
+		@SuppressWarnings("unchecked")
+		Entry<K, V> entry = (Entry<K, V>) node;
+		if(queue.remove(entry)) {
+			weight -= entry.weight;
+			if(evicted) {
+				stats.evictions.increment();
+			}
+		}
+		if(map.get(entry.key) == entry) {
+			map.remove(entry.key);
+		}
+	}
+
+	/**
+	 * A load in progress, with the priority of the caller that started it.
+	 */
+	private static final class Load<V> {
+		final FutureTask<V> task;
+		final int priority;
+
+		Load(FutureTask<V> task, int priority) {
+			this.task = task;
+			this.priority = priority;
+		}
+	}
+
+	private static final class Entry<K, V> extends CacheBudget.Node {
+		final K key;
+		final V value;
+		final long loadedAt;
+
+		Entry(ServiceCache<K, V> owner, K key, V value, long weight, double cost, long loadedAt) {
+			super(owner, weight, cost);
+			this.key = key;
+			this.value = value;
+			this.loadedAt = loadedAt;
+		}
+	}
+}
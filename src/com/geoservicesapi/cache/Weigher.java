@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+/**
+ * Weigher estimates the heap cost in bytes of a cache entry.
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Estimate the retained size of an entry.
+     *
+     * @param key
+     *            Key of the entry.
+     * @param value
+     *            Value of the entry.
+     * @return The estimated size in bytes, including the key.
+     */
+	long weigh(K key, V value);
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+import java.util.Arrays;
+
+/**
+ * CorridorIndex finds where points lie relative to a {@link RouteShape}: how far they are from
+ * the route and how far along it their nearest point is, for points within a fixed width of
+ * the route.
+ * <p>
+ * The segments of the route are indexed in a uniform grid of cells as wide as the corridor,
+ * on an equirectangular projection around the mean latitude of the route. Every segment is
+ * registered in the cells it passes through, as one sorted array of packed cell and segment
+ * numbers, so a lookup binary searches the few cells around a point and measures only the
+ * segments found there. Lookups allocate nothing but their result, and an index is safe for
+ * concurrent use once built.
+ */
+public final class CorridorIndex {
+
+	/* Bits of a packed entry for each cell coordinate, and for the segment. */
+	private static final int CELL_BITS = 21;
+	private static final int SEGMENT_BITS = 64 - 2 * CELL_BITS;
+	/* Cells along each axis; one bit short of the packing so that entries stay positive. */
+	private static final long MAX_CELLS = 1L << (CELL_BITS - 1);
+
+	private final RouteShape shape;
+	private final double width;
+	private final double cell;
+	private final double metersPerMicro;
+	private final double xScale;
+	private final double minX;
+	private final double minY;
+	private final long[] entries;
+
+    /**
+     * Construct a CorridorIndex.
+     *
+     * @param shape
+     *            The route.
+     * @param width
+     *            Largest distance in meters from the route of the points to be found.
+     */
+	public CorridorIndex(RouteShape shape, double width) {
+		int count = shape.getPointCount();
+		if(count - 1 >= 1L << SEGMENT_BITS) {
+			throw new IllegalArgumentException("Too many points in shape");
+		}
+		this.shape = shape;
+		this.width = width;
+
+		long sum = 0;
+		for(int i = 0; i < count; i++) {
+			sum += shape.lat(i);
+		}
+		this.metersPerMicro = Math.toRadians(1e-6) * GreatCircle.EARTH_RADIUS;
+		this.xScale = metersPerMicro * Math.cos(Math.toRadians(sum / (count * 1e6)));
+		double lowX = Double.POSITIVE_INFINITY, lowY = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < count; i++) {
+			lowX = Math.min(lowX, x(i));
+			lowY = Math.min(lowY, y(i));
+			highX = Math.max(highX, x(i));
+			highY = Math.max(highY, y(i));
+		}
+		// Lookups reach two cells beyond the route; widen cells if the grid would not fit the packing.
+		double size = Math.max(width, 1);
+		while(Math.max(highX - lowX, highY - lowY) / size + 5 >= MAX_CELLS) {
+			size *= 2;
+		}
+		this.cell = size;
+		this.minX = lowX - 2 * size;
+		this.minY = lowY - 2 * size;
+
+		// Walk each segment in steps of half a cell, registering the cell of every step.
+		long[] packed = new long[Math.max(16, 2 * count)];
+		int used = 0;
+		for(int s = 0; s + 1 < count; s++) {
+			double ax = x(s), ay = y(s), bx = x(s + 1), by = y(s + 1);
+			int steps = (int) Math.ceil(Math.hypot(bx - ax, by - ay) / (size / 2));
+			long last = -1;
+			for(int k = 0; k <= steps; k++) {
+				double t = steps == 0 ? 0 : (double) k / steps;
+				long key = key(cellOf(ax + (bx - ax) * t, minX), cellOf(ay + (by - ay) * t, minY));
+				if(key == last) {
+					continue;
+				}
+				last = key;
+				if(used == packed.length) {
+					packed = Arrays.copyOf(packed, used * 2);
+				}
+				packed[used++] = key << SEGMENT_BITS | s;
+			}
+		}
+		Arrays.sort(packed, 0, used);
+		int unique = 0;
+		for(int i = 0; i < used; i++) {
+			if(unique == 0 || packed[i] != packed[unique - 1]) {
+				packed[unique++] = packed[i];
+			}
+		}
+		this.entries = Arrays.copyOf(packed, unique);
+	}
+
+	public RouteShape getShape() {
+		return shape;
+	}
+
+	public double getWidth() {
+		return width;
+	}
+
+    /**
+     * Locate a point relative to the route.
+     *
+     * @param lat
+     *            Latitude of the point in degrees.
+     * @param lng
+     *            Longitude of the point in degrees.
+     * @return The distance in meters from the point to the route and the distance in meters
+     *         along the route to the nearest point, or null if the point is farther than the
+     *         width of the corridor.
+     */
+	public double[] locate(double lat, double lng) {
+		double px = lng * 1e6 * xScale, py = lat * 1e6 * metersPerMicro;
+		long cx = cellOf(px, minX), cy = cellOf(py, minY);
+		double bestSquared = width * width;
+		int bestSegment = -1;
+		double bestT = 0;
+		// A segment within the width passes within half a cell of a registered step, so two cells suffice.
+		for(long i = Math.max(0, cx - 2); i <= Math.min(MAX_CELLS - 1, cx + 2); i++) {
+			for(long j = Math.max(0, cy - 2); j <= Math.min(MAX_CELLS - 1, cy + 2); j++) {
+				long key = key(i, j);
+				int index = lowerBound(key << SEGMENT_BITS);
+				for(; index < entries.length && entries[index] >>> SEGMENT_BITS == key; index++) {
+					int s = (int) (entries[index] & ((1L << SEGMENT_BITS) - 1));
+					double ax = x(s), ay = y(s), dx = x(s + 1) - ax, dy = y(s + 1) - ay;
+					double lengthSquared = dx * dx + dy * dy;
+					double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+					double ex = px - (ax + t * dx), ey = py - (ay + t * dy);
+					double squared = ex * ex + ey * ey;
+					if(squared <= bestSquared) {
+						bestSquared = squared;
+						bestSegment = s;
+						bestT = t;
+					}
+				}
+			}
+		}
+		if(bestSegment < 0) {
+			return null;
+		}
+		double along = shape.distanceTo(bestSegment) + (shape.distanceTo(bestSegment + 1) - shape.distanceTo(bestSegment)) * bestT;
+		return new double[] {Math.sqrt(bestSquared), along};
+	}
+
+	private double x(int index) {
+		return shape.lng(index) * xScale;
+	}
+
+	private double y(int index) {
+		return shape.lat(index) * metersPerMicro;
+	}
+
+	private long cellOf(double coordinate, double min) {
+		return Math.max(0, Math.min(MAX_CELLS - 1, (long) Math.floor((coordinate - min) / cell)));
+	}
+
+	private static long key(long cx, long cy) {
+		return cx << CELL_BITS | cy;
+	}
+
+	private int lowerBound(long value) {
+		int low = 0, high = entries.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(entries[mid] < value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+/**
+ * GreatCircle holds distance calculations on a spherical earth, which are accurate to about
+ * 0.5% and need no projection.
+ */
+public final class GreatCircle {
+
+	/** Mean earth radius in meters. */
+	public static final double EARTH_RADIUS = 6371008.8;
+
+	private GreatCircle() {
+	}
+
+    /**
+     * Get the distance between two points using the haversine formula.
+     *
+     * @param lat1
+     *            Latitude of the first point in degrees.
+     * @param lng1
+     *            Longitude of the first point in degrees.
+     * @param lat2
+     *            Latitude of the second point in degrees.
+     * @param lng2
+     *            Longitude of the second point in degrees.
+     * @return The distance in meters.
+     */
+	public static double distance(double lat1, double lng1, double lat2, double lng2) {
+		double phi1 = Math.toRadians(lat1);
+		double phi2 = Math.toRadians(lat2);
+		double sinDLat = Math.sin((phi2 - phi1) / 2);
+		double sinDLng = Math.sin(Math.toRadians(lng2 - lng1) / 2);
+		double h = sinDLat * sinDLat + Math.cos(phi1) * Math.cos(phi2) * sinDLng * sinDLng;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+	}
+
+    /**
+     * Get the initial bearing of the great circle path from one point to another.
+     *
+     * @param lat1
+     *            Latitude of the first point in degrees.
+     * @param lng1
+     *            Longitude of the first point in degrees.
+     * @param lat2
+     *            Latitude of the second point in degrees.
+     * @param lng2
+     *            Longitude of the second point in degrees.
+     * @return The bearing in degrees clockwise from north, in [0, 360).
+     */
+	public static double bearing(double lat1, double lng1, double lat2, double lng2) {
+		double phi1 = Math.toRadians(lat1);
+		double phi2 = Math.toRadians(lat2);
+		double dLng = Math.toRadians(lng2 - lng1);
+		double y = Math.sin(dLng) * Math.cos(phi2);
+		double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLng);
+		double degrees = Math.toDegrees(Math.atan2(y, x));
+		return degrees < 0 ? degrees + 360 : degrees;
+	}
+
+    /**
+     * Get the point reached by travelling a distance along a great circle.
+     *
+     * @param lat
+     *            Latitude of the start in degrees.
+     * @param lng
+     *            Longitude of the start in degrees.
+     * @param bearing
+     *            Initial bearing in degrees clockwise from north.
+     * @param distance
+     *            Distance in meters.
+     * @return The latitude and longitude of the point in degrees, the longitude in [-180, 180).
+     */
+	public static double[] destination(double lat, double lng, double bearing, double distance) {
+		double phi1 = Math.toRadians(lat);
+		double theta = Math.toRadians(bearing);
+		double delta = distance / EARTH_RADIUS;
+		double sinPhi2 = Math.sin(phi1) * Math.cos(delta) + Math.cos(phi1) * Math.sin(delta) * Math.cos(theta);
+		double phi2 = Math.asin(Math.max(-1, Math.min(1, sinPhi2)));
+		double dLng = Math.atan2(Math.sin(theta) * Math.sin(delta) * Math.cos(phi1), Math.cos(delta) - Math.sin(phi1) * sinPhi2);
+		double lng2 = (lng + Math.toDegrees(dLng) + 540) % 360 - 180;
+		return new double[] {Math.toDegrees(phi2), lng2};
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+/**
+ * Polyline encodes and decodes lines in the Encoded Polyline Algorithm Format used by Google
+ * and, as its <code>cmp</code> and <code>cmp6</code> shape formats, by MapQuest: each
+ * coordinate is stored as the zigzag varint of its difference from the previous point, in
+ * printable characters.
+ * <p>
+ * Coordinates are given as <code>int</code> microdegrees. At precision 6 they round-trip
+ * exactly; at precision 5 they are rounded to ten microdegrees, about a meter. Neither method
+ * allocates beyond what the caller passes in.
+ */
+public final class Polyline {
+
+	private Polyline() {
+	}
+
+    /**
+     * Append the encoding of a line to a buffer.
+     *
+     * @param lats
+     *            Latitudes in microdegrees.
+     * @param lngs
+     *            Longitudes in microdegrees.
+     * @param from
+     *            Index of the first point.
+     * @param to
+     *            Index after the last point.
+     * @param precision
+     *            Decimal digits kept, 5 or 6.
+     * @param out
+     *            Receives the encoded line.
+     */
+	public static void encode(int[] lats, int[] lngs, int from, int to, int precision, StringBuilder out) {
+		int divisor = divisor(precision);
+		int lastLat = 0, lastLng = 0;
+		for(int i = from; i < to; i++) {
+			int lat = round(lats[i], divisor);
+			int lng = round(lngs[i], divisor);
+			append(lat - lastLat, out);
+			append(lng - lastLng, out);
+			lastLat = lat;
+			lastLng = lng;
+		}
+	}
+
+    /**
+     * Encode a line.
+     *
+     * @param lats
+     *            Latitudes in microdegrees.
+     * @param lngs
+     *            Longitudes in microdegrees.
+     * @param count
+     *            Number of points.
+     * @param precision
+     *            Decimal digits kept, 5 or 6.
+     * @return The encoded line.
+     */
+	public static String encode(int[] lats, int[] lngs, int count, int precision) {
+		StringBuilder out = new StringBuilder(count * 8);
+		encode(lats, lngs, 0, count, precision, out);
+		return out.toString();
+	}
+
+    /**
+     * Count the points of an encoded line, to size the arrays passed to
+     * {@link #decode(CharSequence, int, int[], int[])}.
+     *
+     * @param encoded
+     *            The encoded line.
+     * @return The number of points.
+     */
+	public static int count(CharSequence encoded) {
+		int values = 0;
+		for(int i = 0, length = encoded.length(); i < length; i++) {
+			// Every value ends with a character below the continuation bit.
+			if(encoded.charAt(i) - 63 < 0x20) {
+				values++;
+			}
+		}
+		return values / 2;
+	}
+
+    /**
+     * Decode a line into arrays of microdegrees.
+     *
+     * @param encoded
+     *            The encoded line.
+     * @param precision
+     *            Decimal digits of the encoding, 5 or 6.
+     * @param lats
+     *            Receives the latitudes; must hold {@link #count(CharSequence)} points.
+     * @param lngs
+     *            Receives the longitudes; must hold {@link #count(CharSequence)} points.
+     * @return The number of points decoded.
+     * @throws IllegalArgumentException
+     *             If the line is malformed.
+     */
+	public static int decode(CharSequence encoded, int precision, int[] lats, int[] lngs) {
+		int multiplier = divisor(precision);
+		int length = encoded.length();
+		int index = 0, count = 0;
+		int lat = 0, lng = 0;
+		while(index < length) {
+			int result = 0, shift = 0, b;
+			do {
+				if(index == length) {
+					throw new IllegalArgumentException("Truncated polyline");
+				}
+				b = encoded.charAt(index++) - 63;
+				result |= (b & 0x1f) << shift;
+				shift += 5;
+			} while(b >= 0x20);
+			lat += (result & 1) != 0 ? ~(result >>> 1) : (result >>> 1);
+
+			result = 0;
+			shift = 0;
+			do {
+				if(index == length) {
+					throw new IllegalArgumentException("Truncated polyline");
+				}
+				b = encoded.charAt(index++) - 63;
+				result |= (b & 0x1f) << shift;
+				shift += 5;
+			} while(b >= 0x20);
+			lng += (result & 1) != 0 ? ~(result >>> 1) : (result >>> 1);
+
+			lats[count] = lat * multiplier;
+			lngs[count] = lng * multiplier;
+			count++;
+		}
+		return count;
+	}
+
+    /**
+     * Convert degrees to microdegrees.
+     *
+     * @param degrees
+     *            A latitude or longitude.
+     * @return The value in microdegrees.
+     */
+	public static int toMicros(double degrees) {
+		return (int) Math.round(degrees * 1e6);
+	}
+
+	private static void append(int delta, StringBuilder out) {
+		int value = delta < 0 ? ~(delta << 1) : delta << 1;
+		while(value >= 0x20) {
+			out.append((char) ((0x20 | (value & 0x1f)) + 63));
+			value >>>= 5;
+		}
+		out.append((char) (value + 63));
+	}
+
+	private static int round(int micros, int divisor) {
+		return divisor == 1 ? micros : Math.floorDiv(micros + divisor / 2, divisor);
+	}
+
+	private static int divisor(int precision) {
+		if(precision == 6) {
+			return 1;
+		} else if(precision == 5) {
+			return 10;
+		}
+		throw new IllegalArgumentException("precision must be 5 or 6");
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+import java.util.Arrays;
+
+/**
+ * RouteShape is a line measured along its length, for finding the points at given distances
+ * along a route without asking the directions provider again.
+ * <p>
+ * The distance from the start to every point is kept in a prefix array of great circle
+ * distances, so the point at any distance is found by binary search and interpolation within
+ * one segment. Segments of a route shape are short, so the interpolation is linear in latitude
+ * and longitude. Instances are immutable and safe for concurrent use.
+ */
+public final class RouteShape {
+
+	private final int[] lats;
+	private final int[] lngs;
+	private final double[] distances;
+
+    /**
+     * Construct a RouteShape over the points of a line.
+     *
+     * @param lats
+     *            Latitudes in microdegrees; not copied.
+     * @param lngs
+     *            Longitudes in microdegrees; not copied.
+     * @param count
+     *            Number of points, at least one.
+     */
+	public RouteShape(int[] lats, int[] lngs, int count) {
+		if(count < 1) {
+			throw new IllegalArgumentException("A shape needs at least one point");
+		}
+		this.lats = lats;
+		this.lngs = lngs;
+		this.distances = new double[count];
+		for(int i = 1; i < count; i++) {
+			distances[i] = distances[i - 1] + GreatCircle.distance(lats[i - 1] / 1e6, lngs[i - 1] / 1e6, lats[i] / 1e6, lngs[i] / 1e6);
+		}
+	}
+
+    /**
+     * Decode a RouteShape from an encoded polyline.
+     *
+     * @param encoded
+     *            The encoded line, such as the <code>"shape"</code> of a route.
+     * @param precision
+     *            Decimal digits of the encoding, 5 or 6.
+     * @return The shape.
+     * @throws IllegalArgumentException
+     *             If the line is malformed or empty.
+     */
+	public static RouteShape decode(CharSequence encoded, int precision) {
+		int count = Polyline.count(encoded);
+		int[] lats = new int[count], lngs = new int[count];
+		Polyline.decode(encoded, precision, lats, lngs);
+		return new RouteShape(lats, lngs, count);
+	}
+
+	public int getPointCount() {
+		return distances.length;
+	}
+
+    /**
+     * Get the length of the line.
+     *
+     * @return The length in meters.
+     */
+	public double getLength() {
+		return distances[distances.length - 1];
+	}
+
+    /**
+     * Get the point at a distance along the line.
+     *
+     * @param distance
+     *            Meters from the start; clamped to the line.
+     * @return The latitude and longitude of the point in degrees.
+     */
+	public double[] pointAtDistance(double distance) {
+		int last = distances.length - 1;
+		if(!(distance > 0)) {
+			return point(0);
+		} else if(distance >= distances[last]) {
+			return point(last);
+		}
+		int index = Arrays.binarySearch(distances, distance);
+		if(index >= 0) {
+			return point(index);
+		}
+		// The segment from the last point before the distance to the first point after it.
+		int end = -index - 1;
+		return interpolate(end - 1, distance);
+	}
+
+    /**
+     * Get the point at a fraction of the length of the line.
+     *
+     * @param fraction
+     *            From 0 for the start to 1 for the end; clamped.
+     * @return The latitude and longitude of the point in degrees.
+     */
+	public double[] pointAt(double fraction) {
+		return pointAtDistance(fraction * getLength());
+	}
+
+    /**
+     * Get points spaced evenly along the line, from its start to its end.
+     *
+     * @param count
+     *            Number of points, at least two.
+     * @return The latitude and longitude of each point in degrees.
+     */
+	public double[][] evenlySpaced(int count) {
+		if(count < 2) {
+			throw new IllegalArgumentException("count must be at least 2");
+		}
+		double[][] points = new double[count][];
+		double step = getLength() / (count - 1);
+		// The distances increase, so one forward walk finds every segment.
+		int segment = 0, last = distances.length - 1;
+		for(int k = 0; k < count - 1; k++) {
+			double distance = k * step;
+			while(segment < last - 1 && distances[segment + 1] <= distance) {
+				segment++;
+			}
+			points[k] = last == 0 ? point(0) : interpolate(segment, distance);
+		}
+		points[count - 1] = point(last);
+		return points;
+	}
+
+	/* Latitude of a point in microdegrees. */
+	int lat(int index) {
+		return lats[index];
+	}
+
+	/* Longitude of a point in microdegrees. */
+	int lng(int index) {
+		return lngs[index];
+	}
+
+	/* Meters along the line from the start to a point. */
+	double distanceTo(int index) {
+		return distances[index];
+	}
+
+	private double[] interpolate(int start, double distance) {
+		double length = distances[start + 1] - distances[start];
+		double t = length == 0 ? 0 : (distance - distances[start]) / length;
+		double lat = lats[start] + (lats[start + 1] - lats[start]) * t;
+		double lng = lngs[start] + (lngs[start + 1] - lngs[start]) * t;
+		return new double[] {lat / 1e6, lng / 1e6};
+	}
+
+	private double[] point(int index) {
+		return new double[] {lats[index] / 1e6, lngs[index] / 1e6};
+	}
+}
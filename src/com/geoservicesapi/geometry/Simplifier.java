@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+/**
+ * Simplifier reduces lines with the Douglas-Peucker algorithm, for drawing them at lower zoom
+ * levels.
+ * <p>
+ * Rather than simplifying once per tolerance, {@link #rank(int[], int[], int)} runs the
+ * algorithm once with no tolerance and records for every point the largest tolerance at which
+ * it survives. The line for any tolerance is then the points whose rank is at least that
+ * tolerance, see {@link #keep}, so several levels of detail cost one pass. Coordinates are
+ * <code>int</code> microdegrees, as in {@link Polyline}, and distances are measured on an
+ * equirectangular projection around the mean latitude of the line, which is accurate to well
+ * under a percent over the extent of a route.
+ */
+public final class Simplifier {
+
+	private Simplifier() {
+	}
+
+    /**
+     * Rank the points of a line by the tolerance up to which they are kept.
+     *
+     * @param lats
+     *            Latitudes in microdegrees.
+     * @param lngs
+     *            Longitudes in microdegrees.
+     * @param count
+     *            Number of points.
+     * @return The rank of each point in meters; the end points rank infinite.
+     */
+	public static double[] rank(int[] lats, int[] lngs, int count) {
+		double[] ranks = new double[count];
+		if(count == 0) {
+			return ranks;
+		}
+		ranks[0] = Double.POSITIVE_INFINITY;
+		ranks[count - 1] = Double.POSITIVE_INFINITY;
+		if(count < 3) {
+			return ranks;
+		}
+
+		// Project to meters once; the sum of microdegrees fits in a long for any count.
+		long sum = 0;
+		for(int i = 0; i < count; i++) {
+			sum += lats[i];
+		}
+		double metersPerMicro = Math.toRadians(1e-6) * GreatCircle.EARTH_RADIUS;
+		double xScale = metersPerMicro * Math.cos(Math.toRadians(sum / (count * 1e6)));
+		double[] x = new double[count], y = new double[count];
+		for(int i = 0; i < count; i++) {
+			x[i] = lngs[i] * xScale;
+			y[i] = lats[i] * metersPerMicro;
+		}
+
+		// Each pending span is its first and last index and the rank of the point that split it.
+		int[] firsts = new int[count], lasts = new int[count];
+		double[] limits = new double[count];
+		firsts[0] = 0;
+		lasts[0] = count - 1;
+		limits[0] = Double.POSITIVE_INFINITY;
+		int pending = 1;
+		while(pending > 0) {
+			pending--;
+			int first = firsts[pending], last = lasts[pending];
+			double limit = limits[pending];
+			int farthest = -1;
+			double max = -1;
+			for(int i = first + 1; i < last; i++) {
+				double d = distanceSquared(x[i], y[i], x[first], y[first], x[last], y[last]);
+				if(d > max) {
+					max = d;
+					farthest = i;
+				}
+			}
+			if(farthest < 0) {
+				continue;
+			}
+			// A point cannot outlast the point whose split made it a candidate.
+			double rank = Math.min(Math.sqrt(max), limit);
+			ranks[farthest] = rank;
+			if(farthest - first > 1) {
+				firsts[pending] = first;
+				lasts[pending] = farthest;
+				limits[pending] = rank;
+				pending++;
+			}
+			if(last - farthest > 1) {
+				firsts[pending] = farthest;
+				lasts[pending] = last;
+				limits[pending] = rank;
+				pending++;
+			}
+		}
+		return ranks;
+	}
+
+    /**
+     * Copy the points of a line that are kept at a tolerance.
+     *
+     * @param lats
+     *            Latitudes in microdegrees.
+     * @param lngs
+     *            Longitudes in microdegrees.
+     * @param ranks
+     *            The ranks from {@link #rank(int[], int[], int)}.
+     * @param count
+     *            Number of points.
+     * @param tolerance
+     *            Largest distance in meters by which the simplified line may stray.
+     * @param keptLats
+     *            Receives the latitudes of the kept points; may be <code>lats</code>.
+     * @param keptLngs
+     *            Receives the longitudes of the kept points; may be <code>lngs</code>.
+     * @return The number of points kept.
+     */
+	public static int keep(int[] lats, int[] lngs, double[] ranks, int count, double tolerance, int[] keptLats, int[] keptLngs) {
+		int kept = 0;
+		for(int i = 0; i < count; i++) {
+			if(ranks[i] >= tolerance) {
+				keptLats[kept] = lats[i];
+				keptLngs[kept] = lngs[i];
+				kept++;
+			}
+		}
+		return kept;
+	}
+
+	/* Squared distance from a point to the segment between two others. */
+	private static double distanceSquared(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax, dy = by - ay;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+		if(t < 0) {
+			t = 0;
+		} else if(t > 1) {
+			t = 1;
+		}
+		double ex = px - (ax + t * dx), ey = py - (ay + t * dy);
+		return ex * ex + ey * ey;
+	}
+}
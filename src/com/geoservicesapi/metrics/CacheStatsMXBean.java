@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+/**
+ * JMX view of the statistics of one service cache. Durations are in milliseconds.
+ */
+public interface CacheStatsMXBean {
+
+	long getHitCount();
+
+	long getMissCount();
+
+	double getHitRate();
+
+	long getLoadSuccessCount();
+
+	long getLoadFailureCount();
+
+	double getLoadFailureRate();
+
+	long getEvictionCount();
+
+	long getCoalescedWaitCount();
+
+	long getStaleServeCount();
+
+	double getLoadTimeMean();
+
+	double getLoadTime50thPercentile();
+
+	double getLoadTime99thPercentile();
+
+	double getLoadTimeMax();
+
+	int getSize();
+
+	long getWeight();
+}
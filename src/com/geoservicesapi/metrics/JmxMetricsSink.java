@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.geoservicesapi.cache.CacheStats;
+import com.geoservicesapi.cache.ServiceCache;
+
+/**
+ * JmxMetricsSink publishes metric sources as MXBeans in the platform MBean server under the
+ * <code>com.geoservicesapi</code> domain.
+ * <p>
+ * Caches are referenced weakly, so registering a cache does not keep a discarded service alive;
+ * beans of collected caches are unregistered the next time a cache is registered.
+ */
+public class JmxMetricsSink implements MetricsSink {
+
+	private static final String DOMAIN = "com.geoservicesapi";
+
+	private final AtomicInteger instances = new AtomicInteger();
+	private final Map<ObjectName, CacheBean> caches = new ConcurrentHashMap<ObjectName, CacheBean>();
+
+	public void registerCache(ServiceCache<?, ?> cache) {
+		purge();
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=Cache,name=" + ObjectName.quote(cache.getName())
+					+ ",instance=" + instances.incrementAndGet());
+			CacheBean bean = new CacheBean(cache);
+			server().registerMBean(bean, name);
+			caches.put(name, bean);
+		} catch(Exception ignore) {
+			// Monitoring must never break the service.
+		}
+	}
+
+	@Override
+	public void registerTimer(LatencyTimer timer) {
+		try {
+			ObjectName name = new ObjectName(DOMAIN + ":type=Timer,name=" + ObjectName.quote(timer.getName()));
+			server().registerMBean(new TimerBean(timer), name);
+		} catch(Exception ignore) {
+		}
+	}
+
+	private void purge() {
+		Iterator<Map.Entry<ObjectName, CacheBean>> it = caches.entrySet().iterator();
+		while(it.hasNext()) {
+			Map.Entry<ObjectName, CacheBean> entry = it.next();
+			if(entry.getValue().cache.get() == null) {
+				it.remove();
+				try {
+					server().unregisterMBean(entry.getKey());
+				} catch(Exception ignore) {
+				}
+			}
+		}
+	}
+
+	private static MBeanServer server() {
+		return ManagementFactory.getPlatformMBeanServer();
+	}
+
+	static final class CacheBean implements CacheStatsMXBean {
+		final WeakReference<ServiceCache<?, ?>> cache;
+		final CacheStats stats;
+
+		CacheBean(ServiceCache<?, ?> cache) {
+			this.cache = new WeakReference<ServiceCache<?, ?>>(cache);
+			this.stats = cache.getStats();
+		}
+
+		public long getHitCount() {
+			return stats.getHitCount();
+		}
+
+		public long getMissCount() {
+			return stats.getMissCount();
+		}
+
+		public double getHitRate() {
+			return stats.getHitRate();
+		}
+
+		public long getLoadSuccessCount() {
+			return stats.getLoadSuccessCount();
+		}
+
+		public long getLoadFailureCount() {
+			return stats.getLoadFailureCount();
+		}
+
+		public double getLoadFailureRate() {
+			return stats.getLoadFailureRate();
+		}
+
+		public long getEvictionCount() {
+			return stats.getEvictionCount();
+		}
+
+		public long getCoalescedWaitCount() {
+			return stats.getCoalescedWaitCount();
+		}
+
+		public long getStaleServeCount() {
+			return stats.getStaleServeCount();
+		}
+
+		public double getLoadTimeMean() {
+			return stats.getLoadTime().getMeanMillis();
+		}
+
+		public double getLoadTime50thPercentile() {
+			return stats.getLoadTime().getPercentileMillis(50);
+		}
+
+		public double getLoadTime99thPercentile() {
+			return stats.getLoadTime().getPercentileMillis(99);
+		}
+
+		public double getLoadTimeMax() {
+			return stats.getLoadTime().getMax(TimeUnit.MICROSECONDS) / 1000.0;
+		}
+
+		public int getSize() {
+			ServiceCache<?, ?> c = cache.get();
+			return c == null ? 0 : c.size();
+		}
+
+		public long getWeight() {
+			ServiceCache<?, ?> c = cache.get();
+			return c == null ? 0 : c.weight();
+		}
+	}
+
+	static final class TimerBean implements LatencyTimerMXBean {
+		final LatencyTimer timer;
+
+		TimerBean(LatencyTimer timer) {
+			this.timer = timer;
+		}
+
+		public long getCount() {
+			return timer.getHistogram().getCount();
+		}
+
+		public long getSuccessCount() {
+			return timer.getHistogram(Outcome.SUCCESS).getCount();
+		}
+
+		public long getStatusErrorCount() {
+			return timer.getHistogram(Outcome.STATUS_ERROR).getCount();
+		}
+
+		public long getTimeoutCount() {
+			return timer.getHistogram(Outcome.TIMEOUT).getCount();
+		}
+
+		public long getParseErrorCount() {
+			return timer.getHistogram(Outcome.PARSE_ERROR).getCount();
+		}
+
+		public long getErrorCount() {
+			return timer.getHistogram(Outcome.ERROR).getCount();
+		}
+
+		public long getInvalidRequestCount() {
+			return timer.getHistogram(Outcome.INVALID_REQUEST).getCount();
+		}
+
+		public long getRejectedCount() {
+			return timer.getHistogram(Outcome.REJECTED).getCount();
+		}
+
+		public long getCancelledCount() {
+			return timer.getHistogram(Outcome.CANCELLED).getCount();
+		}
+
+		public double getMean() {
+			return timer.getHistogram().getMeanMillis();
+		}
+
+		public double get50thPercentile() {
+			return timer.getHistogram().getPercentileMillis(50);
+		}
+
+		public double get90thPercentile() {
+			return timer.getHistogram().getPercentileMillis(90);
+		}
+
+		public double get99thPercentile() {
+			return timer.getHistogram().getPercentileMillis(99);
+		}
+
+		public double get999thPercentile() {
+			return timer.getHistogram().getPercentileMillis(99.9);
+		}
+
+		public double getMax() {
+			return timer.getHistogram().getMax(TimeUnit.MICROSECONDS) / 1000.0;
+		}
+
+		public double getSuccess50thPercentile() {
+			return timer.getHistogram(Outcome.SUCCESS).getPercentileMillis(50);
+		}
+
+		public double getSuccess99thPercentile() {
+			return timer.getHistogram(Outcome.SUCCESS).getPercentileMillis(99);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram is a lock-free, fixed-size histogram of durations in nanoseconds.
+ * <p>
+ * Buckets follow the HdrHistogram layout: every power of two is split into 32 linear
+ * sub-buckets, so any recorded value is reproduced within about 3%. Recording is a single
+ * atomic increment and never allocates, which makes it cheap enough for every upstream call.
+ * Durations above about two hours are clamped into the last bucket.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 42;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one duration.
+     *
+     * @param nanos
+     *            Duration in nanoseconds; negative values are recorded as zero.
+     */
+	public void record(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(indexOf(nanos));
+		total.incrementAndGet();
+		sum.addAndGet(nanos);
+		long current;
+		while(nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+		}
+	}
+
+	public long getCount() {
+		return total.get();
+	}
+
+	public long getMax(TimeUnit unit) {
+		return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+	}
+
+	public double getMeanMillis() {
+		long count = total.get();
+		return count == 0 ? 0 : sum.get() / 1e6 / count;
+	}
+
+    /**
+     * Get the value below which the given percentage of recorded durations fall.
+     *
+     * @param percentile
+     *            Percentile between 0 and 100.
+     * @return The duration in milliseconds, or 0 if nothing was recorded.
+     */
+	public double getPercentileMillis(double percentile) {
+		long count = 0;
+		long[] snapshot = new long[BUCKETS];
+		for(int i=0; i<BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			count += snapshot[i];
+		}
+		if(count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0));
+		long seen = 0;
+		for(int i=0; i<BUCKETS; i++) {
+			seen += snapshot[i];
+			if(seen >= rank) {
+				return Math.min(highestValueOf(i), max.get()) / 1e6;
+			}
+		}
+		return max.get() / 1e6;
+	}
+
+    /**
+     * Add the counts of this histogram to another one, for aggregation across instances.
+     *
+     * @param target
+     *            Histogram receiving the counts.
+     */
+	public void addTo(LatencyHistogram target) {
+		for(int i=0; i<BUCKETS; i++) {
+			long c = counts.get(i);
+			if(c != 0) {
+				target.counts.addAndGet(i, c);
+			}
+		}
+		target.total.addAndGet(total.get());
+		target.sum.addAndGet(sum.get());
+		long m = max.get(), current;
+		while(m > (current = target.max.get()) && !target.max.compareAndSet(current, m)) {
+		}
+	}
+
+	static int indexOf(long value) {
+		if(value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		if(exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		int shift = exponent - SUB_BUCKET_BITS;
+		int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+		return (shift + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long highestValueOf(int index) {
+		int bucket = index >>> SUB_BUCKET_BITS;
+		int sub = index & (SUB_BUCKETS - 1);
+		if(bucket == 0) {
+			return sub;
+		}
+		int shift = bucket - 1;
+		return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+	}
+}
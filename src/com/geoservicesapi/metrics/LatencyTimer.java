@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+/**
+ * LatencyTimer records the duration of a named operation, with one {@link LatencyHistogram}
+ * per {@link Outcome} and one over all outcomes. Obtain instances from
+ * {@link Metrics#timer(String)}.
+ */
+public class LatencyTimer {
+
+	private final String name;
+	private final LatencyHistogram all = new LatencyHistogram();
+	private final LatencyHistogram[] byOutcome = new LatencyHistogram[Outcome.values().length];
+
+	LatencyTimer(String name) {
+		this.name = name;
+		for(int i=0; i<byOutcome.length; i++) {
+			byOutcome[i] = new LatencyHistogram();
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+    /**
+     * Record one call.
+     *
+     * @param outcome
+     *            How the call ended.
+     * @param nanos
+     *            Duration of the call in nanoseconds.
+     */
+	public void record(Outcome outcome, long nanos) {
+		all.record(nanos);
+		byOutcome[outcome.ordinal()].record(nanos);
+	}
+
+	public LatencyHistogram getHistogram() {
+		return all;
+	}
+
+	public LatencyHistogram getHistogram(Outcome outcome) {
+		return byOutcome[outcome.ordinal()];
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+/**
+ * JMX view of a {@link LatencyTimer}. Durations are in milliseconds and cover all outcomes
+ * unless the name says otherwise.
+ */
+public interface LatencyTimerMXBean {
+
+	long getCount();
+
+	long getSuccessCount();
+
+	long getStatusErrorCount();
+
+	long getTimeoutCount();
+
+	long getParseErrorCount();
+
+	long getErrorCount();
+
+	long getInvalidRequestCount();
+
+	long getRejectedCount();
+
+	long getCancelledCount();
+
+	double getMean();
+
+	double get50thPercentile();
+
+	double get90thPercentile();
+
+	double get99thPercentile();
+
+	double get999thPercentile();
+
+	double getMax();
+
+	double getSuccess50thPercentile();
+
+	double getSuccess99thPercentile();
+}
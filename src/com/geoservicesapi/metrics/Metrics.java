@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metrics holds the {@link MetricsSink} used by the library and the named
+ * {@link LatencyTimer}s of service methods and upstream endpoints.
+ */
+public final class Metrics {
+
+	private static volatile MetricsSink sink = new JmxMetricsSink();
+
+	private static final ConcurrentHashMap<String, LatencyTimer> timers = new ConcurrentHashMap<String, LatencyTimer>();
+
+	private Metrics() {
+	}
+
+	public static MetricsSink sink() {
+		return sink;
+	}
+
+    /**
+     * Replace the sink. Metric sources created before the call stay with the previous sink.
+     *
+     * @param sink
+     *            The new sink; must not be null.
+     */
+	public static void setSink(MetricsSink sink) {
+		if(sink == null) {
+			throw new IllegalArgumentException("sink must not be null");
+		}
+		Metrics.sink = sink;
+	}
+
+    /**
+     * Get the timer of an operation, creating and registering it on first use.
+     *
+     * @param name
+     *            Name of the operation, such as <code>method.LocationServices.getAddress</code>.
+     * @return The timer.
+     */
+	public static LatencyTimer timer(String name) {
+		LatencyTimer timer = timers.get(name);
+		if(timer == null) {
+			LatencyTimer created = new LatencyTimer(name);
+			timer = timers.putIfAbsent(name, created);
+			if(timer == null) {
+				timer = created;
+				sink.registerTimer(timer);
+			}
+		}
+		return timer;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+import com.geoservicesapi.cache.ServiceCache;
+
+/**
+ * MetricsSink receives the metric sources created by the library so that they can be published
+ * to a monitoring system. Install one with {@link Metrics#setSink(MetricsSink)}; the default
+ * publishes through JMX.
+ */
+public interface MetricsSink {
+
+    /**
+     * Called once for every cache that is created.
+     *
+     * @param cache
+     *            The new cache; its statistics are available from {@link ServiceCache#getStats()}.
+     */
+	void registerCache(ServiceCache<?, ?> cache);
+
+    /**
+     * Called once for every timer that is created.
+     *
+     * @param timer
+     *            The new timer.
+     */
+	default void registerTimer(LatencyTimer timer) {
+	}
+}
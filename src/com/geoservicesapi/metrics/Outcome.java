@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+/**
+ * Outcome of a service method or upstream call, used to tag recorded latencies.
+ */
+public enum Outcome {
+
+	/** The call completed and produced a result. */
+	SUCCESS,
+
+	/** The upstream answered with a non-zero status code or an error object. */
+	STATUS_ERROR,
+
+	/** Connecting to or reading from the upstream timed out, or the call's deadline passed. */
+	TIMEOUT,
+
+	/** The upstream response could not be parsed. */
+	PARSE_ERROR,
+
+	/** Any other failure, such as a refused connection or an HTTP error. */
+	ERROR,
+
+	/** The call was rejected before reaching the upstream because of invalid parameters. */
+	INVALID_REQUEST,
+
+	/** The call was shed because too many requests to the upstream were in flight. */
+	REJECTED,
+
+	/** The caller cancelled the call before it completed. */
+	CANCELLED
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.routing;
+
+import java.util.Arrays;
+
+/**
+ * LongHeap is a growable binary min-heap of <code>long</code>s. Searches pack a node and its
+ * priority into one value, priority in the high half, so that pushing and popping never
+ * allocates once the heap has grown to the size a search needs. Stale entries are not removed
+ * but skipped by the search when popped.
+ */
+final class LongHeap {
+
+	private long[] heap = new long[64];
+	private int size;
+
+	static long entry(int priority, int node) {
+		return ((long) priority << 32) | (node & 0xffffffffL);
+	}
+
+	static int priority(long entry) {
+		return (int) (entry >>> 32);
+	}
+
+	static int node(long entry) {
+		return (int) entry;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void push(long value) {
+		if(size == heap.length) {
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		int i = size++;
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			if(heap[parent] <= value) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = value;
+	}
+
+	long pop() {
+		long top = heap[0];
+		long last = heap[--size];
+		int i = 0;
+		int half = size >>> 1;
+		while(i < half) {
+			int child = 2 * i + 1;
+			if(child + 1 < size && heap[child + 1] < heap[child]) {
+				child++;
+			}
+			if(last <= heap[child]) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+}
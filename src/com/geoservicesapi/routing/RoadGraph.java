@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.routing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.geoservicesapi.geometry.GreatCircle;
+
+/**
+ * RoadGraph is a directed road network read from a file written by {@link RoadGraphBuilder}.
+ * <p>
+ * The file is memory mapped rather than read, so opening even a large graph is immediate, its
+ * pages are shared by every process routing over it, and only the parts a query touches are
+ * loaded. Only the road names and an index for snapping coordinates to nodes are kept on the
+ * heap. A graph is immutable and safe for concurrent use.
+ * <p>
+ * The file is a sequence of big-endian <code>int</code>s: a header, node coordinates in
+ * microdegrees, outgoing and incoming edges in compressed sparse row form, edge lengths in
+ * meters, travel times in tenths of a second and name indexes, then the travel times from
+ * and to each landmark used by the {@link RoadRouter} heuristic. The road names follow, each
+ * as a byte count and its UTF-8 bytes. Files are limited to 2 GB by the mapping.
+ */
+public final class RoadGraph {
+
+	/** First int of a graph file, "GSRG". */
+	public static final int MAGIC = 0x47535247;
+	public static final int VERSION = 1;
+
+	static final int HEADER_INTS = 6;
+
+	/** Travel time recorded for nodes a landmark cannot reach, or cannot be reached from. */
+	static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/* Grid cells of the snapping index, in degrees. */
+	private static final double CELL = 0.01;
+	private static final int LNG_CELLS = (int) Math.ceil(360 / CELL) + 1;
+	private static final int MAX_SNAP_RINGS = 20;
+
+	private final IntBuffer ints;
+	private final int nodeCount;
+	private final int edgeCount;
+	private final int landmarkCount;
+	private final String[] names;
+
+	private final int lats;
+	private final int lngs;
+	private final int firstOut;
+	private final int heads;
+	private final int lengths;
+	private final int times;
+	private final int nameIndexes;
+	private final int firstIn;
+	private final int inEdges;
+	private final int tails;
+	private final int landmarks;
+	private final int fromLandmarks;
+	private final int toLandmarks;
+
+	/* Snapping index: cell keys in ascending order, and the nodes of each cell. */
+	private final int[] cellKeys;
+	private final int[] cellStarts;
+	private final int[] cellNodes;
+
+	private RoadGraph(IntBuffer ints, String[] names) {
+		this.ints = ints;
+		this.nodeCount = ints.get(2);
+		this.edgeCount = ints.get(3);
+		this.landmarkCount = ints.get(4);
+		this.names = names;
+
+		this.lats = HEADER_INTS;
+		this.lngs = lats + nodeCount;
+		this.firstOut = lngs + nodeCount;
+		this.heads = firstOut + nodeCount + 1;
+		this.lengths = heads + edgeCount;
+		this.times = lengths + edgeCount;
+		this.nameIndexes = times + edgeCount;
+		this.firstIn = nameIndexes + edgeCount;
+		this.inEdges = firstIn + nodeCount + 1;
+		this.tails = inEdges + edgeCount;
+		this.landmarks = tails + edgeCount;
+		this.fromLandmarks = landmarks + landmarkCount;
+		this.toLandmarks = fromLandmarks + landmarkCount * nodeCount;
+
+		// Sort the nodes by cell, packing the cell key above the node id.
+		long[] packed = new long[nodeCount];
+		for(int node = 0; node < nodeCount; node++) {
+			packed[node] = ((long) cellKey(getLat(node), getLng(node)) << 32) | node;
+		}
+		Arrays.sort(packed);
+		int cells = 0;
+		for(int i = 0; i < nodeCount; i++) {
+			if(i == 0 || (packed[i] >>> 32) != (packed[i - 1] >>> 32)) {
+				cells++;
+			}
+		}
+		this.cellKeys = new int[cells];
+		this.cellStarts = new int[cells + 1];
+		this.cellNodes = new int[nodeCount];
+		int cell = -1;
+		for(int i = 0; i < nodeCount; i++) {
+			int key = (int) (packed[i] >>> 32);
+			if(cell < 0 || cellKeys[cell] != key) {
+				cellKeys[++cell] = key;
+				cellStarts[cell] = i;
+			}
+			cellNodes[i] = (int) packed[i];
+		}
+		cellStarts[cells] = nodeCount;
+	}
+
+    /**
+     * Open a graph file.
+     *
+     * @param file
+     *            A file written by {@link RoadGraphBuilder#write(File, int)}.
+     * @return The graph.
+     * @throws IOException
+     *             If the file cannot be read or is not a graph file.
+     */
+	public static RoadGraph open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		MappedByteBuffer buffer;
+		long length;
+		try {
+			length = raf.length();
+			// The mapping stays valid after the channel is closed.
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+		} finally {
+			raf.close();
+		}
+		IntBuffer ints = buffer.asIntBuffer();
+		if(ints.limit() < HEADER_INTS || ints.get(0) != MAGIC) {
+			throw new IOException("Not a road graph file: " + file);
+		} else if(ints.get(1) != VERSION) {
+			throw new IOException("Unsupported road graph version " + ints.get(1) + ": " + file);
+		}
+		long nodes = ints.get(2), edges = ints.get(3), landmarks = ints.get(4);
+		long namesAt = HEADER_INTS + 2 * nodes + 2 * (nodes + 1) + 6 * edges + landmarks + 2 * landmarks * nodes;
+		if(namesAt * 4 > length) {
+			throw new IOException("Truncated road graph file: " + file);
+		}
+
+		String[] names = new String[ints.get(5)];
+		ByteBuffer bytes = buffer.duplicate();
+		bytes.position((int) (namesAt * 4));
+		try {
+			for(int i = 0; i < names.length; i++) {
+				byte[] name = new byte[bytes.getInt()];
+				bytes.get(name);
+				names[i] = new String(name, StandardCharsets.UTF_8);
+			}
+		} catch(RuntimeException e) {
+			throw new IOException("Truncated road graph file: " + file, e);
+		}
+		return new RoadGraph(ints, names);
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+	public int getLandmarkCount() {
+		return landmarkCount;
+	}
+
+	public double getLat(int node) {
+		return ints.get(lats + node) / 1e6;
+	}
+
+	public double getLng(int node) {
+		return ints.get(lngs + node) / 1e6;
+	}
+
+	/* Edge accessors, used by the router. */
+
+	int firstOut(int node) {
+		return ints.get(firstOut + node);
+	}
+
+    /**
+     * Get the node an edge enters.
+     *
+     * @param edge
+     *            Index of the edge.
+     * @return The head node.
+     */
+	public int getHead(int edge) {
+		return ints.get(heads + edge);
+	}
+
+	int firstIn(int node) {
+		return ints.get(firstIn + node);
+	}
+
+	int inEdge(int index) {
+		return ints.get(inEdges + index);
+	}
+
+    /**
+     * Get the node an edge leaves.
+     *
+     * @param edge
+     *            Index of the edge.
+     * @return The tail node.
+     */
+	public int getTail(int edge) {
+		return ints.get(tails + edge);
+	}
+
+    /**
+     * Get the length of an edge.
+     *
+     * @param edge
+     *            Index of the edge.
+     * @return The length in meters.
+     */
+	public int getLength(int edge) {
+		return ints.get(lengths + edge);
+	}
+
+    /**
+     * Get the travel time of an edge.
+     *
+     * @param edge
+     *            Index of the edge.
+     * @return The time in tenths of a second.
+     */
+	public int getTime(int edge) {
+		return ints.get(times + edge);
+	}
+
+    /**
+     * Get the name of the road an edge belongs to.
+     *
+     * @param edge
+     *            Index of the edge.
+     * @return The name, or an empty string if the road has none.
+     */
+	public String getName(int edge) {
+		int index = ints.get(nameIndexes + edge);
+		return index < 0 ? "" : names[index];
+	}
+
+	int landmark(int index) {
+		return ints.get(landmarks + index);
+	}
+
+	/* Travel time from landmark l to a node. */
+	int fromLandmark(int l, int node) {
+		return ints.get(fromLandmarks + l * nodeCount + node);
+	}
+
+	/* Travel time from a node to landmark l. */
+	int toLandmark(int l, int node) {
+		return ints.get(toLandmarks + l * nodeCount + node);
+	}
+
+    /**
+     * Find the node nearest to a location.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @return The node, or -1 if there is none within about 20 kilometers.
+     */
+	public int nearestNode(double lat, double lng) {
+		int row = (int) Math.floor((lat + 90) / CELL);
+		int column = (int) Math.floor((lng + 180) / CELL);
+		// A ring r cells out is at least this far away.
+		double cellMeters = GreatCircle.distance(lat, lng, lat, lng + CELL);
+		cellMeters = Math.min(cellMeters, GreatCircle.distance(lat, lng, lat + CELL, lng));
+		int best = -1;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for(int r = 0; r <= MAX_SNAP_RINGS; r++) {
+			if(best >= 0 && bestDistance <= (r - 1) * cellMeters) {
+				break;
+			}
+			for(int dr = -r; dr <= r; dr++) {
+				for(int dc = -r; dc <= r; dc++) {
+					if(Math.abs(dr) != r && Math.abs(dc) != r) {
+						continue;
+					}
+					int cell = Arrays.binarySearch(cellKeys, (row + dr) * LNG_CELLS + column + dc);
+					if(cell < 0) {
+						continue;
+					}
+					for(int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+						int node = cellNodes[i];
+						double distance = GreatCircle.distance(lat, lng, getLat(node), getLng(node));
+						if(distance < bestDistance) {
+							bestDistance = distance;
+							best = node;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	private static int cellKey(double lat, double lng) {
+		return (int) Math.floor((lat + 90) / CELL) * LNG_CELLS + (int) Math.floor((lng + 180) / CELL);
+	}
+}
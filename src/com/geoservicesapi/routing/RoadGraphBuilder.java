@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.routing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * RoadGraphBuilder preprocesses a road network into the file format read by
+ * {@link RoadGraph#open(File)}. Roads are added as nodes and directed edges, typically from an
+ * OpenStreetMap extract, then {@link #write(File, int)} orders the edges for fast traversal
+ * and precomputes the landmark tables used by the {@link RoadRouter} heuristic.
+ * <p>
+ * A builder holds the whole network on the heap and is not safe for concurrent use.
+ */
+public final class RoadGraphBuilder {
+
+	private int[] lats = new int[1024];
+	private int[] lngs = new int[1024];
+	private int nodeCount;
+
+	private int[] tails = new int[1024];
+	private int[] heads = new int[1024];
+	private int[] lengths = new int[1024];
+	private int[] times = new int[1024];
+	private int[] nameIndexes = new int[1024];
+	private int edgeCount;
+
+	private final Map<String, Integer> nameIds = new HashMap<String, Integer>();
+	private String[] names = new String[16];
+
+    /**
+     * Add a node.
+     *
+     * @param lat
+     *            Latitude of the node.
+     * @param lng
+     *            Longitude of the node.
+     * @return The index of the node.
+     */
+	public int addNode(double lat, double lng) {
+		if(nodeCount == lats.length) {
+			lats = Arrays.copyOf(lats, nodeCount * 2);
+			lngs = Arrays.copyOf(lngs, nodeCount * 2);
+		}
+		lats[nodeCount] = (int) Math.round(lat * 1e6);
+		lngs[nodeCount] = (int) Math.round(lng * 1e6);
+		return nodeCount++;
+	}
+
+    /**
+     * Add a one-way edge.
+     *
+     * @param from
+     *            Index of the node the edge leaves.
+     * @param to
+     *            Index of the node the edge enters.
+     * @param meters
+     *            Length of the edge.
+     * @param seconds
+     *            Travel time of the edge.
+     * @param name
+     *            Name of the road, or null if it has none.
+     */
+	public void addEdge(int from, int to, double meters, double seconds, String name) {
+		if(from < 0 || from >= nodeCount || to < 0 || to >= nodeCount) {
+			throw new IllegalArgumentException("Unknown node");
+		} else if(meters < 0 || seconds < 0) {
+			throw new IllegalArgumentException("Negative edge weight");
+		}
+		if(edgeCount == tails.length) {
+			tails = Arrays.copyOf(tails, edgeCount * 2);
+			heads = Arrays.copyOf(heads, edgeCount * 2);
+			lengths = Arrays.copyOf(lengths, edgeCount * 2);
+			times = Arrays.copyOf(times, edgeCount * 2);
+			nameIndexes = Arrays.copyOf(nameIndexes, edgeCount * 2);
+		}
+		tails[edgeCount] = from;
+		heads[edgeCount] = to;
+		lengths[edgeCount] = (int) Math.round(meters);
+		times[edgeCount] = (int) Math.round(seconds * 10);
+		nameIndexes[edgeCount] = nameIndex(name);
+		edgeCount++;
+	}
+
+    /**
+     * Add a two-way road as an edge in each direction.
+     *
+     * @param a
+     *            Index of one end.
+     * @param b
+     *            Index of the other end.
+     * @param meters
+     *            Length of the road.
+     * @param seconds
+     *            Travel time of the road.
+     * @param name
+     *            Name of the road, or null if it has none.
+     */
+	public void addRoad(int a, int b, double meters, double seconds, String name) {
+		addEdge(a, b, meters, seconds, name);
+		addEdge(b, a, meters, seconds, name);
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	public int getEdgeCount() {
+		return edgeCount;
+	}
+
+    /**
+     * Write the graph file.
+     *
+     * @param file
+     *            The file to write.
+     * @param landmarkCount
+     *            Number of landmarks to precompute; more make queries faster at a cost of two
+     *            <code>int</code>s per node each. Eight to sixteen is typical.
+     * @throws IOException
+     *             If the file cannot be written.
+     */
+	public void write(File file, int landmarkCount) throws IOException {
+		landmarkCount = Math.max(0, Math.min(landmarkCount, nodeCount));
+
+		// Order the edges by tail for the outgoing lists, then index them by head.
+		int[] firstOut = offsets(tails);
+		int[] tail = new int[edgeCount], head = new int[edgeCount], length = new int[edgeCount];
+		int[] time = new int[edgeCount], name = new int[edgeCount];
+		int[] fill = Arrays.copyOf(firstOut, nodeCount);
+		for(int e = 0; e < edgeCount; e++) {
+			int i = fill[tails[e]]++;
+			tail[i] = tails[e];
+			head[i] = heads[e];
+			length[i] = lengths[e];
+			time[i] = times[e];
+			name[i] = nameIndexes[e];
+		}
+		int[] firstIn = offsets(head);
+		int[] inEdges = new int[edgeCount];
+		fill = Arrays.copyOf(firstIn, nodeCount);
+		for(int e = 0; e < edgeCount; e++) {
+			inEdges[fill[head[e]]++] = e;
+		}
+
+		int[] landmarks = new int[landmarkCount];
+		int[][] fromLandmarks = new int[landmarkCount][];
+		int[][] toLandmarks = new int[landmarkCount][];
+		selectLandmarks(landmarks, fromLandmarks, toLandmarks, firstOut, head, firstIn, inEdges, tail, time);
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			out.writeInt(RoadGraph.MAGIC);
+			out.writeInt(RoadGraph.VERSION);
+			out.writeInt(nodeCount);
+			out.writeInt(edgeCount);
+			out.writeInt(landmarkCount);
+			out.writeInt(nameIds.size());
+			write(out, lats, nodeCount);
+			write(out, lngs, nodeCount);
+			write(out, firstOut, nodeCount + 1);
+			write(out, head, edgeCount);
+			write(out, length, edgeCount);
+			write(out, time, edgeCount);
+			write(out, name, edgeCount);
+			write(out, firstIn, nodeCount + 1);
+			write(out, inEdges, edgeCount);
+			write(out, tail, edgeCount);
+			write(out, landmarks, landmarkCount);
+			for(int[] table : fromLandmarks) {
+				write(out, table, nodeCount);
+			}
+			for(int[] table : toLandmarks) {
+				write(out, table, nodeCount);
+			}
+			for(int i = 0; i < nameIds.size(); i++) {
+				byte[] bytes = names[i].getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private int nameIndex(String name) {
+		if(name == null || name.length() == 0) {
+			return -1;
+		}
+		Integer id = nameIds.get(name);
+		if(id == null) {
+			id = nameIds.size();
+			if(id == names.length) {
+				names = Arrays.copyOf(names, id * 2);
+			}
+			names[id] = name;
+			nameIds.put(name, id);
+		}
+		return id;
+	}
+
+	/* Compressed sparse row offsets of edges grouped by the given end node. */
+	private int[] offsets(int[] ends) {
+		int[] first = new int[nodeCount + 1];
+		for(int e = 0; e < edgeCount; e++) {
+			first[ends[e] + 1]++;
+		}
+		for(int node = 0; node < nodeCount; node++) {
+			first[node + 1] += first[node];
+		}
+		return first;
+	}
+
+    /**
+     * Choose landmarks by farthest selection: each new landmark is the node whose travel time
+     * to the nearest landmark chosen so far is largest, which spreads them around the edge of
+     * the network where their bounds are tightest.
+     */
+	private void selectLandmarks(int[] landmarks, int[][] fromLandmarks, int[][] toLandmarks,
+			int[] firstOut, int[] head, int[] firstIn, int[] inEdges, int[] tail, int[] time) {
+		if(landmarks.length == 0) {
+			return;
+		}
+		int[] nearest = new int[nodeCount];
+		Arrays.fill(nearest, RoadGraph.UNREACHABLE);
+		// Start from the node farthest from an arbitrary one.
+		int[] seed = dijkstra(0, firstOut, head, null, time);
+		int next = farthest(seed);
+		for(int l = 0; l < landmarks.length; l++) {
+			landmarks[l] = next;
+			fromLandmarks[l] = dijkstra(next, firstOut, head, null, time);
+			toLandmarks[l] = dijkstra(next, firstIn, tail, inEdges, time);
+			for(int node = 0; node < nodeCount; node++) {
+				nearest[node] = Math.min(nearest[node], Math.min(fromLandmarks[l][node], toLandmarks[l][node]));
+			}
+			next = farthest(nearest);
+		}
+	}
+
+	/* The reachable node with the largest time, preferring unreached nodes if any remain. */
+	private int farthest(int[] distances) {
+		int best = 0;
+		for(int node = 1; node < nodeCount; node++) {
+			if(distances[node] > distances[best]) {
+				best = node;
+			}
+		}
+		return best;
+	}
+
+	/* Travel times from a node, following edges forward or, given the incoming edge lists, backward. */
+	private int[] dijkstra(int source, int[] first, int[] ends, int[] edgeIndex, int[] time) {
+		int[] distances = new int[nodeCount];
+		Arrays.fill(distances, RoadGraph.UNREACHABLE);
+		boolean[] settled = new boolean[nodeCount];
+		LongHeap heap = new LongHeap();
+		distances[source] = 0;
+		heap.push(LongHeap.entry(0, source));
+		while(!heap.isEmpty()) {
+			int node = LongHeap.node(heap.pop());
+			if(settled[node]) {
+				continue;
+			}
+			settled[node] = true;
+			for(int i = first[node]; i < first[node + 1]; i++) {
+				int edge = edgeIndex == null ? i : edgeIndex[i];
+				int other = ends[edge];
+				int distance = distances[node] + time[edge];
+				if(distance < distances[other]) {
+					distances[other] = distance;
+					heap.push(LongHeap.entry(distance, other));
+				}
+			}
+		}
+		return distances;
+	}
+
+	private static void write(DataOutputStream out, int[] values, int count) throws IOException {
+		for(int i = 0; i < count; i++) {
+			out.writeInt(values[i]);
+		}
+	}
+}
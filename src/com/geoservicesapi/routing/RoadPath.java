@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.routing;
+
+/**
+ * RoadPath is a fastest path through a {@link RoadGraph}, as found by a {@link RoadRouter}.
+ */
+public final class RoadPath {
+
+	private final int source;
+	private final int target;
+	private final int[] edges;
+	private final long length;
+	private final long time;
+
+	RoadPath(int source, int target, int[] edges, long length, long time) {
+		this.source = source;
+		this.target = target;
+		this.edges = edges;
+		this.length = length;
+		this.time = time;
+	}
+
+	public int getSource() {
+		return source;
+	}
+
+	public int getTarget() {
+		return target;
+	}
+
+    /**
+     * Get the edges of the path from source to target. The array is not copied.
+     *
+     * @return The edge indexes.
+     */
+	public int[] getEdges() {
+		return edges;
+	}
+
+    /**
+     * Get the length of the path.
+     *
+     * @return The length in meters.
+     */
+	public long getLength() {
+		return length;
+	}
+
+    /**
+     * Get the travel time of the path.
+     *
+     * @return The time in tenths of a second.
+     */
+	public long getTime() {
+		return time;
+	}
+}
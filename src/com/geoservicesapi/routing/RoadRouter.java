@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.routing;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * RoadRouter finds fastest paths through a {@link RoadGraph} using A* search with the ALT
+ * heuristic: lower bounds on the remaining travel time derived from the precomputed times to
+ * and from a few landmarks through the triangle inequality. With well spread landmarks a query
+ * settles a small fraction of the nodes plain Dijkstra search would.
+ * <p>
+ * A router is safe for concurrent use. A query borrows a search state of six <code>int</code>s
+ * per node from a pool, so that a query does not allocate beyond its result. The pool holds at
+ * most one state per processor by default; queries beyond that wait for a state to be returned,
+ * so the heap used does not grow with the number of threads routing.
+ */
+public final class RoadRouter {
+
+	private final RoadGraph graph;
+	private final Semaphore available;
+	private final ConcurrentLinkedQueue<Search> idle = new ConcurrentLinkedQueue<Search>();
+
+    /**
+     * Construct a RoadRouter over a graph, running one query per processor at a time.
+     *
+     * @param graph
+     *            The road graph.
+     */
+	public RoadRouter(RoadGraph graph) {
+		this(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+    /**
+     * Construct a RoadRouter over a graph.
+     *
+     * @param graph
+     *            The road graph.
+     * @param maxSearches
+     *            Number of queries that may run at once, and of search states kept.
+     */
+	public RoadRouter(RoadGraph graph, int maxSearches) {
+		if(maxSearches < 1) {
+			throw new IllegalArgumentException("maxSearches must be positive");
+		}
+		this.graph = graph;
+		this.available = new Semaphore(maxSearches);
+	}
+
+	public RoadGraph getGraph() {
+		return graph;
+	}
+
+    /**
+     * Find the fastest path between the nodes nearest to two locations.
+     *
+     * @param sourceLat
+     *            Latitude of the source.
+     * @param sourceLng
+     *            Longitude of the source.
+     * @param targetLat
+     *            Latitude of the target.
+     * @param targetLng
+     *            Longitude of the target.
+     * @return The path, or null if either location is off the graph or the target cannot be
+     *         reached.
+     */
+	public RoadPath route(double sourceLat, double sourceLng, double targetLat, double targetLng) {
+		int source = graph.nearestNode(sourceLat, sourceLng);
+		int target = graph.nearestNode(targetLat, targetLng);
+		if(source < 0 || target < 0) {
+			return null;
+		}
+		return route(source, target);
+	}
+
+    /**
+     * Find the fastest path between two nodes.
+     *
+     * @param source
+     *            The source node.
+     * @param target
+     *            The target node.
+     * @return The path, or null if the target cannot be reached.
+     */
+	public RoadPath route(int source, int target) {
+		Search search = borrow();
+		try {
+			return route(search, source, target);
+		} finally {
+			giveBack(search);
+		}
+	}
+
+	private RoadPath route(Search search, int source, int target) {
+		search.start();
+		int landmarks = graph.getLandmarkCount();
+		for(int l = 0; l < landmarks; l++) {
+			search.targetFrom[l] = graph.fromLandmark(l, target);
+			search.targetTo[l] = graph.toLandmark(l, target);
+		}
+
+		search.reach(source, 0, 0, -1);
+		search.heap.push(LongHeap.entry(bound(search, source), source));
+		while(!search.heap.isEmpty()) {
+			int node = LongHeap.node(search.heap.pop());
+			if(search.isSettled(node)) {
+				continue;
+			}
+			search.settle(node);
+			if(node == target) {
+				return path(search, source, target);
+			}
+			int time = search.time[node];
+			int length = search.length[node];
+			for(int edge = graph.firstOut(node), end = graph.firstOut(node + 1); edge < end; edge++) {
+				int next = graph.getHead(edge);
+				int nextTime = time + graph.getTime(edge);
+				if(!search.isReached(next) || nextTime < search.time[next]) {
+					search.reach(next, nextTime, length + graph.getLength(edge), edge);
+					search.heap.push(LongHeap.entry(nextTime + bound(search, next), next));
+				}
+			}
+		}
+		return null;
+	}
+
+    /**
+     * Find the travel times and lengths between one node and several others with a single
+     * Dijkstra search, which stops once all of them are settled.
+     *
+     * @param fixed
+     *            The node routed from, or to.
+     * @param others
+     *            The other nodes.
+     * @param toFixed
+     *            Whether to route from the others to the fixed node rather than from it.
+     * @param times
+     *            Receives the time of each other node in tenths of a second, or -1 if it
+     *            cannot be reached.
+     * @param lengths
+     *            Receives the length of each path in meters, or -1 if it cannot be reached.
+     */
+	public void table(int fixed, int[] others, boolean toFixed, int[] times, int[] lengths) {
+		Search search = borrow();
+		try {
+			table(search, fixed, others, toFixed, times, lengths);
+		} finally {
+			giveBack(search);
+		}
+	}
+
+	private void table(Search search, int fixed, int[] others, boolean toFixed, int[] times, int[] lengths) {
+		search.start();
+		int remaining = 0;
+		for(int other : others) {
+			if(search.target[other] != search.generation) {
+				search.target[other] = search.generation;
+				remaining++;
+			}
+		}
+
+		search.reach(fixed, 0, 0, -1);
+		search.heap.push(LongHeap.entry(0, fixed));
+		while(remaining > 0 && !search.heap.isEmpty()) {
+			int node = LongHeap.node(search.heap.pop());
+			if(search.isSettled(node)) {
+				continue;
+			}
+			search.settle(node);
+			if(search.target[node] == search.generation) {
+				remaining--;
+			}
+			int time = search.time[node];
+			int length = search.length[node];
+			int end = toFixed ? graph.firstIn(node + 1) : graph.firstOut(node + 1);
+			for(int i = toFixed ? graph.firstIn(node) : graph.firstOut(node); i < end; i++) {
+				int edge = toFixed ? graph.inEdge(i) : i;
+				int next = toFixed ? graph.getTail(edge) : graph.getHead(edge);
+				int nextTime = time + graph.getTime(edge);
+				if(!search.isReached(next) || nextTime < search.time[next]) {
+					search.reach(next, nextTime, length + graph.getLength(edge), edge);
+					search.heap.push(LongHeap.entry(nextTime, next));
+				}
+			}
+		}
+
+		for(int k = 0; k < others.length; k++) {
+			boolean settled = search.isSettled(others[k]);
+			times[k] = settled ? search.time[others[k]] : -1;
+			lengths[k] = settled ? search.length[others[k]] : -1;
+		}
+	}
+
+	/* Take an idle search state, creating it if fewer than the maximum exist. */
+	private Search borrow() {
+		available.acquireUninterruptibly();
+		Search search = idle.poll();
+		return search != null ? search : new Search(graph.getNodeCount(), graph.getLandmarkCount());
+	}
+
+	private void giveBack(Search search) {
+		idle.offer(search);
+		available.release();
+	}
+
+	/* Lower bound on the time from a node to the search target. */
+	private int bound(Search search, int node) {
+		int best = 0;
+		for(int l = 0, landmarks = search.targetFrom.length; l < landmarks; l++) {
+			int fromTarget = search.targetFrom[l], fromNode = graph.fromLandmark(l, node);
+			if(fromTarget != RoadGraph.UNREACHABLE && fromNode != RoadGraph.UNREACHABLE) {
+				best = Math.max(best, fromTarget - fromNode);
+			}
+			int toNode = graph.toLandmark(l, node), toTarget = search.targetTo[l];
+			if(toNode != RoadGraph.UNREACHABLE && toTarget != RoadGraph.UNREACHABLE) {
+				best = Math.max(best, toNode - toTarget);
+			}
+		}
+		return best;
+	}
+
+	private RoadPath path(Search search, int source, int target) {
+		int count = 0;
+		for(int node = target; node != source; node = graph.getTail(search.parent[node])) {
+			count++;
+		}
+		int[] edges = new int[count];
+		for(int node = target; node != source; node = graph.getTail(search.parent[node])) {
+			edges[--count] = search.parent[node];
+		}
+		return new RoadPath(source, target, edges, search.length[target], search.time[target]);
+	}
+
+	/**
+	 * Search state of one query at a time. Entries are valid only where their stamp equals the current
+	 * generation, so starting a search does not clear the arrays.
+	 */
+	private static final class Search {
+		final int[] time;
+		final int[] length;
+		final int[] parent;
+		final int[] reached;
+		final int[] settled;
+		final int[] target;
+		final int[] targetFrom;
+		final int[] targetTo;
+		final LongHeap heap = new LongHeap();
+		int generation;
+
+		Search(int nodes, int landmarks) {
+			time = new int[nodes];
+			length = new int[nodes];
+			parent = new int[nodes];
+			reached = new int[nodes];
+			settled = new int[nodes];
+			target = new int[nodes];
+			targetFrom = new int[landmarks];
+			targetTo = new int[landmarks];
+		}
+
+		void start() {
+			if(++generation == Integer.MAX_VALUE) {
+				Arrays.fill(reached, 0);
+				Arrays.fill(settled, 0);
+				Arrays.fill(target, 0);
+				generation = 1;
+			}
+			heap.clear();
+		}
+
+		boolean isReached(int node) {
+			return reached[node] == generation;
+		}
+
+		boolean isSettled(int node) {
+			return settled[node] == generation;
+		}
+
+		void reach(int node, int time, int length, int parent) {
+			this.reached[node] = generation;
+			this.time[node] = time;
+			this.length[node] = length;
+			this.parent[node] = parent;
+		}
+
+		void settle(int node) {
+			settled[node] = generation;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AdaptiveLimiter caps the number of requests in flight to one upstream endpoint, adjusting the
+ * cap with an AIMD algorithm driven by latency.
+ * <p>
+ * The limiter tracks the lowest round trip it has seen as the endpoint's unloaded latency. A
+ * response slower than that baseline times the tolerance, a timeout, or a connection failure
+ * means the endpoint is queueing, and the limit is multiplied by the backoff ratio, at most once
+ * per round trip. Otherwise, while at least half the limit is in use, the limit grows by about
+ * one per round trip's worth of responses. Only successful responses are measured; a call that
+ * was abandoned or answered with an error just returns its slot. A request that finds the limit
+ * reached is rejected at once instead of waiting, so callers see a fast
+ * {@link UpstreamRejectedException} during an upstream brownout rather than unbounded latency.
+ */
+public class AdaptiveLimiter {
+
+	private static final ConcurrentHashMap<String, AdaptiveLimiter> LIMITERS = new ConcurrentHashMap<String, AdaptiveLimiter>();
+
+	private final String endpoint;
+	private int minLimit = 2;
+	private int maxLimit = 200;
+	private double tolerance = 2.0;
+	private double backoff = 0.9;
+
+	private double limit = 20;
+	private int inFlight;
+	private long baselineNanos;
+	private long lastDecrease;
+	private long rejected;
+
+	AdaptiveLimiter(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+    /**
+     * Get the limiter of an upstream endpoint.
+     *
+     * @param endpoint
+     *            Name of the endpoint, as used by its latency timer.
+     * @return The limiter, created on first use.
+     */
+	public static AdaptiveLimiter forEndpoint(String endpoint) {
+		AdaptiveLimiter limiter = LIMITERS.get(endpoint);
+		if(limiter == null) {
+			AdaptiveLimiter created = new AdaptiveLimiter(endpoint);
+			limiter = LIMITERS.putIfAbsent(endpoint, created);
+			if(limiter == null) {
+				limiter = created;
+			}
+		}
+		return limiter;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+    /**
+     * Set the bounds of the limit; the current limit is clamped into them.
+     *
+     * @param minLimit
+     *            Lowest limit the limiter backs off to, at least 1.
+     * @param maxLimit
+     *            Highest limit the limiter grows to.
+     */
+	public synchronized void setLimits(int minLimit, int maxLimit) {
+		if(minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("Require 1 <= minLimit <= maxLimit");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, limit));
+	}
+
+    /**
+     * Set how the limiter reacts to congestion.
+     *
+     * @param tolerance
+     *            Multiple of the baseline latency above which a response signals congestion.
+     * @param backoff
+     *            Factor the limit is multiplied by on congestion, between 0 and 1.
+     */
+	public synchronized void setCongestionPolicy(double tolerance, double backoff) {
+		if(tolerance <= 1 || backoff <= 0 || backoff >= 1) {
+			throw new IllegalArgumentException("Require tolerance > 1 and 0 < backoff < 1");
+		}
+		this.tolerance = tolerance;
+		this.backoff = backoff;
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized long getRejectedCount() {
+		return rejected;
+	}
+
+    /**
+     * Take a slot for a request.
+     *
+     * @return false if the limit is reached and the request must be rejected.
+     */
+	synchronized boolean tryAcquire() {
+		if(inFlight >= (int) limit) {
+			rejected++;
+			return false;
+		}
+		inFlight++;
+		return true;
+	}
+
+    /**
+     * Return the slot of a request without adjusting the limit, for requests whose duration
+     * says nothing about the endpoint, such as cancelled calls and error responses.
+     */
+	synchronized void release() {
+		inFlight--;
+	}
+
+    /**
+     * Return the slot of a finished request and adjust the limit.
+     *
+     * @param rttNanos
+     *            Duration of the request.
+     * @param congested
+     *            Whether the request timed out or could not connect; false for a successful
+     *            response.
+     */
+	synchronized void release(long rttNanos, boolean congested) {
+		inFlight--;
+		long now = System.nanoTime();
+		if(!congested) {
+			if(baselineNanos == 0 || rttNanos < baselineNanos) {
+				baselineNanos = rttNanos;
+			} else {
+				// Let the baseline drift up slowly so a permanent latency shift is eventually accepted.
+				baselineNanos += (rttNanos - baselineNanos) >> 10;
+			}
+			congested = rttNanos > baselineNanos * tolerance;
+		}
+		if(congested) {
+			if(now - lastDecrease > Math.max(baselineNanos, rttNanos)) {
+				limit = Math.max(minLimit, limit * backoff);
+				lastDecrease = now;
+			}
+		} else if(inFlight * 2 >= (int) limit) {
+			limit = Math.min(maxLimit, limit + 1 / limit);
+		}
+	}
+}
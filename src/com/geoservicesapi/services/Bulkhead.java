@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bulkhead isolates the {@link TrafficClass}es sharing one upstream endpoint.
+ * <p>
+ * Each class has its own lane with a concurrency limit, a bounded queue with a maximum wait, and
+ * its share of the endpoint's request rate. Interactive requests have strict priority: a bulk
+ * request is only admitted while no interactive request is waiting. A request that finds its
+ * queue full, or waits longer than its lane allows, is rejected with an
+ * {@link UpstreamRejectedException}. The endpoint's {@link AdaptiveLimiter} still applies to the
+ * requests the bulkhead admits.
+ */
+public class Bulkhead {
+
+	private static final ConcurrentHashMap<String, Bulkhead> BULKHEADS = new ConcurrentHashMap<String, Bulkhead>();
+
+	private final String endpoint;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final Lane[] lanes = new Lane[TrafficClass.values().length];
+	private double permitsPerSecond;
+
+	Bulkhead(String endpoint) {
+		this.endpoint = endpoint;
+		lanes[TrafficClass.INTERACTIVE.ordinal()] = new Lane(64, 256, 2000, 0.8);
+		lanes[TrafficClass.BULK.ordinal()] = new Lane(8, 1024, 30000, 0.2);
+	}
+
+    /**
+     * Get the bulkhead of an upstream endpoint.
+     *
+     * @param endpoint
+     *            Name of the endpoint, as used by its latency timer.
+     * @return The bulkhead, created on first use.
+     */
+	public static Bulkhead forEndpoint(String endpoint) {
+		Bulkhead bulkhead = BULKHEADS.get(endpoint);
+		if(bulkhead == null) {
+			Bulkhead created = new Bulkhead(endpoint);
+			bulkhead = BULKHEADS.putIfAbsent(endpoint, created);
+			if(bulkhead == null) {
+				bulkhead = created;
+			}
+		}
+		return bulkhead;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+    /**
+     * Configure the lane of a traffic class.
+     *
+     * @param trafficClass
+     *            The class to configure.
+     * @param maxConcurrent
+     *            Requests of the class that may be in flight at once.
+     * @param maxQueued
+     *            Requests of the class that may wait for admission.
+     * @param maxWaitMillis
+     *            Longest a request of the class waits before it is rejected.
+     */
+	public void configure(TrafficClass trafficClass, int maxConcurrent, int maxQueued, long maxWaitMillis) {
+		if(maxConcurrent < 1 || maxQueued < 0 || maxWaitMillis < 0) {
+			throw new IllegalArgumentException("Require maxConcurrent >= 1, maxQueued >= 0 and maxWaitMillis >= 0");
+		}
+		lock.lock();
+		try {
+			Lane lane = lanes[trafficClass.ordinal()];
+			lane.maxConcurrent = maxConcurrent;
+			lane.maxQueued = maxQueued;
+			lane.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+    /**
+     * Limit the request rate of the endpoint and split it between the traffic classes.
+     *
+     * @param permitsPerSecond
+     *            Requests per second across all classes, or 0 for no limit.
+     * @param interactiveShare
+     *            Fraction of the rate reserved for interactive requests; bulk gets the rest.
+     */
+	public void setRateLimit(double permitsPerSecond, double interactiveShare) {
+		if(permitsPerSecond < 0 || interactiveShare <= 0 || interactiveShare > 1) {
+			throw new IllegalArgumentException("Require permitsPerSecond >= 0 and 0 < interactiveShare <= 1");
+		}
+		lock.lock();
+		try {
+			this.permitsPerSecond = permitsPerSecond;
+			lanes[TrafficClass.INTERACTIVE.ordinal()].share = interactiveShare;
+			lanes[TrafficClass.BULK.ordinal()].share = 1 - interactiveShare;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight(TrafficClass trafficClass) {
+		lock.lock();
+		try {
+			return lanes[trafficClass.ordinal()].inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getQueued(TrafficClass trafficClass) {
+		lock.lock();
+		try {
+			return lanes[trafficClass.ordinal()].waiting;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getRejectedCount(TrafficClass trafficClass) {
+		lock.lock();
+		try {
+			return lanes[trafficClass.ordinal()].rejected;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+    /**
+     * Wait for admission of a request.
+     *
+     * @param options
+     *            Options of the call making the request, which choose the lane and bound the wait.
+     * @throws UpstreamRejectedException
+     *             If the queue is full, the wait is too long, or the thread is interrupted.
+     * @throws CallAbortedException
+     *             If the deadline of the call passes while waiting.
+     */
+	void acquire(CallOptions options) {
+		TrafficClass trafficClass = options.getTrafficClass();
+		Lane lane = lanes[trafficClass.ordinal()];
+		lock.lock();
+		try {
+			if(!admit(trafficClass, lane)) {
+				if(lane.waiting >= lane.maxQueued) {
+					lane.rejected++;
+					throw new UpstreamRejectedException(endpoint);
+				}
+				lane.waiting++;
+				try {
+					long deadline = System.nanoTime() + lane.maxWaitNanos;
+					while(!admit(trafficClass, lane)) {
+						long remaining = deadline - System.nanoTime();
+						if(remaining <= 0) {
+							lane.rejected++;
+							throw new UpstreamRejectedException(endpoint);
+						}
+						options.check();
+						remaining = Math.min(remaining, options.remainingNanos());
+						long untilToken = lane.nanosUntilToken(permitsPerSecond);
+						changed.awaitNanos(untilToken > 0 ? Math.min(remaining, untilToken) : remaining);
+					}
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					lane.rejected++;
+					throw new UpstreamRejectedException(endpoint);
+				} finally {
+					lane.waiting--;
+					// An interactive request leaving the queue may unblock bulk requests.
+					changed.signalAll();
+				}
+			}
+			lane.inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void release(TrafficClass trafficClass) {
+		lock.lock();
+		try {
+			lanes[trafficClass.ordinal()].inFlight--;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/* Called with the lock held; takes a rate token when admitting. */
+	private boolean admit(TrafficClass trafficClass, Lane lane) {
+		if(lane.inFlight >= lane.maxConcurrent) {
+			return false;
+		}
+		if(trafficClass != TrafficClass.INTERACTIVE && lanes[TrafficClass.INTERACTIVE.ordinal()].waiting > 0) {
+			return false;
+		}
+		return lane.takeToken(permitsPerSecond);
+	}
+
+	/**
+	 * State of one traffic class, guarded by the bulkhead's lock.
+	 */
+	private static final class Lane {
+		int maxConcurrent;
+		int maxQueued;
+		long maxWaitNanos;
+		double share;
+		int inFlight;
+		int waiting;
+		long rejected;
+		double tokens = 1;
+		long refilledAt = System.nanoTime();
+
+		Lane(int maxConcurrent, int maxQueued, long maxWaitMillis, double share) {
+			this.maxConcurrent = maxConcurrent;
+			this.maxQueued = maxQueued;
+			this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+			this.share = share;
+		}
+
+		boolean takeToken(double permitsPerSecond) {
+			if(permitsPerSecond <= 0) {
+				return true;
+			}
+			refill(permitsPerSecond);
+			if(tokens >= 1) {
+				tokens--;
+				return true;
+			}
+			return false;
+		}
+
+		long nanosUntilToken(double permitsPerSecond) {
+			if(permitsPerSecond <= 0 || share <= 0) {
+				return 0;
+			}
+			refill(permitsPerSecond);
+			return tokens >= 1 ? 0 : (long) ((1 - tokens) / (permitsPerSecond * share) * 1e9);
+		}
+
+		private void refill(double permitsPerSecond) {
+			long now = System.nanoTime();
+			double rate = permitsPerSecond * share;
+			// Allow a burst of one second's worth of requests.
+			tokens = Math.min(Math.max(1, rate), tokens + (now - refilledAt) / 1e9 * rate);
+			refilledAt = now;
+		}
+	}
+}
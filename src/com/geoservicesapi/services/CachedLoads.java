@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import com.geoservicesapi.cache.Loader;
+import com.geoservicesapi.cache.ServiceCache;
+
+/**
+ * CachedLoads looks up service caches on behalf of a call.
+ * <p>
+ * A cache coalesces concurrent misses into the load of whichever caller came first, and that load
+ * runs under the first caller's {@link CallOptions}. When the first caller is cancelled or runs out
+ * of time, the callers waiting with it would fail with its error although their own calls are
+ * healthy; they load the value again under their own options instead.
+ * <p>
+ * An interactive caller never waits for a load started by a bulk caller, whose upstream requests
+ * only run while no interactive request is waiting; it loads the value itself at interactive
+ * priority.
+ */
+final class CachedLoads {
+
+	private CachedLoads() {
+	}
+
+    /**
+     * Get a value from a cache, loading it on a miss under the options of the call.
+     *
+     * @param cache
+     *            The cache.
+     * @param key
+     *            Key to look up.
+     * @param loader
+     *            Computes the value under the options of this call.
+     * @param options
+     *            Options of the call, which bound the wait for another caller's load.
+     * @return The value, or null if the loader returned null.
+     * @throws Exception
+     *             The exception thrown by the loader, or a
+     *             {@link java.util.concurrent.TimeoutException} if this call's deadline passed
+     *             while waiting for another caller's load.
+     */
+	static <K, V> V get(ServiceCache<K, V> cache, K key, Loader<? super K, V> loader, CallOptions options) throws Exception {
+		try {
+			return cache.get(key, loader, options.remainingNanos(), priority(options.getTrafficClass()));
+		} catch(Exception e) {
+			if(options.isAborted() || !isAborted(e)) {
+				throw e;
+			}
+			// The load this call waited for was abandoned by its own caller.
+			long start = System.nanoTime();
+			V value = loader.load(key);
+			if(value != null) {
+				cache.put(key, value, System.nanoTime() - start);
+			}
+			return value;
+		}
+	}
+
+	/* Cache load priority of a traffic class: the earlier the class, the higher the priority. */
+	private static int priority(TrafficClass trafficClass) {
+		return TrafficClass.values().length - 1 - trafficClass.ordinal();
+	}
+
+	private static boolean isAborted(Throwable e) {
+		for(Throwable t = e; t != null; t = t.getCause()) {
+			if(t instanceof CallAbortedException) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
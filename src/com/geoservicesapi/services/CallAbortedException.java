@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+/**
+ * Thrown when a call is abandoned because its deadline passed or its caller cancelled it.
+ */
+class CallAbortedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String DEADLINE_EXCEEDED = "DEADLINE_EXCEEDED";
+	static final String CANCELLED = "CANCELLED";
+
+	private final String id;
+
+	CallAbortedException(String id) {
+		super(DEADLINE_EXCEEDED.equals(id) ? "Deadline exceeded" : "Call cancelled");
+		this.id = id;
+	}
+
+    /**
+     * Get the error id reported to the caller.
+     *
+     * @return {@link #DEADLINE_EXCEEDED} or {@link #CANCELLED}.
+     */
+	String getId() {
+		return id;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CallOptions are the per-call settings accepted by the service methods: the traffic class, an
+ * optional deadline, and an optional {@link CancellationToken}. Instances are immutable; the
+ * <code>with</code> methods return modified copies.
+ * <p>
+ * A deadline bounds the whole call, including waits for admission, connect and read timeouts of
+ * every upstream request, and the fan-out of calls that make several requests. A call whose
+ * deadline passes returns an error with id <code>DEADLINE_EXCEEDED</code>, or a result marked
+ * <code>"partial": true</code> where part of the answer is already known.
+ */
+public final class CallOptions {
+
+	/** Options used by the service methods that do not take any: interactive traffic, no deadline. */
+	public static final CallOptions DEFAULT = new CallOptions(TrafficClass.INTERACTIVE, false, 0, null);
+
+	private final TrafficClass trafficClass;
+	private final boolean hasDeadline;
+	private final long deadline;
+	private final CancellationToken cancellation;
+
+	private CallOptions(TrafficClass trafficClass, boolean hasDeadline, long deadline, CancellationToken cancellation) {
+		this.trafficClass = trafficClass;
+		this.hasDeadline = hasDeadline;
+		this.deadline = deadline;
+		this.cancellation = cancellation;
+	}
+
+	public static CallOptions interactive() {
+		return DEFAULT;
+	}
+
+	public static CallOptions bulk() {
+		return DEFAULT.withTrafficClass(TrafficClass.BULK);
+	}
+
+	public TrafficClass getTrafficClass() {
+		return trafficClass;
+	}
+
+	public CallOptions withTrafficClass(TrafficClass trafficClass) {
+		return new CallOptions(trafficClass, hasDeadline, deadline, cancellation);
+	}
+
+    /**
+     * Set the deadline relative to now.
+     *
+     * @param timeout
+     *            Time the call may take.
+     * @param unit
+     *            Unit of the timeout.
+     * @return The modified options.
+     */
+	public CallOptions withTimeout(long timeout, TimeUnit unit) {
+		return withDeadline(System.nanoTime() + unit.toNanos(timeout));
+	}
+
+    /**
+     * Set the deadline.
+     *
+     * @param nanoTime
+     *            Deadline as a {@link System#nanoTime()} value.
+     * @return The modified options.
+     */
+	public CallOptions withDeadline(long nanoTime) {
+		return new CallOptions(trafficClass, true, nanoTime, cancellation);
+	}
+
+	public CallOptions withCancellation(CancellationToken cancellation) {
+		return new CallOptions(trafficClass, hasDeadline, deadline, cancellation);
+	}
+
+	public boolean hasDeadline() {
+		return hasDeadline;
+	}
+
+    /**
+     * Get the deadline.
+     *
+     * @return The deadline as a {@link System#nanoTime()} value; meaningless without a deadline.
+     */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public CancellationToken getCancellation() {
+		return cancellation;
+	}
+
+    /**
+     * Get the time left until the deadline.
+     *
+     * @return The remaining nanoseconds, 0 or less once the deadline passed, or
+     *         {@link Long#MAX_VALUE} without a deadline.
+     */
+	public long remainingNanos() {
+		return hasDeadline ? deadline - System.nanoTime() : Long.MAX_VALUE;
+	}
+
+    /**
+     * Whether the call should stop: it was cancelled or its deadline passed.
+     *
+     * @return true if the call should stop.
+     */
+	public boolean isAborted() {
+		return (cancellation != null && cancellation.isCancelled()) || remainingNanos() <= 0;
+	}
+
+    /**
+     * Throw if the call should stop.
+     *
+     * @throws CallAbortedException
+     *             If the call was cancelled or its deadline passed.
+     */
+	void check() {
+		if(cancellation != null && cancellation.isCancelled()) {
+			throw new CallAbortedException(CallAbortedException.CANCELLED);
+		}
+		if(remainingNanos() <= 0) {
+			throw new CallAbortedException(CallAbortedException.DEADLINE_EXCEEDED);
+		}
+	}
+
+    /**
+     * Get a timeout for a blocking operation that ends at the deadline.
+     *
+     * @param defaultMillis
+     *            Timeout to use without a deadline; 0 means none.
+     * @return The timeout in milliseconds, at least 1 when there is a deadline.
+     */
+	int timeoutMillis(int defaultMillis) {
+		if(!hasDeadline) {
+			return defaultMillis;
+		}
+		// Round up, so that a timeout firing means the deadline has passed.
+		long millis = Math.max(1, (remainingNanos() + 999999) / 1000000);
+		if(defaultMillis > 0) {
+			millis = Math.min(millis, defaultMillis);
+		}
+		return (int) Math.min(Integer.MAX_VALUE, millis);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+/**
+ * CallTiming is the phase breakdown of one upstream HTTP call. Durations are in nanoseconds;
+ * a phase that could not be measured is -1.
+ * <p>
+ * The handshake of an https request happens inside {@link java.net.HttpURLConnection#connect()}
+ * and cannot be separated from it, so it is reported as part of the connect phase and the
+ * handshake phase is -1. Calls made through the Yelp OAuth client only report their total and
+ * parse times.
+ */
+public final class CallTiming {
+
+	private final String endpoint;
+	long resolve = -1;
+	long connect = -1;
+	long handshake = -1;
+	long firstByte = -1;
+	long body = -1;
+	long parse = -1;
+	long total = -1;
+	long bytes;
+
+	CallTiming(String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+    /**
+     * Get the time spent resolving the host name; near zero when the JVM's DNS cache answered.
+     *
+     * @return The duration in nanoseconds, or -1.
+     */
+	public long getResolveNanos() {
+		return resolve;
+	}
+
+    /**
+     * Get the time spent opening the connection, including the TLS handshake for https.
+     *
+     * @return The duration in nanoseconds, or -1.
+     */
+	public long getConnectNanos() {
+		return connect;
+	}
+
+	public long getHandshakeNanos() {
+		return handshake;
+	}
+
+    /**
+     * Get the time from the end of connecting until the response headers arrived.
+     *
+     * @return The duration in nanoseconds, or -1.
+     */
+	public long getFirstByteNanos() {
+		return firstByte;
+	}
+
+	public long getBodyNanos() {
+		return body;
+	}
+
+	public long getParseNanos() {
+		return parse;
+	}
+
+	public long getTotalNanos() {
+		return total;
+	}
+
+    /**
+     * Get the length of the response body.
+     *
+     * @return The number of characters read.
+     */
+	public long getBytes() {
+		return bytes;
+	}
+
+    /**
+     * Get the timing as JSON, with durations in milliseconds.
+     *
+     * @return The JSONObject associated with the timing.
+     */
+	public JSONObject toJSON() {
+		JSONObject timing = new JSONObject();
+		timing.put("endpoint", endpoint);
+		timing.put("resolve", millis(resolve));
+		timing.put("connect", millis(connect));
+		timing.put("handshake", millis(handshake));
+		timing.put("firstByte", millis(firstByte));
+		timing.put("body", millis(body));
+		timing.put("parse", millis(parse));
+		timing.put("total", millis(total));
+		timing.put("bytes", bytes);
+		return timing;
+	}
+
+	private static double millis(long nanos) {
+		return nanos < 0 ? -1 : nanos / 1e6;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CancellationToken lets a caller abandon service calls it has started. Pass it with
+ * {@link CallOptions#withCancellation(CancellationToken)}; cancelling it aborts the upstream
+ * requests in flight for those calls and stops their fan-out, and the calls return an error with
+ * id <code>CANCELLED</code> or the partial result gathered so far.
+ */
+public final class CancellationToken {
+
+	private final List<Runnable> listeners = new ArrayList<Runnable>();
+	private volatile boolean cancelled;
+
+    /**
+     * Cancel the calls using this token. Cancelling twice has no further effect.
+     */
+	public void cancel() {
+		List<Runnable> toRun;
+		synchronized(listeners) {
+			if(cancelled) {
+				return;
+			}
+			cancelled = true;
+			toRun = new ArrayList<Runnable>(listeners);
+			listeners.clear();
+		}
+		for(Runnable listener : toRun) {
+			try {
+				listener.run();
+			} catch(RuntimeException ignore) {
+			}
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+    /**
+     * Run an action when the token is cancelled, or right away if it already is.
+     *
+     * @param listener
+     *            The action, which must not block.
+     */
+	void addListener(Runnable listener) {
+		synchronized(listeners) {
+			if(!cancelled) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.run();
+	}
+
+	void removeListener(Runnable listener) {
+		synchronized(listeners) {
+			listeners.remove(listener);
+		}
+	}
+}
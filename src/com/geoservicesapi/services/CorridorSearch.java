@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.geoservicesapi.Yelp;
+import com.geoservicesapi.geometry.CorridorIndex;
+import com.geoservicesapi.geometry.RouteShape;
+
+/**
+ * CorridorSearch finds the businesses along a route for {@link PlacesServices#searchCorridor}.
+ * <p>
+ * Points are sampled evenly along the route, about two corridor widths apart or fewer if the
+ * sample budget requires, and each is searched with a radius that covers the corridor up to
+ * the next point. If the points are so far apart that the radius would exceed
+ * {@link Yelp#MAX_RADIUS}, the searches cannot reach the whole corridor and the result is marked
+ * truncated. The searches run concurrently, at most {@link #MAX_CONCURRENT_SAMPLES} at a time.
+ * Businesses found by several searches are resolved once by {@link CoverageSearch}, and those
+ * outside the corridor are dropped using a {@link CorridorIndex} over the route. The venues are
+ * ranked by the detour to reach them, taken as twice their distance from the route, and then by
+ * how far along the route they are.
+ */
+final class CorridorSearch extends CoverageSearch<CorridorSearch.Sample> {
+
+	static final int MAX_CONCURRENT_SAMPLES = 4;
+
+	private static final Comparator<JSONObject> BY_DETOUR = new Comparator<JSONObject>() {
+		public int compare(JSONObject a, JSONObject b) {
+			int order = Double.compare(a.getDouble("detour"), b.getDouble("detour"));
+			return order != 0 ? order : Double.compare(a.getDouble("along"), b.getDouble("along"));
+		}
+	};
+
+	private final String term;
+	private final CorridorIndex index;
+	private final double radius;
+	private final int samples;
+
+	private final List<JSONObject> venues = new ArrayList<JSONObject>();
+
+	CorridorSearch(PlacesServices places, String term, RouteShape shape, double width, int maxSamples, CallOptions options) {
+		super(places, MAX_CONCURRENT_SAMPLES, options);
+		this.term = term;
+		this.index = new CorridorIndex(shape, width);
+
+		int count = (int) Math.min(maxSamples, Math.ceil(shape.getLength() / (2 * width)) + 1);
+		count = Math.max(2, count);
+		double spacing = shape.getLength() / (count - 1);
+		// The circle around each point reaches the corners of the corridor halfway to the next.
+		double reach = Math.hypot(spacing / 2, width);
+		if(reach > Yelp.MAX_RADIUS) {
+			reach = Yelp.MAX_RADIUS;
+			truncated = true;
+		}
+		this.radius = reach;
+		for(double[] point : shape.evenlySpaced(count)) {
+			waiting.add(new Sample(point[0], point[1]));
+		}
+		this.samples = count;
+	}
+
+	JSONObject search(Sample sample) {
+		return places.searchYelp(Yelp.searchWithinRadius(term, sample.lat, sample.lng, radius), options);
+	}
+
+	void found(VenueRecord record) {
+		double[] location = index.locate(record.getLat(), record.getLng());
+		if(location == null) {
+			// Outside the corridor.
+			return;
+		}
+		JSONObject json = record.toJSON(location[0]);
+		json.put("along", location[1]);
+		json.put("detour", 2 * location[0]);
+		venues.add(json);
+	}
+
+	void answer(JSONObject result) {
+		Collections.sort(venues, BY_DETOUR);
+		result.put("result", new JSONArray(venues));
+		result.put("count", venues.size());
+		result.put("samples", samples - waiting.size());
+	}
+
+	static final class Sample extends CoverageSearch.Query {
+		final double lat;
+		final double lng;
+
+		Sample(double lat, double lng) {
+			this.lat = lat;
+			this.lng = lng;
+		}
+	}
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * CoverageSearch covers an area with concurrent Yelp searches and resolves the businesses they
+ * find, for {@link RegionSearch} and {@link CorridorSearch}.
+ * <p>
+ * Queued searches run at most a given number at a time, subject to the {@link Bulkhead} and
+ * {@link AdaptiveLimiter} of the Yelp endpoint. Businesses are deduplicated across searches and
+ * resolved concurrently. All bookkeeping and subclass callbacks happen on the calling thread,
+ * which waits for the messages posted by the search and venue tasks.
+ */
+abstract class CoverageSearch<Q extends CoverageSearch.Query> {
+
+	final PlacesServices places;
+	final CallOptions options;
+	final ArrayDeque<Q> waiting = new ArrayDeque<Q>();
+	boolean partial;
+	boolean truncated;
+
+	private final int maxConcurrent;
+	private final LinkedBlockingQueue<Object> done = new LinkedBlockingQueue<Object>();
+	private final List<Future<?>> futures = new ArrayList<Future<?>>();
+	private final Set<String> seen = new HashSet<String>();
+	private int searchesRunning;
+	private int venuesRunning;
+	private boolean answered;
+	private JSONObject firstError;
+	private RuntimeException failure;
+
+	CoverageSearch(PlacesServices places, int maxConcurrent, CallOptions options) {
+		this.places = places;
+		this.maxConcurrent = maxConcurrent;
+		this.options = options;
+	}
+
+    /**
+     * Run the queued searches, and those queued while they complete.
+     *
+     * @return The result filled in by {@link #answer(JSONObject)}, marked partial if searches
+     *         failed or the deadline passed and truncated if the subclass found the coverage
+     *         incomplete; or the error of the first failed search if no search succeeded.
+     */
+	JSONObject run() {
+		try {
+			while(true) {
+				while(searchesRunning < maxConcurrent && !waiting.isEmpty() && !options.isAborted()) {
+					start(waiting.poll());
+				}
+				if(searchesRunning == 0 && venuesRunning == 0) {
+					partial |= !waiting.isEmpty();
+					break;
+				}
+				Object message = null;
+				try {
+					message = done.poll(Math.max(0, options.remainingNanos()), TimeUnit.NANOSECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if(message == null) {
+					partial = true;
+					break;
+				}
+				if(message instanceof Venue) {
+					venueDone((Venue) message);
+				} else {
+					@SuppressWarnings("unchecked")
+					Q query = (Q) message;
+					searchDone(query);
+				}
+			}
+		} finally {
+			for(Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+
+		JSONObject result = new JSONObject();
+		if(!answered) {
+			if(failure != null) {
+				throw failure;
+			}
+			options.check();
+			result.put("error", firstError);
+			return result;
+		}
+		answer(result);
+		if(partial) {
+			result.put("partial", true);
+		}
+		if(truncated) {
+			result.put("truncated", true);
+		}
+		return result;
+	}
+
+    /**
+     * Make the Yelp search of a query. Called on a fan-out thread.
+     *
+     * @return The Yelp response.
+     */
+	abstract JSONObject search(Q query);
+
+    /**
+     * Called once the businesses a query found have been queued for resolving.
+     *
+     * @param query
+     *            The query.
+     * @param businesses
+     *            The businesses Yelp returned, including those already found by other queries.
+     */
+	void searched(Q query, JSONArray businesses) {
+	}
+
+    /**
+     * Called for each business resolved.
+     *
+     * @param record
+     *            The resolved venue.
+     */
+	abstract void found(VenueRecord record);
+
+    /**
+     * Fill in the result of a search that succeeded at least once.
+     *
+     * @param result
+     *            The result.
+     */
+	abstract void answer(JSONObject result);
+
+	private void start(final Q query) {
+		searchesRunning++;
+		futures.add(FanOut.submit(new Callable<Void>() {
+			public Void call() {
+				try {
+					query.response = search(query);
+				} catch(RuntimeException e) {
+					query.error = e;
+				}
+				done.add(query);
+				return null;
+			}
+		}));
+	}
+
+	private void searchDone(Q query) {
+		searchesRunning--;
+		if(query.error != null) {
+			failure = query.error;
+			partial = true;
+			return;
+		}
+		JSONArray businesses = query.response.optJSONArray("businesses");
+		if(businesses == null) {
+			if(firstError == null) {
+				firstError = query.response.optJSONObject("error");
+			}
+			partial = true;
+			return;
+		}
+		answered = true;
+		for(int index=0; index<businesses.length(); index++) {
+			final JSONObject business = businesses.getJSONObject(index);
+			String id = business.optString("id", null);
+			if(id != null && !seen.add(id)) {
+				continue;
+			}
+			venuesRunning++;
+			futures.add(FanOut.submit(new Callable<Void>() {
+				public Void call() {
+					Venue venue = new Venue();
+					try {
+						venue.record = places.resolveVenue(business, options);
+					} catch(RuntimeException e) {
+						venue.error = e;
+					}
+					done.add(venue);
+					return null;
+				}
+			}));
+		}
+		searched(query, businesses);
+	}
+
+	private void venueDone(Venue venue) {
+		venuesRunning--;
+		if(venue.error != null) {
+			partial = true;
+			return;
+		}
+		found(venue.record);
+	}
+
+	/**
+	 * One Yelp search of the area, with its response once it completes.
+	 */
+	static class Query {
+		JSONObject response;
+		RuntimeException error;
+	}
+
+	private static final class Venue {
+		VenueRecord record;
+		RuntimeException error;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+/**
+ * DirectionsProvider is a source of routes for {@link DirectionsServices}.
+ * <p>
+ * Implementations must be safe for concurrent use and should give up once the options they
+ * are passed are {@link CallOptions#isAborted() aborted}. Distances are in miles and times in
+ * seconds, as MapQuest reports them. A route that does not exist is reported by returning
+ * null; any failure is reported by throwing.
+ */
+public interface DirectionsProvider {
+
+    /**
+     * Get the name of the provider, used in metrics and cache keys.
+     *
+     * @return The name.
+     */
+	String getName();
+
+    /**
+     * Get the fastest route from a source to a destination.
+     *
+     * @param sourceLat
+     *            Latitude of the source.
+     * @param sourceLng
+     *            Longitude of the source.
+     * @param destinationLat
+     *            Latitude of the destination.
+     * @param destinationLng
+     *            Longitude of the destination.
+     * @param format
+     *            What the route should contain besides its summary and narrative.
+     * @param options
+     *            Options of the service call.
+     * @return The route in the form returned by {@link DirectionsServices#getRoute}, with the
+     *         <code>"startPoint"</code> of each direction, or null if there is no route.
+     * @throws Exception
+     *             If the lookup failed.
+     */
+	JSONObject route(double sourceLat, double sourceLng, double destinationLat, double destinationLng, RouteFormat format, CallOptions options) throws Exception;
+
+    /**
+     * Get the travel distances and times between one location and several others.
+     *
+     * @param locations
+     *            Latitude and longitude of the fixed location, followed by the others.
+     * @param manyToOne
+     *            Whether to route from the others to the fixed location rather than from it.
+     * @param options
+     *            Options of the service call.
+     * @return The distance of each of the others in miles, followed by their times in
+     *         seconds, with negative values for those that cannot be routed.
+     * @throws Exception
+     *             If the lookup failed.
+     */
+	double[] matrix(double[][] locations, boolean manyToOne, CallOptions options) throws Exception;
+
+    /**
+     * Get the travel distances and times between every pair of several locations.
+     *
+     * @param locations
+     *            Latitude and longitude of each location.
+     * @param options
+     *            Options of the service call.
+     * @return The distances in miles from each location to each, row by row, followed by the
+     *         times in seconds in the same order, with negative values for pairs that cannot
+     *         be routed.
+     * @throws Exception
+     *             If the lookup failed.
+     */
+	double[] allToAll(double[][] locations, CallOptions options) throws Exception;
+}
@@ -16,17 +16,32 @@
 
 package com.geoservicesapi.services;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.json.JSONObject;
 import org.json.JSONArray;
 
+import com.geoservicesapi.cache.CacheBudget;
+import com.geoservicesapi.cache.Loader;
+import com.geoservicesapi.cache.ObjectSizes;
+import com.geoservicesapi.cache.ServiceCache;
+import com.geoservicesapi.cache.Weigher;
+import com.geoservicesapi.geometry.Polyline;
+import com.geoservicesapi.geometry.RouteShape;
+import com.geoservicesapi.geometry.Simplifier;
+import com.geoservicesapi.metrics.LatencyTimer;
+import com.geoservicesapi.metrics.Metrics;
+import com.geoservicesapi.metrics.Outcome;
+
 /**
  * DirectionsServices is a class for consuming directions services using MapQuest Directions API.
+ * Routes can also be computed offline by constructing it with a {@link LocalDirections}.
  * 
  * @author Saurabh Rane
  * @version 2014-07-24
@@ -34,7 +49,46 @@ import org.json.JSONArray;
 
 public class DirectionsServices {
 	
-	private String mapQuestApiKey;
+	private static final long ROUTE_TTL = 60 * 60 * 1000L;
+
+	private static final LatencyTimer GET_ROUTE = Metrics.timer("method.DirectionsServices.getRoute");
+	private static final LatencyTimer GET_MIDPOINT = Metrics.timer("method.DirectionsServices.getMidpoint");
+	private static final LatencyTimer GET_ROUTES = Metrics.timer("method.DirectionsServices.getRoutes");
+	private static final LatencyTimer GET_ROUTE_MATRIX = Metrics.timer("method.DirectionsServices.getRouteMatrix");
+	private static final LatencyTimer OPTIMIZE_ROUTE = Metrics.timer("method.DirectionsServices.optimizeRoute");
+	private static final LatencyTimer FIND_MEETING_POINT = Metrics.timer("method.DirectionsServices.findMeetingPoint");
+
+	private static final int MAX_STOPS = 100;
+	private static final int MAX_BATCH_ROUTES = 100;
+	private static final int MAX_PARTICIPANTS = 50;
+	private static final int DEFAULT_MEETING_REQUESTS = 50;
+
+	/* Zoom levels of the simplified shapes, from the coarsest. */
+	private static final int[] LEVEL_ZOOMS = {5, 8, 11, 14};
+	/* Ground size of a pixel of a 256 pixel tile at the equator, at zoom 0. */
+	private static final double METERS_PER_PIXEL = 156543.03392;
+	private static final long DEFAULT_SOLVE_MILLIS = 1000;
+
+	/* Most locations MapQuest accepts in a one-to-many or many-to-one route matrix. */
+	private static final int MAX_MATRIX_LOCATIONS = 100;
+	/* Most locations MapQuest accepts in an all-to-all route matrix. */
+	private static final int MAX_ALL_TO_ALL_LOCATIONS = 25;
+
+	private static final Weigher<String, String> ROUTE_WEIGHER = new Weigher<String, String>() {
+		public long weigh(String key, String value) {
+			return ObjectSizes.of(key) + ObjectSizes.of(value);
+		}
+	};
+
+	private static final Weigher<String, double[]> MATRIX_WEIGHER = new Weigher<String, double[]>() {
+		public long weigh(String key, double[] value) {
+			return ObjectSizes.of(key) + ObjectSizes.of(value);
+		}
+	};
+
+	private DirectionsProvider directions;
+	private ServiceCache<String, String> routeCache;
+	private ServiceCache<String, double[]> matrixCache;
 
     /**
      * Construct a DirectionsServices with your mapQuest api key.
@@ -43,7 +97,33 @@ public class DirectionsServices {
      *            Your api key for mapQuest api.
      */
 	public DirectionsServices(String mapQuestApiKey) {
-		this.mapQuestApiKey = mapQuestApiKey;
+		this(mapQuestApiKey, CacheBudget.shared());
+	}
+
+    /**
+     * Construct a DirectionsServices whose route cache is charged against the given memory budget.
+     *
+     * @param mapQuestApiKey
+     *            Your api key for mapQuest api.
+     * @param budget
+     *            Memory budget shared with other service caches.
+     */
+	public DirectionsServices(String mapQuestApiKey, CacheBudget budget) {
+		this(new MapQuestDirections(mapQuestApiKey), budget);
+	}
+
+    /**
+     * Construct a DirectionsServices answering from a directions provider.
+     *
+     * @param directions
+     *            Source of routes and route matrices.
+     * @param budget
+     *            Memory budget shared with other service caches.
+     */
+	public DirectionsServices(DirectionsProvider directions, CacheBudget budget) {
+		this.directions = directions;
+		this.routeCache = new ServiceCache<String, String>("route", budget, ROUTE_WEIGHER, ROUTE_TTL);
+		this.matrixCache = new ServiceCache<String, double[]>("route-matrix", budget, MATRIX_WEIGHER, ROUTE_TTL);
 	}
 	
     /**
@@ -56,6 +136,40 @@ public class DirectionsServices {
      * @return The JSONObject associated with the route.
      */
 	public JSONObject getRoute(String source, String destination) {
+		return getRoute(source, destination, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the route from a source to a destination.
+     *
+     * @param source
+     *            A key string of the format "lat, lng".
+     * @param destination
+     *            A key string of the format "lat, lng".
+     * @param options
+     *            Per-call options such as the traffic class.
+     * @return The JSONObject associated with the route.
+     */
+	public JSONObject getRoute(String source, String destination, final CallOptions options) {
+		return getRoute(source, destination, RouteFormat.DEFAULT, options);
+	}
+	
+    /**
+     * Get the route from a source to a destination in a given format.
+     *
+     * @param source
+     *            A key string of the format "lat, lng".
+     * @param destination
+     *            A key string of the format "lat, lng".
+     * @param format
+     *            What the route should contain, such as its shape.
+     * @param options
+     *            Per-call options such as the traffic class.
+     * @return The JSONObject associated with the route.
+     */
+	public JSONObject getRoute(String source, String destination, RouteFormat format, final CallOptions options) {
+		ServiceCall call = new ServiceCall(GET_ROUTE);
+		Outcome outcome = Outcome.SUCCESS;
 		JSONObject result = new JSONObject();
 		
 		if(source == null) {
@@ -108,91 +222,156 @@ public class DirectionsServices {
 				error.put("id", "INVALID_PARAMETER");
 				error.put("field", "destination");
 				result.put("error", error);
+			} else if(parseLocation(source) == null) {
+				JSONObject error = new JSONObject();
+				error.put("message", "One or more parameters are invlid in request.");
+				error.put("id", "INVALID_PARAMETER");
+				error.put("field", "source");
+				result.put("error", error);
+			} else if(parseLocation(destination) == null) {
+				JSONObject error = new JSONObject();
+				error.put("message", "One or more parameters are invlid in request.");
+				error.put("id", "INVALID_PARAMETER");
+				error.put("field", "destination");
+				result.put("error", error);
 			} else {
-
-				String apiUrl = "http://open.mapquestapi.com/directions/v2/route?key="+mapQuestApiKey+"&avoids=Toll%20road&from="+slat+","+slng+"&to="+dlat+","+dlng+"&routeType=fastest";
-				
 				try {
-					InputStream is = new URL(apiUrl).openStream();
-					BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-					StringBuilder sb = new StringBuilder();
-					int cp;
-					while ((cp = rd.read()) != -1) {
-						sb.append((char) cp);
-					}
-
-					String jsonText = sb.toString();
-					JSONObject res = new JSONObject(jsonText);
-					
-					JSONObject info = (JSONObject) res.getJSONObject("info");
-					int statusCode = info.getInt("statuscode");
-					if(statusCode == 0) {
-						JSONObject route = (JSONObject) res.getJSONObject("route");
-						boolean hasTollRoad = route.getBoolean("hasTollRoad");
-						boolean hasCountryCross = route.getBoolean("hasCountryCross");
-						boolean hasFerry = route.getBoolean("hasFerry");
-						double distance = route.getDouble("distance");
-						double fuelUsed = route.getDouble("fuelUsed");
-						String formattedTime = route.getString("formattedTime");
-						
-						JSONArray legs = (JSONArray) route.getJSONArray("legs");
-						JSONObject steps = new JSONObject();
-						steps.put("hasTollRoad", hasTollRoad);
-						steps.put("hasCountryCross", hasCountryCross);
-						steps.put("hasFerry", hasFerry);
-						steps.put("distance", distance);
-						steps.put("fuelUsed", fuelUsed);
-						steps.put("formattedTime", formattedTime);
-
-						if(legs.length() > 0) {
-							JSONObject leg = (JSONObject) legs.get(0);
-							JSONArray maneuvers = (JSONArray) leg.getJSONArray("maneuvers");
-							JSONArray directions = new JSONArray();
-							String[] turnTypes = {"straight","slight right","right","sharp right","reverse","sharp left","left","slight left","right u-turn","left u-turn","right merge","left merge","right on ramp","left on ramp","right off ramp","left off ramp","right fork","left fork","straight fork","take transit","transfer transit","port transit","enter transit","exit transit"};
-							for(int i=0; i<maneuvers.length(); i++) {
-								JSONObject maneuver = (JSONObject) maneuvers.get(i);
-								String narrative = maneuver.getString("narrative");
-								String url = "";
-								int turnType = maneuver.getInt("turnType");
-								String transportMode = maneuver.getString("transportMode");
-								if(i!=maneuvers.length()-1) {
-									url = maneuver.getString("mapUrl");
-								}
-								String iconUrl = maneuver.getString("iconUrl");
-								double dis = maneuver.getDouble("distance");
-								String time = maneuver.getString("formattedTime");
-								String directionName = "";
-								try {
-									directionName = maneuver.getString("directionName");
-								} catch(Exception ignore) {
-								}
-
-								JSONObject man = new JSONObject();
-								man.put("narrative", narrative);
-								man.put("url", url);
-								man.put("distance", dis);
-								man.put("time", time);
-								if(turnType == -1) {
-									man.put("turnType", "end");
-								} else {
-									man.put("turnType", turnTypes[turnType]);
-								}
-								man.put("transportMode", transportMode);
-								man.put("direction", directionName);
-								man.put("iconUrl",	iconUrl);
-								directions.put(i, man);
-							}
-							steps.put("directions", directions);
-						}
-						result.put("route", steps);
+					JSONObject route = route(parseLocation(source), parseLocation(destination), format, options);
+					call.dataReady();
+					if(route == null) {
+						// There is no route between the locations.
+						outcome = Outcome.STATUS_ERROR;
+					} else {
+						result.put("route", route);
 					}
 				} catch (Exception e) {
-					JSONObject error = new JSONObject();
-					error.put("message", "Error processing request. Try again after some time");
-					result.put("error", error);
+					outcome = UpstreamClient.failed(e, result);
 				}
 			}
 		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
+		return result;
+	}
+	
+    /**
+     * Get the routes between several pairs of locations.
+     *
+     * @param sources
+     *            Key strings of the format "lat, lng".
+     * @param destinations
+     *            Key strings of the format "lat, lng", one for each source.
+     * @param format
+     *            What the routes should contain, such as their shapes.
+     * @return The JSONObject associated with the routes.
+     */
+	public JSONObject getRoutes(List<String> sources, List<String> destinations, RouteFormat format) {
+		return getRoutes(sources, destinations, format, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the routes between several pairs of locations.
+     * <p>
+     * The routes are fetched, and their levels simplified, concurrently. Each entry of
+     * <code>"routes"</code> holds either the <code>"route"</code> from the source to the
+     * destination at the same position, or the <code>"error"</code> that prevented it, so one
+     * failure does not fail the batch.
+     *
+     * @param sources
+     *            Key strings of the format "lat, lng".
+     * @param destinations
+     *            Key strings of the format "lat, lng", one for each source.
+     * @param format
+     *            What the routes should contain, such as their shapes.
+     * @param options
+     *            Per-call options such as the traffic class and deadline.
+     * @return The JSONObject associated with the routes.
+     */
+	public JSONObject getRoutes(List<String> sources, List<String> destinations, final RouteFormat format, final CallOptions options) {
+		ServiceCall call = new ServiceCall(GET_ROUTES);
+		Outcome outcome = Outcome.SUCCESS;
+		JSONObject result = new JSONObject();
+		double[][] from = null, to = null;
+		
+		if(sources == null || sources.isEmpty()) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "sources");
+			result.put("error", error);
+		} else if(destinations == null || destinations.isEmpty()) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "destinations");
+			result.put("error", error);
+		} else if(sources.size() > MAX_BATCH_ROUTES || (from = parseLocations(sources)) == null) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invlid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "sources");
+			result.put("error", error);
+		} else if(destinations.size() != sources.size() || (to = parseLocations(destinations)) == null) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invlid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "destinations");
+			result.put("error", error);
+		} else {
+			List<Future<JSONObject>> futures = new ArrayList<Future<JSONObject>>();
+			for(int i = 0; i < from.length; i++) {
+				final double[] source = from[i], destination = to[i];
+				futures.add(FanOut.submit(new Callable<JSONObject>() {
+					public JSONObject call() throws Exception {
+						return route(source, destination, format, options);
+					}
+				}));
+			}
+
+			JSONArray routes = new JSONArray();
+			int failed = 0;
+			for(Future<JSONObject> future : futures) {
+				JSONObject entry = new JSONObject();
+				JSONObject route = null;
+				try {
+					route = future.get(options.remainingNanos(), TimeUnit.NANOSECONDS);
+				} catch(TimeoutException e) {
+					future.cancel(true);
+					entry.put("error", cellError(new CallAbortedException(CallAbortedException.DEADLINE_EXCEEDED)));
+				} catch(ExecutionException e) {
+					entry.put("error", cellError(e.getCause() instanceof Exception ? (Exception) e.getCause() : e));
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					future.cancel(true);
+					entry.put("error", cellError(new CallAbortedException(CallAbortedException.CANCELLED)));
+				}
+				if(route != null) {
+					entry.put("route", route);
+				} else if(!entry.has("error")) {
+					JSONObject noRoute = new JSONObject();
+					noRoute.put("message", "No route was found between the locations.");
+					noRoute.put("id", "ROUTE_NOT_FOUND");
+					entry.put("error", noRoute);
+				}
+				if(entry.has("error")) {
+					failed++;
+				}
+				routes.put(entry);
+			}
+			call.dataReady();
+			result.put("routes", routes);
+			if(failed == from.length) {
+				outcome = Outcome.STATUS_ERROR;
+			} else if(failed > 0) {
+				outcome = Outcome.ERROR;
+			}
+		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
 		return result;
 	}
 	
@@ -206,7 +385,26 @@ public class DirectionsServices {
      * @return The JSONObject associated with the route.
      */
 	public JSONObject getMidpoint(String source, String destination) {
-				
+		return getMidpoint(source, destination, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the mid point of a route from a source to a destination.
+     * <p>
+     * The mid point is halfway along the shape of the route; see {@link RouteShape} to find
+     * other points along a route already fetched with its shape.
+     *
+     * @param source
+     *            A key string of the format (lat, lng).
+     * @param destination
+     *            A key string of the format (lat, lng).
+     * @param options
+     *            Per-call options such as the traffic class.
+     * @return The JSONObject associated with the route.
+     */
+	public JSONObject getMidpoint(String source, String destination, final CallOptions options) {
+		ServiceCall call = new ServiceCall(GET_MIDPOINT);
+		Outcome outcome = Outcome.SUCCESS;
 		JSONObject result = new JSONObject();
 		
 		if(source == null) {
@@ -259,83 +457,637 @@ public class DirectionsServices {
 				error.put("id", "INVALID_PARAMETER");
 				error.put("field", "destination");
 				result.put("error", error);
+			} else if(parseLocation(source) == null) {
+				JSONObject error = new JSONObject();
+				error.put("message", "One or more parameters are invlid in request.");
+				error.put("id", "INVALID_PARAMETER");
+				error.put("field", "source");
+				result.put("error", error);
+			} else if(parseLocation(destination) == null) {
+				JSONObject error = new JSONObject();
+				error.put("message", "One or more parameters are invlid in request.");
+				error.put("id", "INVALID_PARAMETER");
+				error.put("field", "destination");
+				result.put("error", error);
 			} else {
-
-				String apiUrl = "http://open.mapquestapi.com/directions/v2/route?unit=k&key="+mapQuestApiKey+"&avoids=Toll%20road&from="+slat+","+slng+"&to="+dlat+","+dlng+"&routeType=fastest";
-				
 				try {
-					InputStream is = new URL(apiUrl).openStream();
-					BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-					StringBuilder sb = new StringBuilder();
-					int cp;
-					while ((cp = rd.read()) != -1) {
-						sb.append((char) cp);
-					}
-
-					String jsonText = sb.toString();
-					JSONObject res = new JSONObject(jsonText);
-					
-					JSONObject info = (JSONObject) res.getJSONObject("info");
-					int statusCode = info.getInt("statuscode");
-					if(statusCode == 0) {
-						JSONObject route = (JSONObject) res.getJSONObject("route");
-						double distance = route.getDouble("distance");
-						double mid = distance/2;
-						
-						JSONArray legs = (JSONArray) route.getJSONArray("legs");
-						
+					// Only the shape is needed, so the route is fetched without its narrative.
+					JSONObject route = route(parseLocation(source), parseLocation(destination), RouteFormat.compact().withNarrative(false), options);
+					call.dataReady();
+					if(route == null || route.getString("shape").length() == 0) {
+						outcome = Outcome.STATUS_ERROR;
+					} else {
+						double[] point = RouteShape.decode(route.getString("shape"), 6).pointAt(0.5);
 						JSONObject midpoint = new JSONObject();
+						midpoint.put("lat", point[0]);
+						midpoint.put("lng", point[1]);
+						result.put("midway", midpoint);
+					}
+				} catch (Exception e) {
+					outcome = UpstreamClient.failed(e, result);
+				}
+			}
+		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
+		return result;
+	}
+	
+    /**
+     * Get the travel distances and times from each of several origins to each of several
+     * destinations.
+     *
+     * @param origins
+     *            Key strings of the format "lat, lng".
+     * @param destinations
+     *            Key strings of the format "lat, lng".
+     * @return The matrix of distances and times.
+     */
+	public RouteMatrix getRouteMatrix(List<String> origins, List<String> destinations) {
+		return getRouteMatrix(origins, destinations, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the travel distances and times from each of several origins to each of several
+     * destinations.
+     * <p>
+     * The matrix is computed with as few MapQuest route matrix requests as its limits allow:
+     * one all-to-all request when the origins are the destinations and there are at most 25,
+     * otherwise requests routing one location to up to 99 others, run concurrently. Cells
+     * whose request fails, or does not finish by the deadline, are reported as failed while
+     * the rest of the matrix is still returned.
+     *
+     * @param origins
+     *            Key strings of the format "lat, lng".
+     * @param destinations
+     *            Key strings of the format "lat, lng".
+     * @param options
+     *            Per-call options such as the traffic class and deadline.
+     * @return The matrix of distances and times, or a matrix holding only an error if the
+     *         parameters are invalid.
+     */
+	public RouteMatrix getRouteMatrix(List<String> origins, List<String> destinations, CallOptions options) {
+		ServiceCall call = new ServiceCall(GET_ROUTE_MATRIX);
+		JSONObject error = null;
+		double[][] from = null, to = null;
+		
+		if(origins == null || origins.isEmpty()) {
+			error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "origins");
+		} else if(destinations == null || destinations.isEmpty()) {
+			error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "destinations");
+		} else if((from = parseLocations(origins)) == null) {
+			error = new JSONObject();
+			error.put("message", "One or more parameters are invlid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "origins");
+		} else if((to = origins.equals(destinations) ? from : parseLocations(destinations)) == null) {
+			error = new JSONObject();
+			error.put("message", "One or more parameters are invlid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "destinations");
+		}
+		if(error != null) {
+			RouteMatrix matrix = new RouteMatrix(error);
+			call.finish(Outcome.INVALID_REQUEST, error);
+			return matrix;
+		}
 
-						if(legs.length()>0) {
-							JSONObject leg = (JSONObject) legs.get(0);
-							JSONArray maneuvers = (JSONArray) leg.getJSONArray("maneuvers");
-							
-							double startLat = 0, startLng = 0, endLat = 0, endLng = 0;
-							double oldDistance = 0;
-							double distanceTillNow = 0;
-							
-							int index = 0;
-							
-							for(; index < maneuvers.length() && distanceTillNow < mid; index++) {
-								JSONObject maneuver = (JSONObject) maneuvers.get(index);
-								double maneuverDistance = maneuver.getDouble("distance");
-								
-								JSONObject startPoint = maneuver.getJSONObject("startPoint");
-								startLat = startPoint.getDouble("lat");
-								startLng = startPoint.getDouble("lng");
-								
-								oldDistance = distanceTillNow;
-								distanceTillNow += maneuverDistance;
-							}
-							
-							JSONObject lastManeuver = new JSONObject();
-							if(index == maneuvers.length()) {
-								lastManeuver = (JSONObject) maneuvers.get(index-1);
-							} else {
-								lastManeuver = (JSONObject) maneuvers.get(index);
-							}
-							JSONObject endPoint = lastManeuver.getJSONObject("startPoint");
-							endLat = endPoint.getDouble("lat");
-							endLng = endPoint.getDouble("lng");
+		RouteMatrix matrix = matrix(from, to, options);
+		call.dataReady();
+		Outcome outcome = Outcome.SUCCESS;
+		if(!matrix.isComplete()) {
+			CancellationToken cancellation = options.getCancellation();
+			if(cancellation != null && cancellation.isCancelled()) {
+				outcome = Outcome.CANCELLED;
+			} else if(options.isAborted()) {
+				outcome = Outcome.TIMEOUT;
+			} else {
+				outcome = matrix.getFailedCount() == from.length * to.length ? Outcome.STATUS_ERROR : Outcome.ERROR;
+			}
+		}
+		call.finish(outcome, null);
+		return matrix;
+	}
+	
+    /**
+     * Find the fastest order to visit a list of stops, starting from the first.
+     *
+     * @param stops
+     *            Key strings of the format "lat, lng"; the first is the start.
+     * @param roundTrip
+     *            Whether the run returns to the first stop.
+     * @return The JSONObject associated with the order of the stops and the legs between them.
+     */
+	public JSONObject optimizeRoute(List<String> stops, boolean roundTrip) {
+		return optimizeRoute(stops, roundTrip, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Find the fastest order to visit a list of stops, starting from the first.
+     * <p>
+     * The travel times between all stops are fetched once, with a single request for up to 25
+     * stops, and the order is then searched locally in parallel for up to a second, or half
+     * the time left before the deadline if that is less. Legs whose times could not be fetched
+     * are avoided, and reported with an error if the order still needs them.
+     *
+     * @param stops
+     *            Key strings of the format "lat, lng"; the first is the start.
+     * @param roundTrip
+     *            Whether the run returns to the first stop.
+     * @param options
+     *            Per-call options such as the traffic class and deadline.
+     * @return The JSONObject associated with the order of the stops, as indexes into
+     *         <code>stops</code>, and the legs between them with their distance in miles and
+     *         time in seconds.
+     */
+	public JSONObject optimizeRoute(List<String> stops, boolean roundTrip, CallOptions options) {
+		ServiceCall call = new ServiceCall(OPTIMIZE_ROUTE);
+		Outcome outcome = Outcome.SUCCESS;
+		JSONObject result = new JSONObject();
+		double[][] locations = null;
+		
+		if(stops == null || stops.isEmpty()) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "stops");
+			result.put("error", error);
+		} else if(stops.size() < 2 || stops.size() > MAX_STOPS || (locations = parseLocations(stops)) == null) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invlid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "stops");
+			result.put("error", error);
+		} else {
+			int n = locations.length;
+			RouteMatrix matrix = matrix(locations, locations, options);
+			call.dataReady();
+			int known = 0;
+			for(int i = 0; i < n; i++) {
+				for(int j = 0; j < n; j++) {
+					if(i != j && matrix.getError(i, j) == null) {
+						known++;
+					}
+				}
+			}
+			if(known == 0) {
+				// No leg between two different stops is known.
+				JSONObject error = matrix.getError(0, 1);
+				outcome = outcomeOf(error);
+				result.put("error", error);
+			} else {
+				// Unknown legs cost more than any tour of known ones.
+				double longest = 0;
+				for(double[] row : matrix.getTimes()) {
+					for(double time : row) {
+						if(time > longest) {
+							longest = time;
+						}
+					}
+				}
+				double penalty = (longest + 1) * n * 10;
+				double[][] times = new double[n][n];
+				for(int i = 0; i < n; i++) {
+					for(int j = 0; j < n; j++) {
+						times[i][j] = i == j ? 0 : (matrix.getError(i, j) == null ? matrix.getTime(i, j) : penalty);
+					}
+				}
+				long solveNanos = Math.min(TimeUnit.MILLISECONDS.toNanos(DEFAULT_SOLVE_MILLIS), options.remainingNanos() / 2);
+				int[] order = new TourOptimizer(times, roundTrip, System.nanoTime() + solveNanos, options).solve();
 
-							if (distanceTillNow < mid) {return null;}
-							
-							double m = (mid-oldDistance)/(distanceTillNow-oldDistance);
-							double midLat = startLat + (endLat - startLat)*m;
-							double midLng = startLng + (endLng - startLng)*m;
-							
-							midpoint.put("lat", midLat);
-							midpoint.put("lng", midLng);
+				JSONArray sequence = new JSONArray();
+				JSONArray legs = new JSONArray();
+				double distance = 0, time = 0;
+				for(int i = 0; i < n; i++) {
+					sequence.put(order[i]);
+					if(i + 1 < n || roundTrip) {
+						int from = order[i], to = i + 1 < n ? order[i + 1] : order[0];
+						JSONObject leg = new JSONObject();
+						leg.put("from", from);
+						leg.put("to", to);
+						if(matrix.getError(from, to) != null) {
+							leg.put("error", matrix.getError(from, to));
+							result.put("partial", true);
+						} else {
+							leg.put("distance", matrix.getDistance(from, to));
+							leg.put("time", matrix.getTime(from, to));
+							distance += matrix.getDistance(from, to);
+							time += matrix.getTime(from, to);
 						}
-						result.put("midway", midpoint);
+						legs.put(leg);
 					}
-				} catch (Exception e) {
-					JSONObject error = new JSONObject();
-					error.put("message", "Error processing request. Try again after some time");
-					result.put("error", error);
 				}
+				result.put("order", sequence);
+				result.put("legs", legs);
+				result.put("distance", distance);
+				result.put("time", time);
+				if(result.has("partial")) {
+					outcome = Outcome.ERROR;
+				}
+			}
+		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
+		return result;
+	}
+	
+    /**
+     * Find where a group should meet, in least total travel time for the group.
+     *
+     * @param participants
+     *            Key strings of the format "lat, lng", one for where each participant starts.
+     * @return The JSONObject associated with the meeting point and the trip of each participant.
+     */
+	public JSONObject findMeetingPoint(List<String> participants) {
+		return findMeetingPoint(participants, false, DEFAULT_MEETING_REQUESTS, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Find where a group should meet.
+     * <p>
+     * Candidate points are generated around the centroid of the group and refined toward the
+     * best one, each round routing every participant to its candidates in one concurrent
+     * route matrix; see {@link MeetingPointSearch}. The search stops when it converges to
+     * within a few hundred meters, when another round would exceed the budget of provider
+     * requests, or at the deadline, and returns the best point found so far.
+     *
+     * @param participants
+     *            Key strings of the format "lat, lng", one for where each participant starts.
+     * @param fairest
+     *            Whether to minimize the longest trip rather than the total travel time.
+     * @param maxRequests
+     *            Most route matrix requests to make to the provider; a round costs one
+     *            request for each participant, or each of its eight or nine candidates if
+     *            fewer.
+     * @param options
+     *            Per-call options such as the traffic class and deadline.
+     * @return The JSONObject associated with the meeting point, the distance in miles and
+     *         time in seconds of the trip of each participant, and whether the search
+     *         converged.
+     */
+	public JSONObject findMeetingPoint(List<String> participants, boolean fairest, int maxRequests, CallOptions options) {
+		ServiceCall call = new ServiceCall(FIND_MEETING_POINT);
+		Outcome outcome = Outcome.SUCCESS;
+		JSONObject result = new JSONObject();
+		double[][] locations = null;
+		
+		if(participants == null || participants.isEmpty()) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "participants");
+			result.put("error", error);
+		} else if(participants.size() < 2 || participants.size() > MAX_PARTICIPANTS || (locations = parseLocations(participants)) == null) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invlid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "participants");
+			result.put("error", error);
+		} else if(maxRequests < matrixRequests(locations.length, 9)) {
+			// Not enough for the first round.
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invlid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "maxRequests");
+			result.put("error", error);
+		} else {
+			MeetingPointSearch search = new MeetingPointSearch(this, locations, fairest, maxRequests, options);
+			boolean found = search.run();
+			call.dataReady();
+			if(!found) {
+				JSONObject error = search.getLastError();
+				if(error == null) {
+					// The deadline passed before the first round.
+					error = cellError(new CallAbortedException(CallAbortedException.DEADLINE_EXCEEDED));
+				}
+				outcome = outcomeOf(error);
+				result.put("error", error);
+			} else {
+				double[] point = search.getLocation();
+				JSONObject location = new JSONObject();
+				location.put("lat", point[0]);
+				location.put("lng", point[1]);
+
+				JSONArray trips = new JSONArray();
+				double total = 0, longest = 0;
+				for(int i = 0; i < locations.length; i++) {
+					JSONObject trip = new JSONObject();
+					trip.put("distance", search.getDistances()[i]);
+					trip.put("time", search.getTimes()[i]);
+					trips.put(trip);
+					total += search.getTimes()[i];
+					longest = Math.max(longest, search.getTimes()[i]);
+				}
+				result.put("location", location);
+				result.put("participants", trips);
+				result.put("totalTime", total);
+				result.put("maxTime", longest);
+				result.put("rounds", search.getRounds());
+				result.put("requests", search.getRequests());
+				result.put("converged", search.isConverged());
 			}
 		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
 		return result;
 	}
-}
\ No newline at end of file
+	
+    /**
+     * Compute a route matrix between coordinates.
+     *
+     * @param origins
+     *            Latitude and longitude of each origin.
+     * @param destinations
+     *            Latitude and longitude of each destination.
+     * @param options
+     *            Options of the service call.
+     * @return The matrix, with the cells that could not be computed marked as failed.
+     */
+	RouteMatrix matrix(double[][] origins, double[][] destinations, final CallOptions options) {
+		RouteMatrix matrix = new RouteMatrix(origins.length, destinations.length);
+		if(origins == destinations && origins.length <= MAX_ALL_TO_ALL_LOCATIONS) {
+			int count = origins.length;
+			double[] cells = null;
+			JSONObject error = null;
+			try {
+				cells = allToAllCells(origins, options);
+			} catch(Exception e) {
+				error = cellError(e);
+			}
+			for(int i = 0; i < count; i++) {
+				for(int j = 0; j < count; j++) {
+					if(error != null) {
+						matrix.fail(i, j, error);
+					} else {
+						fill(matrix, i, j, cells[i * count + j], cells[count * count + i * count + j]);
+					}
+				}
+			}
+			return matrix;
+		}
+
+		// Each request routes one location to many; fix the side that needs fewer requests.
+		final boolean manyToOne = origins.length > destinations.length;
+		double[][] fixed = manyToOne ? destinations : origins;
+		double[][] others = manyToOne ? origins : destinations;
+		int chunkSize = MAX_MATRIX_LOCATIONS - 1;
+
+		List<MatrixChunk> chunks = new ArrayList<MatrixChunk>();
+		for(int f = 0; f < fixed.length; f++) {
+			for(int start = 0; start < others.length; start += chunkSize) {
+				final MatrixChunk chunk = new MatrixChunk(f, start, Math.min(others.length, start + chunkSize));
+				final double[][] locations = new double[chunk.end - chunk.start + 1][];
+				locations[0] = fixed[f];
+				System.arraycopy(others, chunk.start, locations, 1, chunk.end - chunk.start);
+				chunk.future = FanOut.submit(new Callable<double[]>() {
+					public double[] call() throws Exception {
+						return matrixCells(locations, manyToOne, options);
+					}
+				});
+				chunks.add(chunk);
+			}
+		}
+
+		for(MatrixChunk chunk : chunks) {
+			double[] cells = null;
+			JSONObject error = null;
+			try {
+				cells = chunk.future.get(options.remainingNanos(), TimeUnit.NANOSECONDS);
+			} catch(TimeoutException e) {
+				chunk.future.cancel(true);
+				error = cellError(new CallAbortedException(CallAbortedException.DEADLINE_EXCEEDED));
+			} catch(ExecutionException e) {
+				error = cellError(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				chunk.future.cancel(true);
+				error = cellError(new CallAbortedException(CallAbortedException.CANCELLED));
+			}
+			int count = chunk.end - chunk.start;
+			for(int k = 0; k < count; k++) {
+				int origin = manyToOne ? chunk.start + k : chunk.fixed;
+				int destination = manyToOne ? chunk.fixed : chunk.start + k;
+				if(error != null) {
+					matrix.fail(origin, destination, error);
+				} else {
+					fill(matrix, origin, destination, cells[k], cells[count + k]);
+				}
+			}
+		}
+		return matrix;
+	}
+	
+    /**
+     * Get the cells of one route matrix request, from the cache or from MapQuest.
+     *
+     * @param locations
+     *            The fixed location followed by the others.
+     * @param manyToOne
+     *            Whether the others are origins routed to the fixed location, rather than
+     *            destinations routed from it.
+     * @param options
+     *            Options of the service call.
+     * @return The distance from or to each of the others, followed by the times.
+     */
+	double[] matrixCells(final double[][] locations, final boolean manyToOne, final CallOptions options) throws Exception {
+		StringBuilder key = new StringBuilder(directions.getName()).append(manyToOne ? ":many-to-one:" : ":one-to-many:");
+		for(double[] location : locations) {
+			key.append(location[0]).append(',').append(location[1]).append('|');
+		}
+		return CachedLoads.get(matrixCache, key.toString(), new Loader<String, double[]>() {
+			public double[] load(String key) throws Exception {
+				return directions.matrix(locations, manyToOne, options);
+			}
+		}, options);
+	}
+	
+    /**
+     * Get a route from the route cache or from the provider.
+     *
+     * @return The route, or null if there is none.
+     */
+	private JSONObject route(final double[] source, final double[] destination, final RouteFormat format, final CallOptions options) throws Exception {
+		// Routes are cached as JSON text so that callers never share a mutable result.
+		String steps = CachedLoads.get(routeCache, directions.getName()+":"+format.key()+":"+source[0]+","+source[1]+"|"+destination[0]+","+destination[1], new Loader<String, String>() {
+			public String load(String key) throws Exception {
+				// The levels are derived from the shape, whether or not the shape is returned.
+				RouteFormat fetched = format.hasLevels() ? format.withShape(true) : format;
+				JSONObject route = directions.route(source[0], source[1], destination[0], destination[1], fetched, options);
+				if(route != null && format.hasLevels()) {
+					route.put("levels", levels(route.getString("shape")));
+					if(!format.hasShape()) {
+						route.remove("shape");
+					}
+				}
+				return route == null ? null : route.toString();
+			}
+		}, options);
+		return steps == null ? null : new JSONObject(steps);
+	}
+	
+    /**
+     * Simplify the shape of a route for each of the zoom levels.
+     *
+     * @param shape
+     *            The shape as a precision 6 polyline.
+     * @return The level of each zoom, from the coarsest.
+     */
+	static JSONArray levels(String shape) {
+		int count = Polyline.count(shape);
+		int[] lats = new int[count], lngs = new int[count];
+		Polyline.decode(shape, 6, lats, lngs);
+		double[] ranks = Simplifier.rank(lats, lngs, count);
+
+		int[] keptLats = new int[count], keptLngs = new int[count];
+		StringBuilder encoded = new StringBuilder();
+		JSONArray levels = new JSONArray();
+		for(int zoom : LEVEL_ZOOMS) {
+			int kept = Simplifier.keep(lats, lngs, ranks, count, METERS_PER_PIXEL / (1 << zoom), keptLats, keptLngs);
+			encoded.setLength(0);
+			Polyline.encode(keptLats, keptLngs, 0, kept, 6, encoded);
+			JSONObject level = new JSONObject();
+			level.put("zoom", zoom);
+			level.put("shape", encoded.toString());
+			levels.put(level);
+		}
+		return levels;
+	}
+	
+    /**
+     * Count the provider requests {@link #matrix} makes for distinct origins and destinations.
+     *
+     * @param origins
+     *            Number of origins.
+     * @param destinations
+     *            Number of destinations.
+     * @return The number of requests.
+     */
+	static int matrixRequests(int origins, int destinations) {
+		int chunkSize = MAX_MATRIX_LOCATIONS - 1;
+		int fixed = Math.min(origins, destinations), others = Math.max(origins, destinations);
+		return fixed * ((others + chunkSize - 1) / chunkSize);
+	}
+	
+	/* Set a cell of a matrix, or fail it if the provider could not route it. */
+	private static void fill(RouteMatrix matrix, int origin, int destination, double distance, double time) {
+		if(distance < 0 || time < 0) {
+			JSONObject noRoute = new JSONObject();
+			noRoute.put("message", "No route was found between the locations.");
+			noRoute.put("id", "ROUTE_NOT_FOUND");
+			matrix.fail(origin, destination, noRoute);
+		} else {
+			matrix.set(origin, destination, distance, time);
+		}
+	}
+	
+    /**
+     * Get the cells of an all-to-all route matrix request, from the cache or from the provider.
+     *
+     * @param locations
+     *            The locations.
+     * @param options
+     *            Options of the service call.
+     * @return The distances row by row, followed by the times.
+     */
+	private double[] allToAllCells(final double[][] locations, final CallOptions options) throws Exception {
+		StringBuilder key = new StringBuilder(directions.getName()).append(":all-to-all:");
+		for(double[] location : locations) {
+			key.append(location[0]).append(',').append(location[1]).append('|');
+		}
+		return CachedLoads.get(matrixCache, key.toString(), new Loader<String, double[]>() {
+			public double[] load(String key) throws Exception {
+				return directions.allToAll(locations, options);
+			}
+		}, options);
+	}
+	
+	/* The outcome of a call that failed with the error of a matrix cell. */
+	private static Outcome outcomeOf(JSONObject error) {
+		String id = error.optString("id");
+		if(id.equals(CallAbortedException.CANCELLED)) {
+			return Outcome.CANCELLED;
+		} else if(id.equals(CallAbortedException.DEADLINE_EXCEEDED)) {
+			return Outcome.TIMEOUT;
+		} else if(id.equals("UPSTREAM_OVERLOADED")) {
+			return Outcome.REJECTED;
+		}
+		return Outcome.STATUS_ERROR;
+	}
+	
+	/* The error object reported for the cells of a failed route matrix request. */
+	private static JSONObject cellError(Exception e) {
+		JSONObject result = new JSONObject();
+		UpstreamClient.failed(e, result);
+		JSONObject error = result.optJSONObject("error");
+		if(error == null) {
+			error = new JSONObject();
+			error.put("message", "No route was found between the locations.");
+			error.put("id", "ROUTE_NOT_FOUND");
+		}
+		return error;
+	}
+	
+    /**
+     * Parse key strings of the format "lat, lng".
+     *
+     * @return The latitude and longitude of each location, or null if any is invalid.
+     */
+	private static double[][] parseLocations(List<String> keys) {
+		double[][] locations = new double[keys.size()][];
+		for(int i = 0; i < locations.length; i++) {
+			locations[i] = parseLocation(keys.get(i));
+			if(locations[i] == null) {
+				return null;
+			}
+		}
+		return locations;
+	}
+	
+    /**
+     * Parse a key string of the format "lat, lng".
+     *
+     * @return The latitude and longitude, or null if the key is invalid.
+     */
+	private static double[] parseLocation(String key) {
+		if(key == null || key.startsWith(",") || key.endsWith(",")) {
+			return null;
+		}
+		String[] parts = key.split(",");
+		if(parts.length != 2) {
+			return null;
+		}
+		try {
+			return new double[] {Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim())};
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * The cells of one route matrix request: one fixed location and a range of the others.
+	 */
+	private static final class MatrixChunk {
+		final int fixed;
+		final int start;
+		final int end;
+		Future<double[]> future;
+
+		MatrixChunk(int fixed, int start, int end) {
+			this.fixed = fixed;
+			this.start = start;
+			this.end = end;
+		}
+	}
+}
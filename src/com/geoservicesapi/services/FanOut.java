@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FanOut runs the concurrent sub-requests of service methods on a shared pool of daemon threads.
+ * <p>
+ * The pool does not queue: when all its threads are busy, a task runs on the submitting thread
+ * instead. How many sub-requests actually reach an upstream at once is left to the
+ * {@link Bulkhead} and {@link AdaptiveLimiter} of its endpoint. Tasks capture their timings into
+ * the {@link ServiceResult} of the submitting thread, if any.
+ * <p>
+ * Detached tasks, which nobody waits for, run on a separate small pool and never on the
+ * submitting thread. When that pool and its queue are full they are dropped.
+ */
+final class FanOut {
+
+	private static final int MAX_THREADS = 64;
+	private static final int MAX_DETACHED_THREADS = 4;
+	private static final int MAX_DETACHED_QUEUE = 16;
+
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(0, MAX_THREADS, 30, TimeUnit.SECONDS,
+			new SynchronousQueue<Runnable>(), threads("geoservices-fanout-"), new ThreadPoolExecutor.CallerRunsPolicy());
+
+	private static final ThreadPoolExecutor DETACHED = new ThreadPoolExecutor(MAX_DETACHED_THREADS, MAX_DETACHED_THREADS,
+			30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(MAX_DETACHED_QUEUE), threads("geoservices-detached-"),
+			new ThreadPoolExecutor.AbortPolicy());
+
+	static {
+		DETACHED.allowCoreThreadTimeOut(true);
+	}
+
+	private FanOut() {
+	}
+
+	private static ThreadFactory threads(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+    /**
+     * Run a task concurrently with the calling thread.
+     *
+     * @param task
+     *            The task.
+     * @return The future result of the task.
+     */
+	static <T> Future<T> submit(final Callable<T> task) {
+		final List<CallTiming> capture = ServiceResult.capture();
+		return EXECUTOR.submit(new Callable<T>() {
+			public T call() throws Exception {
+				List<CallTiming> previous = ServiceResult.bind(capture);
+				try {
+					return task.call();
+				} finally {
+					ServiceResult.bind(previous);
+				}
+			}
+		});
+	}
+
+    /**
+     * Run a task that outlives the calling service method, such as a prefetch. Its timings are
+     * not captured into the caller's {@link ServiceResult}, and it never runs on the calling
+     * thread.
+     *
+     * @param task
+     *            The task.
+     * @return The future result of the task, or null if the task was dropped because the
+     *         detached pool is saturated.
+     */
+	static <T> Future<T> submitDetached(Callable<T> task) {
+		try {
+			return DETACHED.submit(task);
+		} catch(RejectedExecutionException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * FirstLocationReader pulls <code>info</code> and <code>results[0].locations[0]</code> out of a
+ * MapQuest geocoding response as it is read, for lookups that use only the best match.
+ * <p>
+ * Only those two objects are built; every other value is skipped by scanning its characters.
+ * Once both have been read the reader stops, leaving the rest of the response, such as the
+ * other candidates of an ambiguous address, unread. MapQuest sends <code>info</code> first, so
+ * this is normally right after the first location; if <code>results</code> came first, the
+ * rest of it is skipped to reach <code>info</code>, since no location is returned before the
+ * status code has been checked.
+ */
+final class FirstLocationReader {
+
+	private FirstLocationReader() {
+	}
+
+    /**
+     * Read the first location of a response.
+     *
+     * @param tokener
+     *            Positioned at the start of the response.
+     * @return The first location of the first result, or null if there is none.
+     * @throws UpstreamStatusException
+     *             If <code>info.statuscode</code> is not 0.
+     * @throws JSONException
+     *             If the response is malformed or has no <code>info</code>.
+     */
+	static JSONObject read(JSONTokener tokener) throws UpstreamStatusException {
+		if(tokener.nextClean() != '{') {
+			throw tokener.syntaxError("A JSONObject text must begin with '{'");
+		}
+		boolean hasInfo = false, hasResults = false;
+		JSONObject location = null;
+		char c = tokener.nextClean();
+		while(c != '}') {
+			String key = key(tokener, c);
+			if(key.equals("info")) {
+				Object info = tokener.nextValue();
+				if(!(info instanceof JSONObject)) {
+					throw tokener.syntaxError("info is not an object");
+				}
+				int statusCode = ((JSONObject) info).getInt("statuscode");
+				if(statusCode != 0) {
+					throw new UpstreamStatusException(statusCode);
+				}
+				hasInfo = true;
+			} else if(key.equals("results") && !hasResults) {
+				location = firstLocation(tokener, !hasInfo);
+				hasResults = true;
+			} else {
+				skipValue(tokener);
+			}
+			if(hasInfo && hasResults) {
+				return location;
+			}
+			c = next(tokener);
+		}
+		if(!hasInfo) {
+			throw new JSONException("JSONObject[\"info\"] not found.");
+		}
+		return location;
+	}
+
+	/* Read the first location of the results array; consume the whole array only if asked to. */
+	private static JSONObject firstLocation(JSONTokener tokener, boolean consume) {
+		if(tokener.nextClean() != '[') {
+			throw tokener.syntaxError("results is not an array");
+		}
+		char c = tokener.nextClean();
+		if(c == ']') {
+			return null;
+		} else if(c != '{') {
+			throw tokener.syntaxError("A result is not an object");
+		}
+		JSONObject location = null;
+		c = tokener.nextClean();
+		while(c != '}') {
+			String key = key(tokener, c);
+			if(key.equals("locations")) {
+				if(tokener.nextClean() != '[') {
+					throw tokener.syntaxError("locations is not an array");
+				}
+				if(tokener.nextClean() != ']') {
+					tokener.back();
+					Object first = tokener.nextValue();
+					if(!(first instanceof JSONObject)) {
+						throw tokener.syntaxError("A location is not an object");
+					}
+					location = (JSONObject) first;
+					if(!consume) {
+						return location;
+					}
+					// The other locations.
+					skipRest(tokener);
+				}
+				if(!consume) {
+					return location;
+				}
+				// The rest of the result, then the other results.
+				skipRest(tokener);
+				skipRest(tokener);
+				return location;
+			}
+			skipValue(tokener);
+			c = next(tokener);
+		}
+		if(consume) {
+			skipRest(tokener);
+		}
+		return location;
+	}
+
+	/* Read a key and its colon, given the character that starts it. */
+	private static String key(JSONTokener tokener, char c) {
+		if(c != '"') {
+			throw tokener.syntaxError("Expected a quoted key");
+		}
+		String key = tokener.nextString(c);
+		if(tokener.nextClean() != ':') {
+			throw tokener.syntaxError("Expected a ':' after a key");
+		}
+		return key;
+	}
+
+	/* Read the separator after a member of an object, returning the start of the next key or '}'. */
+	private static char next(JSONTokener tokener) {
+		char c = tokener.nextClean();
+		if(c == ',') {
+			return tokener.nextClean();
+		} else if(c != '}') {
+			throw tokener.syntaxError("Expected a ',' or '}'");
+		}
+		return c;
+	}
+
+	/* Skip one value without building it. */
+	private static void skipValue(JSONTokener tokener) {
+		char c = tokener.nextClean();
+		if(c == '"') {
+			skipString(tokener);
+		} else if(c == '{' || c == '[') {
+			skipRest(tokener);
+		} else {
+			while(c >= ' ' && ",:]}".indexOf(c) < 0) {
+				c = tokener.next();
+			}
+			tokener.back();
+		}
+	}
+
+	/* Skip to the end of the object or array being read. */
+	private static void skipRest(JSONTokener tokener) {
+		int depth = 1;
+		while(depth > 0) {
+			char c = tokener.next();
+			if(c == '"') {
+				skipString(tokener);
+			} else if(c == '{' || c == '[') {
+				depth++;
+			} else if(c == '}' || c == ']') {
+				depth--;
+			} else if(c == 0) {
+				throw tokener.syntaxError("Unterminated value");
+			}
+		}
+	}
+
+	private static void skipString(JSONTokener tokener) {
+		while(true) {
+			char c = tokener.next();
+			if(c == '"') {
+				return;
+			} else if(c == '\\') {
+				tokener.next();
+			} else if(c == 0) {
+				throw tokener.syntaxError("Unterminated string");
+			}
+		}
+	}
+}
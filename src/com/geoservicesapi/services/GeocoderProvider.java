@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+/**
+ * GeocoderProvider is a source of geocoding results for {@link LocationServices}, which picks
+ * among its providers through a {@link GeocoderRouter}.
+ * <p>
+ * Implementations must be safe for concurrent use and should give up once the options they
+ * are passed are {@link CallOptions#isAborted() aborted}. A location the provider does not know
+ * is reported by returning null; any failure is reported by throwing, after which the router may
+ * ask another provider.
+ */
+public interface GeocoderProvider {
+
+    /**
+     * Get the name of the provider, used in metrics and logs.
+     *
+     * @return The name.
+     */
+	String getName();
+
+    /**
+     * Get the geo-location of an address.
+     *
+     * @param address
+     *            Address of a location.
+     * @param options
+     *            Options of the service call.
+     * @return The latitude and longitude, or null if the address is unknown.
+     * @throws Exception
+     *             If the lookup failed.
+     */
+	double[] geocode(String address, CallOptions options) throws Exception;
+
+    /**
+     * Get the geo-location of an address given by its components.
+     *
+     * @param street
+     *            Street in an address of a location.
+     * @param city
+     *            City in an address of a location.
+     * @param state
+     *            State in an address of a location.
+     * @param postalCode
+     *            Postal Code in an address of a location.
+     * @param options
+     *            Options of the service call.
+     * @return The latitude and longitude, or null if the address is unknown.
+     * @throws Exception
+     *             If the lookup failed.
+     */
+	double[] geocode(String street, String city, String state, String postalCode, CallOptions options) throws Exception;
+
+    /**
+     * Get the address of a location.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param options
+     *            Options of the service call.
+     * @return Street, city, state, country and postal code, or null if no address is known.
+     * @throws Exception
+     *             If the lookup failed.
+     */
+	String[] reverseGeocode(double lat, double lng, CallOptions options) throws Exception;
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.geoservicesapi.metrics.LatencyTimer;
+import com.geoservicesapi.metrics.Metrics;
+import com.geoservicesapi.metrics.Outcome;
+
+/**
+ * GeocoderRouter chooses which {@link GeocoderProvider} answers each lookup of a
+ * {@link LocationServices}.
+ * <p>
+ * Every provider is registered with a cost per request, and the router keeps a moving average of
+ * its latency, in which failures count double. The {@link Policy} of the call's traffic class
+ * orders the providers: the first one is asked, and the next is asked whenever a provider fails
+ * or does not know the location. Under {@link Policy#RACE} the two fastest providers are asked
+ * concurrently, the second after an optional hedge delay, and the first good answer wins; the
+ * other request is cancelled.
+ * <p>
+ * Each provider's lookups are timed under <code>geocoder.&lt;name&gt;</code>.
+ */
+public class GeocoderRouter {
+
+	/**
+	 * How a router orders its providers.
+	 */
+	public enum Policy {
+
+		/** Ask the provider with the lowest cost first. */
+		CHEAPEST,
+
+		/** Ask the provider with the lowest average latency first. */
+		FASTEST,
+
+		/** Ask the two fastest providers at once and take the first good answer. */
+		RACE
+	}
+
+	private final CopyOnWriteArrayList<Candidate> candidates = new CopyOnWriteArrayList<Candidate>();
+	private final Policy[] policies = new Policy[TrafficClass.values().length];
+	private volatile long hedgeDelayNanos;
+
+	public GeocoderRouter() {
+		policies[TrafficClass.INTERACTIVE.ordinal()] = Policy.FASTEST;
+		policies[TrafficClass.BULK.ordinal()] = Policy.CHEAPEST;
+	}
+
+    /**
+     * Construct a GeocoderRouter with a single provider.
+     *
+     * @param provider
+     *            The provider.
+     * @return The router.
+     */
+	public static GeocoderRouter of(GeocoderProvider provider) {
+		return new GeocoderRouter().add(provider, 0);
+	}
+
+    /**
+     * Register a provider.
+     *
+     * @param provider
+     *            The provider.
+     * @param cost
+     *            Cost of a request to the provider, in any unit shared by all providers.
+     * @return This router.
+     */
+	public GeocoderRouter add(GeocoderProvider provider, double cost) {
+		candidates.add(new Candidate(provider, cost));
+		return this;
+	}
+
+	public List<GeocoderProvider> getProviders() {
+		List<GeocoderProvider> providers = new ArrayList<GeocoderProvider>();
+		for(Candidate candidate : candidates) {
+			providers.add(candidate.provider);
+		}
+		return providers;
+	}
+
+    /**
+     * Set the policy for calls of a traffic class. Interactive calls use {@link Policy#FASTEST}
+     * and bulk calls {@link Policy#CHEAPEST} unless set otherwise.
+     *
+     * @param trafficClass
+     *            The traffic class.
+     * @param policy
+     *            The policy.
+     */
+	public synchronized void setPolicy(TrafficClass trafficClass, Policy policy) {
+		policies[trafficClass.ordinal()] = policy;
+	}
+
+	public synchronized Policy getPolicy(TrafficClass trafficClass) {
+		return policies[trafficClass.ordinal()];
+	}
+
+    /**
+     * Set how long a race waits for the first provider before asking the second one. With no
+     * delay both are asked at once; a delay near the first provider's 90th percentile latency
+     * cuts tail latency for a fraction of the extra requests.
+     *
+     * @param delay
+     *            The delay.
+     * @param unit
+     *            Unit of the delay.
+     */
+	public void setHedgeDelay(long delay, TimeUnit unit) {
+		this.hedgeDelayNanos = unit.toNanos(delay);
+	}
+
+    /**
+     * Get the moving average latency of a provider.
+     *
+     * @param name
+     *            Name of the provider.
+     * @return The average in milliseconds, or 0 if the provider was not asked yet or is unknown.
+     */
+	public double getAverageLatencyMillis(String name) {
+		for(Candidate candidate : candidates) {
+			if(candidate.provider.getName().equals(name)) {
+				return candidate.averageNanos.get() / 1e6;
+			}
+		}
+		return 0;
+	}
+
+	double[] geocode(final String address, CallOptions options) throws Exception {
+		return lookup(new Lookup<double[]>() {
+			public double[] call(GeocoderProvider provider, CallOptions options) throws Exception {
+				return provider.geocode(address, options);
+			}
+		}, options);
+	}
+
+	double[] geocode(final String street, final String city, final String state, final String postalCode, CallOptions options) throws Exception {
+		return lookup(new Lookup<double[]>() {
+			public double[] call(GeocoderProvider provider, CallOptions options) throws Exception {
+				return provider.geocode(street, city, state, postalCode, options);
+			}
+		}, options);
+	}
+
+	String[] reverseGeocode(final double lat, final double lng, CallOptions options) throws Exception {
+		return lookup(new Lookup<String[]>() {
+			public String[] call(GeocoderProvider provider, CallOptions options) throws Exception {
+				return provider.reverseGeocode(lat, lng, options);
+			}
+		}, options);
+	}
+
+    /**
+     * Ask the providers in policy order until one knows the location.
+     *
+     * @return The answer, or null if every provider answered that the location is unknown.
+     * @throws Exception
+     *             The last failure, if no provider answered.
+     */
+	private <T> T lookup(Lookup<T> lookup, CallOptions options) throws Exception {
+		Policy policy = getPolicy(options.getTrafficClass());
+		List<Candidate> ordered = order(policy);
+		if(ordered.isEmpty()) {
+			throw new IllegalStateException("No geocoder provider registered");
+		}
+		Answer<T> answer = new Answer<T>();
+		int next = 0;
+		if(policy == Policy.RACE && ordered.size() > 1) {
+			race(ordered.get(0), ordered.get(1), lookup, options, answer);
+			next = 2;
+		}
+		for(; answer.value == null && next < ordered.size(); next++) {
+			options.check();
+			answer.merge(attempt(ordered.get(next), lookup, options));
+		}
+		return answer.result();
+	}
+
+	private <T> void race(Candidate first, Candidate second, final Lookup<T> lookup, CallOptions options, Answer<T> answer) throws Exception {
+		final CancellationToken race = new CancellationToken();
+		final CallOptions raceOptions = options.withCancellation(race);
+		Runnable cancel = new Runnable() {
+			public void run() {
+				race.cancel();
+			}
+		};
+		CancellationToken caller = options.getCancellation();
+		if(caller != null) {
+			caller.addListener(cancel);
+		}
+		final LinkedBlockingQueue<Answer<T>> finished = new LinkedBlockingQueue<Answer<T>>();
+		List<Future<?>> futures = new ArrayList<Future<?>>(2);
+		try {
+			futures.add(start(first, lookup, raceOptions, finished));
+			Answer<T> done = finished.poll(Math.min(hedgeDelayNanos, Math.max(0, options.remainingNanos())), TimeUnit.NANOSECONDS);
+			int pending = 1;
+			while(true) {
+				if(done != null) {
+					pending--;
+					answer.merge(done);
+					if(answer.value != null) {
+						return;
+					}
+				}
+				if(futures.size() < 2) {
+					futures.add(start(second, lookup, raceOptions, finished));
+					pending++;
+				}
+				if(pending == 0) {
+					return;
+				}
+				options.check();
+				done = finished.poll(Math.max(0, options.remainingNanos()), TimeUnit.NANOSECONDS);
+			}
+		} finally {
+			race.cancel();
+			for(Future<?> future : futures) {
+				future.cancel(true);
+			}
+			if(caller != null) {
+				caller.removeListener(cancel);
+			}
+		}
+	}
+
+	private <T> Future<?> start(final Candidate candidate, final Lookup<T> lookup, final CallOptions options, final LinkedBlockingQueue<Answer<T>> finished) {
+		return FanOut.submit(new Callable<Void>() {
+			public Void call() {
+				finished.add(attempt(candidate, lookup, options));
+				return null;
+			}
+		});
+	}
+
+	private <T> Answer<T> attempt(Candidate candidate, Lookup<T> lookup, CallOptions options) {
+		Answer<T> answer = new Answer<T>();
+		Outcome outcome = Outcome.SUCCESS;
+		long start = System.nanoTime();
+		try {
+			answer.value = lookup.call(candidate.provider, options);
+			if(answer.value == null) {
+				answer.unknown = true;
+				outcome = Outcome.STATUS_ERROR;
+			}
+		} catch(Exception e) {
+			answer.error = e;
+			outcome = UpstreamClient.outcomeOf(e);
+		}
+		long elapsed = System.nanoTime() - start;
+		candidate.timer.record(outcome, elapsed);
+		if(outcome != Outcome.CANCELLED && !(answer.error instanceof CallAbortedException)) {
+			candidate.observe(answer.error == null ? elapsed : 2 * elapsed);
+		}
+		return answer;
+	}
+
+	private List<Candidate> order(final Policy policy) {
+		List<Candidate> ordered = new ArrayList<Candidate>(candidates);
+		Collections.sort(ordered, new Comparator<Candidate>() {
+			public int compare(Candidate a, Candidate b) {
+				int byCost = Double.compare(a.cost, b.cost);
+				int byLatency = Long.compare(a.averageNanos.get(), b.averageNanos.get());
+				if(policy == Policy.CHEAPEST) {
+					return byCost != 0 ? byCost : byLatency;
+				}
+				return byLatency != 0 ? byLatency : byCost;
+			}
+		});
+		return ordered;
+	}
+
+	/**
+	 * One lookup, run against a provider.
+	 */
+	private interface Lookup<T> {
+		T call(GeocoderProvider provider, CallOptions options) throws Exception;
+	}
+
+	/* The outcome of one or more attempts: a value, an unknown location, or a failure. */
+	private static final class Answer<T> {
+		T value;
+		boolean unknown;
+		Exception error;
+
+		void merge(Answer<T> other) {
+			if(other.value != null) {
+				value = other.value;
+			}
+			unknown |= other.unknown;
+			if(other.error != null) {
+				error = other.error;
+			}
+		}
+
+		T result() throws Exception {
+			if(value != null || unknown || error == null) {
+				return value;
+			}
+			throw error;
+		}
+	}
+
+	private static final class Candidate {
+		final GeocoderProvider provider;
+		final double cost;
+		final LatencyTimer timer;
+		final AtomicLong averageNanos = new AtomicLong();
+
+		Candidate(GeocoderProvider provider, double cost) {
+			this.provider = provider;
+			this.cost = cost;
+			this.timer = Metrics.timer("geocoder." + provider.getName());
+		}
+
+		/* Exponentially weighted moving average with a weight of 1/8 for the newest sample. */
+		void observe(long nanos) {
+			while(true) {
+				long average = averageNanos.get();
+				long updated = average == 0 ? nanos : average + (nanos - average) / 8;
+				if(averageNanos.compareAndSet(average, updated)) {
+					return;
+				}
+			}
+		}
+	}
+}
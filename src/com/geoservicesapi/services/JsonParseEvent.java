@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for parsing an upstream response into a JSONObject tree.
+ */
+@Name("com.geoservicesapi.JsonParse")
+@Label("JSON Parse")
+@Category({"GeoServices", "Upstream"})
+@StackTrace(false)
+class JsonParseEvent extends Event {
+
+	@Label("Endpoint")
+	String endpoint;
+
+	@Label("Characters")
+	@DataAmount
+	long characters;
+}
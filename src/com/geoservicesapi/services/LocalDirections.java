@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.geoservicesapi.geometry.GreatCircle;
+import com.geoservicesapi.geometry.Polyline;
+import com.geoservicesapi.routing.RoadGraph;
+import com.geoservicesapi.routing.RoadPath;
+import com.geoservicesapi.routing.RoadRouter;
+
+/**
+ * LocalDirections is a {@link DirectionsProvider} that routes offline over a {@link RoadGraph},
+ * for workloads such as analytics that run far more queries than an upstream would allow.
+ * <p>
+ * Locations are snapped to the nearest node of the graph. Directions start a new maneuver
+ * wherever the road name changes. The graph carries no toll, ferry, border or fuel data, so
+ * those fields of a route are always false or 0, and maneuvers have empty map and icon urls. A
+ * query is not interrupted once started, but queries take milliseconds.
+ */
+public final class LocalDirections implements DirectionsProvider {
+
+	private static final double METERS_PER_MILE = 1609.344;
+
+	private static final String[] COMPASS = {"North", "Northeast", "East", "Southeast", "South", "Southwest", "West", "Northwest"};
+
+	private final String name;
+	private final RoadRouter router;
+
+    /**
+     * Construct a LocalDirections over a graph file.
+     *
+     * @param file
+     *            A file written by {@link com.geoservicesapi.routing.RoadGraphBuilder}.
+     * @throws IOException
+     *             If the file cannot be read.
+     */
+	public LocalDirections(File file) throws IOException {
+		this(RoadGraph.open(file));
+	}
+
+	public LocalDirections(RoadGraph graph) {
+		this("local", graph);
+	}
+
+	public LocalDirections(String name, RoadGraph graph) {
+		this.name = name;
+		this.router = new RoadRouter(graph);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public RoadRouter getRouter() {
+		return router;
+	}
+
+	public JSONObject route(double sourceLat, double sourceLng, double destinationLat, double destinationLng, RouteFormat format, CallOptions options) {
+		options.check();
+		RoadPath path = router.route(sourceLat, sourceLng, destinationLat, destinationLng);
+		if(path == null) {
+			return null;
+		}
+		RoadGraph graph = router.getGraph();
+		int[] edges = path.getEdges();
+
+		JSONObject steps = new JSONObject();
+		steps.put("hasTollRoad", false);
+		steps.put("hasCountryCross", false);
+		steps.put("hasFerry", false);
+		steps.put("distance", path.getLength() / METERS_PER_MILE);
+		steps.put("fuelUsed", 0);
+		steps.put("formattedTime", formatTime(path.getTime()));
+		if(format.hasShape()) {
+			steps.put("shape", shape(graph, path));
+		}
+
+		if(!format.hasNarrative()) {
+			return steps;
+		}
+
+		JSONArray directions = new JSONArray();
+		int node = path.getSource();
+		double heading = Double.NaN;
+		for(int start = 0; start < edges.length;) {
+			String road = graph.getName(edges[start]);
+			int end = start;
+			long length = 0, time = 0;
+			for(; end < edges.length && graph.getName(edges[end]).equals(road); end++) {
+				length += graph.getLength(edges[end]);
+				time += graph.getTime(edges[end]);
+			}
+			int first = graph.getHead(edges[start]);
+			double bearing = GreatCircle.bearing(graph.getLat(node), graph.getLng(node), graph.getLat(first), graph.getLng(first));
+			String turnType = Double.isNaN(heading) ? "straight" : turnType(bearing - heading);
+			String roadName = road.length() == 0 ? "unnamed road" : road;
+			String direction = COMPASS[(int) Math.round(bearing / 45) % 8];
+
+			JSONObject man = new JSONObject();
+			if(Double.isNaN(heading)) {
+				man.put("narrative", "Start out going " + direction.toLowerCase() + " on " + roadName + ".");
+			} else if(turnType.equals("straight")) {
+				man.put("narrative", "Continue onto " + roadName + ".");
+			} else if(turnType.equals("reverse")) {
+				man.put("narrative", "Make a U-turn onto " + roadName + ".");
+			} else {
+				man.put("narrative", "Turn " + turnType + " onto " + roadName + ".");
+			}
+			if(format.hasUrls()) {
+				man.put("url", "");
+			}
+			man.put("distance", length / METERS_PER_MILE);
+			man.put("time", formatTime(time));
+			man.put("turnType", turnType);
+			man.put("transportMode", "AUTO");
+			man.put("direction", direction);
+			if(format.hasUrls()) {
+				man.put("iconUrl", "");
+			}
+			man.put("startPoint", point(graph, node));
+			directions.put(man);
+
+			// The heading at the end of the maneuver, to classify the next turn.
+			int lastEdge = edges[end - 1];
+			int tail = graph.getTail(lastEdge);
+			node = graph.getHead(lastEdge);
+			heading = GreatCircle.bearing(graph.getLat(tail), graph.getLng(tail), graph.getLat(node), graph.getLng(node));
+			start = end;
+		}
+
+		JSONObject arrival = new JSONObject();
+		arrival.put("narrative", "Arrive at your destination.");
+		if(format.hasUrls()) {
+			arrival.put("url", "");
+		}
+		arrival.put("distance", 0);
+		arrival.put("time", formatTime(0));
+		arrival.put("turnType", "end");
+		arrival.put("transportMode", "AUTO");
+		arrival.put("direction", "");
+		if(format.hasUrls()) {
+			arrival.put("iconUrl", "");
+		}
+		arrival.put("startPoint", point(graph, path.getTarget()));
+		directions.put(arrival);
+		steps.put("directions", directions);
+		return steps;
+	}
+
+	public double[] matrix(double[][] locations, boolean manyToOne, CallOptions options) {
+		options.check();
+		RoadGraph graph = router.getGraph();
+		int count = locations.length - 1;
+		double[] cells = new double[2 * count];
+		int fixed = graph.nearestNode(locations[0][0], locations[0][1]);
+		if(fixed < 0) {
+			Arrays.fill(cells, -1);
+			return cells;
+		}
+		int[] others = new int[count];
+		for(int k = 0; k < count; k++) {
+			others[k] = graph.nearestNode(locations[k + 1][0], locations[k + 1][1]);
+		}
+		// Locations off the graph are routed as the fixed node itself, then reported as unroutable.
+		int[] snapped = new int[count];
+		for(int k = 0; k < count; k++) {
+			snapped[k] = others[k] < 0 ? fixed : others[k];
+		}
+		int[] times = new int[count], lengths = new int[count];
+		router.table(fixed, snapped, manyToOne, times, lengths);
+		for(int k = 0; k < count; k++) {
+			boolean routed = others[k] >= 0 && times[k] >= 0;
+			cells[k] = routed ? lengths[k] / METERS_PER_MILE : -1;
+			cells[count + k] = routed ? times[k] / 10.0 : -1;
+		}
+		return cells;
+	}
+
+	public double[] allToAll(double[][] locations, CallOptions options) {
+		int count = locations.length;
+		double[] cells = new double[2 * count * count];
+		double[][] row = new double[count + 1][];
+		System.arraycopy(locations, 0, row, 1, count);
+		for(int i = 0; i < count; i++) {
+			row[0] = locations[i];
+			double[] rowCells = matrix(row, false, options);
+			System.arraycopy(rowCells, 0, cells, i * count, count);
+			System.arraycopy(rowCells, count, cells, count * count + i * count, count);
+		}
+		return cells;
+	}
+
+	/* The nodes of a path as a precision 6 polyline. */
+	private static String shape(RoadGraph graph, RoadPath path) {
+		int[] edges = path.getEdges();
+		int[] lats = new int[edges.length + 1], lngs = new int[edges.length + 1];
+		int node = path.getSource();
+		lats[0] = Polyline.toMicros(graph.getLat(node));
+		lngs[0] = Polyline.toMicros(graph.getLng(node));
+		for(int i = 0; i < edges.length; i++) {
+			node = graph.getHead(edges[i]);
+			lats[i + 1] = Polyline.toMicros(graph.getLat(node));
+			lngs[i + 1] = Polyline.toMicros(graph.getLng(node));
+		}
+		return Polyline.encode(lats, lngs, lats.length, 6);
+	}
+
+	private static String turnType(double change) {
+		// Normalize to (-180, 180], positive to the right.
+		change = ((change % 360) + 540) % 360 - 180;
+		double angle = Math.abs(change);
+		String side = change > 0 ? "right" : "left";
+		if(angle < 20) {
+			return "straight";
+		} else if(angle < 60) {
+			return "slight " + side;
+		} else if(angle < 120) {
+			return side;
+		} else if(angle < 170) {
+			return "sharp " + side;
+		}
+		return "reverse";
+	}
+
+	private static JSONObject point(RoadGraph graph, int node) {
+		JSONObject point = new JSONObject();
+		point.put("lat", graph.getLat(node));
+		point.put("lng", graph.getLng(node));
+		return point;
+	}
+
+	/* Format tenths of a second as HH:mm:ss, like MapQuest's formattedTime. */
+	private static String formatTime(long tenths) {
+		long seconds = (tenths + 5) / 10;
+		return String.format("%02d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.geoservicesapi.geometry.GreatCircle;
+
+/**
+ * LocalGeocoder is an in-memory {@link GeocoderProvider} answering from places registered with
+ * {@link #add(String, String, String, String, String, double, double)}. It stands in for a real
+ * geocoder in tests and offline runs, and can simulate latency and failures to exercise
+ * routing and racing.
+ * <p>
+ * Addresses are matched ignoring case and repeated whitespace. A reverse lookup returns the
+ * nearest place within {@link #setMaxReverseDistance(double)} meters.
+ */
+public class LocalGeocoder implements GeocoderProvider {
+
+	private final String name;
+	private final ConcurrentHashMap<String, double[]> byAddress = new ConcurrentHashMap<String, double[]>();
+	private final CopyOnWriteArrayList<Place> places = new CopyOnWriteArrayList<Place>();
+	private volatile long latencyNanos;
+	private volatile boolean failing;
+	private volatile double maxReverseDistance = 100;
+
+	public LocalGeocoder() {
+		this("local");
+	}
+
+	public LocalGeocoder(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+    /**
+     * Register a place. It is found by its components, by the single-line address
+     * <code>"street, city, state postalCode"</code>, and by reverse lookups near it.
+     *
+     * @param street
+     *            Street in the address.
+     * @param city
+     *            City in the address.
+     * @param state
+     *            State in the address.
+     * @param postalCode
+     *            Postal Code in the address.
+     * @param country
+     *            Country in the address.
+     * @param lat
+     *            Latitude of the place.
+     * @param lng
+     *            Longitude of the place.
+     */
+	public void add(String street, String city, String state, String postalCode, String country, double lat, double lng) {
+		double[] latLng = new double[] {lat, lng};
+		byAddress.put(componentsKey(street, city, state, postalCode), latLng);
+		byAddress.put(normalize(street + ", " + city + ", " + state + " " + postalCode), latLng);
+		places.add(new Place(new String[] {street, city, state, country, postalCode}, lat, lng));
+	}
+
+    /**
+     * Register a single-line address, found only by {@link #geocode(String, CallOptions)}.
+     *
+     * @param address
+     *            The address.
+     * @param lat
+     *            Latitude of the address.
+     * @param lng
+     *            Longitude of the address.
+     */
+	public void add(String address, double lat, double lng) {
+		byAddress.put(normalize(address), new double[] {lat, lng});
+	}
+
+	public void clear() {
+		byAddress.clear();
+		places.clear();
+	}
+
+    /**
+     * Delay every lookup, as a remote provider would.
+     *
+     * @param latency
+     *            The delay.
+     * @param unit
+     *            Unit of the delay.
+     */
+	public void setLatency(long latency, TimeUnit unit) {
+		this.latencyNanos = unit.toNanos(latency);
+	}
+
+    /**
+     * Make every lookup fail, as an unavailable provider would.
+     *
+     * @param failing
+     *            true to fail lookups.
+     */
+	public void setFailing(boolean failing) {
+		this.failing = failing;
+	}
+
+	public void setMaxReverseDistance(double meters) {
+		this.maxReverseDistance = meters;
+	}
+
+	public double[] geocode(String address, CallOptions options) throws Exception {
+		simulate(options);
+		double[] latLng = byAddress.get(normalize(address));
+		return latLng == null ? null : latLng.clone();
+	}
+
+	public double[] geocode(String street, String city, String state, String postalCode, CallOptions options) throws Exception {
+		simulate(options);
+		double[] latLng = byAddress.get(componentsKey(street, city, state, postalCode));
+		return latLng == null ? null : latLng.clone();
+	}
+
+	public String[] reverseGeocode(double lat, double lng, CallOptions options) throws Exception {
+		simulate(options);
+		Place nearest = null;
+		double nearestDistance = maxReverseDistance;
+		for(Place place : places) {
+			double distance = GreatCircle.distance(lat, lng, place.lat, place.lng);
+			if(distance <= nearestDistance) {
+				nearest = place;
+				nearestDistance = distance;
+			}
+		}
+		return nearest == null ? null : nearest.components.clone();
+	}
+
+	private void simulate(CallOptions options) throws Exception {
+		long wait = latencyNanos;
+		if(wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(Math.min(wait, Math.max(0, options.remainingNanos())));
+		}
+		options.check();
+		if(failing) {
+			throw new IllegalStateException(name + " is unavailable");
+		}
+	}
+
+	private static String componentsKey(String street, String city, String state, String postalCode) {
+		return normalize(street) + "|" + normalize(city) + "|" + normalize(state) + "|" + normalize(postalCode);
+	}
+
+	private static String normalize(String text) {
+		return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+	}
+
+	private static final class Place {
+		final String[] components;
+		final double lat;
+		final double lng;
+
+		Place(String[] components, double lat, double lng) {
+			this.components = components;
+			this.lat = lat;
+			this.lng = lng;
+		}
+	}
+}
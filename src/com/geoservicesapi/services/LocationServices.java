@@ -16,24 +16,50 @@
 
 package com.geoservicesapi.services;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.nio.charset.Charset;
-
 import org.json.JSONObject;
-import org.json.JSONArray;
+
+import com.geoservicesapi.cache.CacheBudget;
+import com.geoservicesapi.cache.Loader;
+import com.geoservicesapi.cache.ObjectSizes;
+import com.geoservicesapi.cache.ServiceCache;
+import com.geoservicesapi.cache.Weigher;
+import com.geoservicesapi.metrics.LatencyTimer;
+import com.geoservicesapi.metrics.Metrics;
+import com.geoservicesapi.metrics.Outcome;
 
 /**
  * LocationServices is a class for consuming location services using MapQuest Geo-coding API.
+ * Other geocoders can be used, alone or alongside MapQuest, by constructing it with a
+ * {@link GeocoderRouter}.
  * 
  * @author Saurabh Rane
  * @version 2014-07-24
 */
 
 public class LocationServices {
-	private String mapQuestApiKey;
+	
+	private static final long GEOCODE_TTL = 24 * 60 * 60 * 1000L;
+	private static final long REVERSE_GEOCODE_TTL = 24 * 60 * 60 * 1000L;
+
+	private static final LatencyTimer GET_COORDINATES_USING_ADDRESS = Metrics.timer("method.LocationServices.getCoordinatesUsingAddress");
+	private static final LatencyTimer GET_COORDINATES_USING_COMPONENTS = Metrics.timer("method.LocationServices.getCoordinatesUsingComponents");
+	private static final LatencyTimer GET_ADDRESS = Metrics.timer("method.LocationServices.getAddress");
+
+	private static final Weigher<String, double[]> COORDINATES_WEIGHER = new Weigher<String, double[]>() {
+		public long weigh(String key, double[] value) {
+			return ObjectSizes.of(key) + ObjectSizes.of(value);
+		}
+	};
+
+	private static final Weigher<String, String[]> ADDRESS_WEIGHER = new Weigher<String, String[]>() {
+		public long weigh(String key, String[] value) {
+			return ObjectSizes.of(key) + ObjectSizes.of(value);
+		}
+	};
+
+	private GeocoderRouter geocoders;
+	private ServiceCache<String, double[]> geocodeCache;
+	private ServiceCache<String, String[]> reverseGeocodeCache;
 
     /**
      * Construct a LocationServices with your mapQuest api key.
@@ -42,7 +68,33 @@ public class LocationServices {
      *            Your api key for mapQuest api.
      */
 	public LocationServices(String mapQuestApiKey) {
-		this.mapQuestApiKey = mapQuestApiKey;
+		this(mapQuestApiKey, CacheBudget.shared());
+	}
+
+    /**
+     * Construct a LocationServices whose caches are charged against the given memory budget.
+     *
+     * @param mapQuestApiKey
+     *            Your api key for mapQuest api.
+     * @param budget
+     *            Memory budget shared with other service caches.
+     */
+	public LocationServices(String mapQuestApiKey, CacheBudget budget) {
+		this(GeocoderRouter.of(new MapQuestGeocoder(mapQuestApiKey)), budget);
+	}
+
+    /**
+     * Construct a LocationServices answering from the providers of a router.
+     *
+     * @param geocoders
+     *            Chooses the geocoder for each lookup.
+     * @param budget
+     *            Memory budget shared with other service caches.
+     */
+	public LocationServices(GeocoderRouter geocoders, CacheBudget budget) {
+		this.geocoders = geocoders;
+		this.geocodeCache = new ServiceCache<String, double[]>("geocode", budget, COORDINATES_WEIGHER, GEOCODE_TTL);
+		this.reverseGeocodeCache = new ServiceCache<String, String[]>("reverse-geocode", budget, ADDRESS_WEIGHER, REVERSE_GEOCODE_TTL);
 	}
 	
     /**
@@ -53,47 +105,44 @@ public class LocationServices {
      * @return The JSONObject associated with geo-coordinates.
      */
 	public JSONObject getCoordinatesUsingAddress(String address) {
+		return getCoordinatesUsingAddress(address, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the geo-location of an address.
+     *
+     * @param address
+     *            Address of a location.
+     * @param options
+     *            Per-call options such as the traffic class.
+     * @return The JSONObject associated with geo-coordinates.
+     */
+	public JSONObject getCoordinatesUsingAddress(final String address, final CallOptions options) {
+		ServiceCall call = new ServiceCall(GET_COORDINATES_USING_ADDRESS);
+		Outcome outcome = Outcome.SUCCESS;
 		JSONObject result = new JSONObject();
 
-		String apiUrl = "http://open.mapquestapi.com/geocoding/v1/address?key="+mapQuestApiKey+"&location="+address;
-		
-		apiUrl = apiUrl.replaceAll(" ", "%20");
-
 		try {
-			InputStream is = new URL(apiUrl).openStream();
-			BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-			StringBuilder sb = new StringBuilder();
-			int cp;
-			while ((cp = rd.read()) != -1) {
-				sb.append((char) cp);
-			}
-
-			String jsonText = sb.toString();
-			JSONObject res = new JSONObject(jsonText);
-			JSONObject info = res.getJSONObject("info");
-			int statusCode = info.getInt("statuscode");
-			if(statusCode == 0) {
-				JSONArray results = res.getJSONArray("results");
-				JSONObject resultObject = results.getJSONObject(0);
-				JSONArray locations = resultObject.getJSONArray("locations");
-				JSONObject location = locations.getJSONObject(0);
-				JSONObject latLng = location.getJSONObject("latLng");
-				double lat = latLng.getDouble("lat");
-				double lng = latLng.getDouble("lng");
-				
+			double[] latLng = CachedLoads.get(geocodeCache, "address:" + address, new Loader<String, double[]>() {
+				public double[] load(String key) throws Exception {
+					return geocoders.geocode(address, options);
+				}
+			}, options);
+			call.dataReady();
+			if(latLng == null) {
+				// No provider knows the address.
+				outcome = Outcome.STATUS_ERROR;
+			} else {
 				JSONObject coordinates = new JSONObject();
-				coordinates.put("lat", lat);
-				coordinates.put("lng", lng);
+				coordinates.put("lat", latLng[0]);
+				coordinates.put("lng", latLng[1]);
 				result.put("location", coordinates);
 			}
-			
 		} catch (Exception e) {
-			JSONObject error = new JSONObject();
-			error.put("message", "Error processing request. Try again after some time");
-			result.put("error", error);
+			outcome = UpstreamClient.failed(e, result);
 		}
+		call.finish(outcome, result);
 		return result;
-
 	}
 	
     /**
@@ -110,45 +159,48 @@ public class LocationServices {
      * @return The JSONObject associated with geo-coordinates.
      */
 	public JSONObject getCoordinatesUsingComponents(String street, String city,  String state, String postalCode) {
-
+		return getCoordinatesUsingComponents(street, city, state, postalCode, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the geo-location of an address using its components.
+     *
+     * @param street
+     *            Street in an address of a location.
+     * @param city
+     *            City in an address of a location.
+     * @param state
+     *            State in an address of a location.
+     * @param postalCode
+     *            Postal Code in an address of a location.
+     * @param options
+     *            Per-call options such as the traffic class.
+     * @return The JSONObject associated with geo-coordinates.
+     */
+	public JSONObject getCoordinatesUsingComponents(final String street, final String city, final String state, final String postalCode, final CallOptions options) {
+		ServiceCall call = new ServiceCall(GET_COORDINATES_USING_COMPONENTS);
+		Outcome outcome = Outcome.SUCCESS;
 		JSONObject result = new JSONObject();
 
-		String apiUrl = "http://www.mapquestapi.com/geocoding/v1/address?&key="+mapQuestApiKey+"&street="+street+"&city="+city+"&state="+state+"&postalCode="+postalCode;
-		apiUrl = apiUrl.replaceAll(" ", "%20");
-
 		try {
-			InputStream is = new URL(apiUrl).openStream();
-			BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-			StringBuilder sb = new StringBuilder();
-			int cp;
-			while ((cp = rd.read()) != -1) {
-				sb.append((char) cp);
-			}
-
-			String jsonText = sb.toString();
-			JSONObject res = new JSONObject(jsonText);
-			JSONObject info = res.getJSONObject("info");
-			int statusCode = info.getInt("statuscode");
-			if(statusCode == 0) {
-				JSONArray results = res.getJSONArray("results");
-				JSONObject resultObject = results.getJSONObject(0);
-				JSONArray locations = resultObject.getJSONArray("locations");
-				JSONObject location = locations.getJSONObject(0);
-				JSONObject latLng = location.getJSONObject("latLng");
-				double lat = latLng.getDouble("lat");
-				double lng = latLng.getDouble("lng");
-				
+			double[] latLng = CachedLoads.get(geocodeCache, "components:" + street + "|" + city + "|" + state + "|" + postalCode, new Loader<String, double[]>() {
+				public double[] load(String key) throws Exception {
+					return geocoders.geocode(street, city, state, postalCode, options);
+				}
+			}, options);
+			call.dataReady();
+			if(latLng == null) {
+				outcome = Outcome.STATUS_ERROR;
+			} else {
 				JSONObject coordinates = new JSONObject();
-				coordinates.put("lat", lat);
-				coordinates.put("lng", lng);
+				coordinates.put("lat", latLng[0]);
+				coordinates.put("lng", latLng[1]);
 				result.put("location", coordinates);
 			}
-			
 		} catch (Exception e) {
-			JSONObject error = new JSONObject();
-			error.put("message", "Error processing request. Try again after some time");
-			result.put("error", error);
+			outcome = UpstreamClient.failed(e, result);
 		}
+		call.finish(outcome, result);
 		return result;
 	}
 	
@@ -162,7 +214,23 @@ public class LocationServices {
      * @return The JSONObject associated with address from geo-coordinates.
      */
 	public JSONObject getAddress(String lat, String lng) {
-
+		return getAddress(lat, lng, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the address of a location using its geo-coordinates.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param options
+     *            Per-call options such as the traffic class.
+     * @return The JSONObject associated with address from geo-coordinates.
+     */
+	public JSONObject getAddress(String lat, String lng, final CallOptions options) {
+		ServiceCall call = new ServiceCall(GET_ADDRESS);
+		Outcome outcome = Outcome.SUCCESS;
 		JSONObject result = new JSONObject();
 		
 		if(lat == null) {
@@ -222,63 +290,25 @@ public class LocationServices {
 					error.put("field", "lng");
 					result.put("error", error);
 				} else {
-
-					String apiUrl = "http://open.mapquestapi.com/geocoding/v1/reverse?key="+mapQuestApiKey+"&location="+latd+","+lngd;
-					
-					apiUrl = apiUrl.replaceAll(" ", "%20");
+					final double latitude = latd, longitude = lngd;
 
 					try {
-						InputStream is = new URL(apiUrl).openStream();
-						BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
-						StringBuilder sb = new StringBuilder();
-						int cp;
-						while ((cp = rd.read()) != -1) {
-							sb.append((char) cp);
-						}
-
-						String jsonText = sb.toString();
-						JSONObject res = new JSONObject(jsonText);
-						JSONObject info = res.getJSONObject("info");
-						int statusCode = info.getInt("statuscode");
-						if(statusCode == 0) {
-							JSONArray results = res.getJSONArray("results");
-							JSONObject resultObject = results.getJSONObject(0);
-							JSONArray locations = resultObject.getJSONArray("locations");
-							JSONObject location = locations.getJSONObject(0);
-							String street = "", city = "", state = "", country = "", postalCode = "";
-
-							try {
-								street = location.getString("street");
-							} catch(Exception e) {
-							}
-
-							try {
-								city = location.getString("adminArea5");
-							} catch(Exception e) {
+						String[] components = CachedLoads.get(reverseGeocodeCache, latd + "," + lngd, new Loader<String, String[]>() {
+							public String[] load(String key) throws Exception {
+								return geocoders.reverseGeocode(latitude, longitude, options);
 							}
-
-							try {
-								state = location.getString("adminArea3");
-							} catch(Exception e) {
-							}
-
-							try {
-								country = location.getString("adminArea1");
-							} catch(Exception e) {
-							}
-
-							try {
-								postalCode = location.getString("postalCode");
-							} catch(Exception e) {
-							}
-							
+						}, options);
+						call.dataReady();
+						if(components == null) {
+							outcome = Outcome.STATUS_ERROR;
+						} else {
 							JSONObject address = new JSONObject();
 							
-							address.put("street", street);
-							address.put("city", city);
-							address.put("state", state);
-							address.put("country", country);
-							address.put("postalCode", postalCode);
+							address.put("street", components[0]);
+							address.put("city", components[1]);
+							address.put("state", components[2]);
+							address.put("country", components[3]);
+							address.put("postalCode", components[4]);
 							
 							result.put("address", address);
 							
@@ -290,13 +320,15 @@ public class LocationServices {
 							result.put("providedLocation", providedLocation);
 						}
 					} catch (Exception e) {
-						JSONObject error = new JSONObject();
-						error.put("message", "Error processing request. Try again after some time");
-						result.put("error", error);
+						outcome = UpstreamClient.failed(e, result);
 					}
 				}
 			}
 		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
 		return result;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.net.URLEncoder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * MapQuestDirections is a {@link DirectionsProvider} using the MapQuest Directions API. Routes
+ * avoid toll roads. Route requests ask only for the parts of a route its {@link RouteFormat}
+ * includes, plus the parameters of a {@link MapQuestProfile}.
+ */
+public final class MapQuestDirections implements DirectionsProvider {
+
+	private final String mapQuestApiKey;
+	private final MapQuestProfile profile;
+
+    /**
+     * Construct a MapQuestDirections with your mapQuest api key.
+     *
+     * @param mapQuestApiKey
+     *            Your api key for mapQuest api.
+     */
+	public MapQuestDirections(String mapQuestApiKey) {
+		this(mapQuestApiKey, MapQuestProfile.LEAN);
+	}
+
+    /**
+     * Construct a MapQuestDirections making requests of a given profile.
+     *
+     * @param mapQuestApiKey
+     *            Your api key for mapQuest api.
+     * @param profile
+     *            Parameters added to the requests.
+     */
+	public MapQuestDirections(String mapQuestApiKey, MapQuestProfile profile) {
+		this.mapQuestApiKey = mapQuestApiKey;
+		this.profile = profile;
+	}
+
+	public String getName() {
+		return "mapquest";
+	}
+
+	public JSONObject route(double sourceLat, double sourceLng, double destinationLat, double destinationLng, final RouteFormat format, CallOptions options) throws Exception {
+		String apiUrl = "http://open.mapquestapi.com/directions/v2/route?key="+mapQuestApiKey+"&avoids=Toll%20road&from="+sourceLat+","+sourceLng+"&to="+destinationLat+","+destinationLng+"&routeType=fastest"+profile.getRouteParameters();
+		if(!format.hasNarrative()) {
+			apiUrl += "&narrativeType=none";
+		}
+		if(!format.hasUrls()) {
+			apiUrl += "&manMaps=false";
+		}
+		if(format.hasShape()) {
+			// cmp6 is the precision 6 encoded polyline that Polyline reads and writes.
+			apiUrl += "&fullShape=true&shapeFormat=cmp6";
+		}
+		return UpstreamClient.getMapQuest(UpstreamClient.DIRECTIONS_ROUTE, apiUrl, options, new UpstreamClient.ResponseReader<JSONObject>() {
+			public JSONObject read(JSONObject res) {
+				JSONObject route = (JSONObject) res.getJSONObject("route");
+				boolean hasTollRoad = route.getBoolean("hasTollRoad");
+				boolean hasCountryCross = route.getBoolean("hasCountryCross");
+				boolean hasFerry = route.getBoolean("hasFerry");
+				double distance = route.getDouble("distance");
+				double fuelUsed = route.getDouble("fuelUsed");
+				String formattedTime = route.getString("formattedTime");
+		
+				JSONArray legs = (JSONArray) route.getJSONArray("legs");
+				JSONObject steps = new JSONObject();
+				steps.put("hasTollRoad", hasTollRoad);
+				steps.put("hasCountryCross", hasCountryCross);
+				steps.put("hasFerry", hasFerry);
+				steps.put("distance", distance);
+				steps.put("fuelUsed", fuelUsed);
+				steps.put("formattedTime", formattedTime);
+				if(format.hasShape()) {
+					steps.put("shape", route.getJSONObject("shape").getString("shapePoints"));
+				}
+
+				if(format.hasNarrative() && legs.length() > 0) {
+					JSONObject leg = (JSONObject) legs.get(0);
+					JSONArray maneuvers = (JSONArray) leg.getJSONArray("maneuvers");
+					JSONArray directions = new JSONArray();
+					String[] turnTypes = {"straight","slight right","right","sharp right","reverse","sharp left","left","slight left","right u-turn","left u-turn","right merge","left merge","right on ramp","left on ramp","right off ramp","left off ramp","right fork","left fork","straight fork","take transit","transfer transit","port transit","enter transit","exit transit"};
+					for(int i=0; i<maneuvers.length(); i++) {
+						JSONObject maneuver = (JSONObject) maneuvers.get(i);
+						String narrative = maneuver.getString("narrative");
+						String url = "";
+						int turnType = maneuver.getInt("turnType");
+						String transportMode = maneuver.getString("transportMode");
+						if(format.hasUrls() && i!=maneuvers.length()-1) {
+							url = maneuver.getString("mapUrl");
+						}
+						double dis = maneuver.getDouble("distance");
+						String time = maneuver.getString("formattedTime");
+						String directionName = "";
+						try {
+							directionName = maneuver.getString("directionName");
+						} catch(Exception ignore) {
+						}
+
+						JSONObject man = new JSONObject();
+						man.put("narrative", narrative);
+						if(format.hasUrls()) {
+							man.put("url", url);
+						}
+						man.put("distance", dis);
+						man.put("time", time);
+						if(turnType == -1) {
+							man.put("turnType", "end");
+						} else {
+							man.put("turnType", turnTypes[turnType]);
+						}
+						man.put("transportMode", transportMode);
+						man.put("direction", directionName);
+						if(format.hasUrls()) {
+							man.put("iconUrl", maneuver.getString("iconUrl"));
+						}
+						man.put("startPoint", maneuver.getJSONObject("startPoint"));
+						directions.put(i, man);
+					}
+					steps.put("directions", directions);
+				}
+				return steps;
+			}
+		});
+	}
+
+	public double[] allToAll(double[][] locations, CallOptions options) throws Exception {
+		final JSONArray keys = new JSONArray();
+		for(double[] location : locations) {
+			keys.put(location[0] + "," + location[1]);
+		}
+		JSONObject matrixOptions = new JSONObject();
+		matrixOptions.put("allToAll", true);
+		matrixOptions.put("routeType", "fastest");
+		matrixOptions.put("avoids", new JSONArray().put("Toll road"));
+		JSONObject request = new JSONObject();
+		request.put("locations", keys);
+		request.put("options", matrixOptions);
+		String apiUrl = "http://open.mapquestapi.com/directions/v2/routematrix?key="+mapQuestApiKey+"&json="+URLEncoder.encode(request.toString(), "UTF-8");
+		return UpstreamClient.getMapQuest(UpstreamClient.DIRECTIONS_ROUTE_MATRIX, apiUrl, options, new UpstreamClient.ResponseReader<double[]>() {
+			public double[] read(JSONObject res) {
+				JSONArray distance = res.getJSONArray("distance");
+				JSONArray time = res.getJSONArray("time");
+				int count = keys.length();
+				double[] cells = new double[2 * count * count];
+				for(int i = 0; i < count; i++) {
+					JSONArray distanceRow = distance.getJSONArray(i);
+					JSONArray timeRow = time.getJSONArray(i);
+					for(int j = 0; j < count; j++) {
+						cells[i * count + j] = distanceRow.getDouble(j);
+						cells[count * count + i * count + j] = timeRow.getDouble(j);
+					}
+				}
+				return cells;
+			}
+		});
+	}
+
+	public double[] matrix(double[][] locations, boolean manyToOne, CallOptions options) throws Exception {
+		final JSONArray keys = new JSONArray();
+		for(double[] location : locations) {
+			keys.put(location[0] + "," + location[1]);
+		}
+		JSONObject matrixOptions = new JSONObject();
+		matrixOptions.put("manyToOne", manyToOne);
+		matrixOptions.put("routeType", "fastest");
+		matrixOptions.put("avoids", new JSONArray().put("Toll road"));
+		JSONObject request = new JSONObject();
+		request.put("locations", keys);
+		request.put("options", matrixOptions);
+		String apiUrl = "http://open.mapquestapi.com/directions/v2/routematrix?key="+mapQuestApiKey+"&json="+URLEncoder.encode(request.toString(), "UTF-8");
+		return UpstreamClient.getMapQuest(UpstreamClient.DIRECTIONS_ROUTE_MATRIX, apiUrl, options, new UpstreamClient.ResponseReader<double[]>() {
+			public double[] read(JSONObject res) {
+				JSONArray distance = res.getJSONArray("distance");
+				JSONArray time = res.getJSONArray("time");
+				// The first entry is the fixed location itself.
+				int count = keys.length() - 1;
+				double[] cells = new double[2 * count];
+				for(int k = 0; k < count; k++) {
+					cells[k] = distance.getDouble(k + 1);
+					cells[count + k] = time.getDouble(k + 1);
+				}
+				return cells;
+			}
+		});
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+import com.geoservicesapi.metrics.LatencyTimer;
+
+/**
+ * MapQuestGeocoder is a {@link GeocoderProvider} using the MapQuest Geo-coding API.
+ */
+public final class MapQuestGeocoder implements GeocoderProvider {
+
+	private final String mapQuestApiKey;
+	private final MapQuestProfile profile;
+
+    /**
+     * Construct a MapQuestGeocoder with your mapQuest api key.
+     *
+     * @param mapQuestApiKey
+     *            Your api key for mapQuest api.
+     */
+	public MapQuestGeocoder(String mapQuestApiKey) {
+		this(mapQuestApiKey, MapQuestProfile.LEAN);
+	}
+
+    /**
+     * Construct a MapQuestGeocoder making requests of a given profile.
+     *
+     * @param mapQuestApiKey
+     *            Your api key for mapQuest api.
+     * @param profile
+     *            Parameters added to the requests.
+     */
+	public MapQuestGeocoder(String mapQuestApiKey, MapQuestProfile profile) {
+		this.mapQuestApiKey = mapQuestApiKey;
+		this.profile = profile;
+	}
+
+	public String getName() {
+		return "mapquest";
+	}
+
+	public double[] geocode(String address, CallOptions options) throws Exception {
+		String apiUrl = "http://open.mapquestapi.com/geocoding/v1/address?key="+mapQuestApiKey+"&location="+address+profile.getGeocodeParameters();
+		apiUrl = apiUrl.replaceAll(" ", "%20");
+		return geocode(UpstreamClient.GEOCODE_ADDRESS, apiUrl, options);
+	}
+
+	public double[] geocode(String street, String city, String state, String postalCode, CallOptions options) throws Exception {
+		String apiUrl = "http://www.mapquestapi.com/geocoding/v1/address?&key="+mapQuestApiKey+"&street="+street+"&city="+city+"&state="+state+"&postalCode="+postalCode+profile.getGeocodeParameters();
+		apiUrl = apiUrl.replaceAll(" ", "%20");
+		return geocode(UpstreamClient.GEOCODE_COMPONENTS, apiUrl, options);
+	}
+
+    /**
+     * Fetch the coordinates of the first location matched by a geocoding request, without
+     * reading the other candidates.
+     *
+     * @param endpoint
+     *            Timer of the geocoding endpoint.
+     * @param apiUrl
+     *            Geocoding request url.
+     * @param options
+     *            Options of the service call.
+     * @return The latitude and longitude.
+     */
+	private double[] geocode(LatencyTimer endpoint, String apiUrl, CallOptions options) throws Exception {
+		return UpstreamClient.getMapQuestFirstLocation(endpoint, apiUrl, options, new UpstreamClient.ResponseReader<double[]>() {
+			public double[] read(JSONObject location) {
+				JSONObject latLng = location.getJSONObject("latLng");
+				double lat = latLng.getDouble("lat");
+				double lng = latLng.getDouble("lng");
+				return new double[] {lat, lng};
+			}
+		});
+	}
+
+    /**
+     * Fetch the address components of the first location matched by a reverse geocoding request.
+     *
+     * @return Street, city, state, country and postal code.
+     */
+	public String[] reverseGeocode(double lat, double lng, CallOptions options) throws Exception {
+		String apiUrl = "http://open.mapquestapi.com/geocoding/v1/reverse?key="+mapQuestApiKey+"&location="+lat+","+lng+profile.getReverseGeocodeParameters();
+		apiUrl = apiUrl.replaceAll(" ", "%20");
+		return UpstreamClient.getMapQuestFirstLocation(UpstreamClient.GEOCODE_REVERSE, apiUrl, options, new UpstreamClient.ResponseReader<String[]>() {
+			public String[] read(JSONObject location) {
+				String street = "", city = "", state = "", country = "", postalCode = "";
+
+				try {
+					street = location.getString("street");
+				} catch(Exception e) {
+				}
+
+				try {
+					city = location.getString("adminArea5");
+				} catch(Exception e) {
+				}
+
+				try {
+					state = location.getString("adminArea3");
+				} catch(Exception e) {
+				}
+
+				try {
+					country = location.getString("adminArea1");
+				} catch(Exception e) {
+				}
+
+				try {
+					postalCode = location.getString("postalCode");
+				} catch(Exception e) {
+				}
+				return new String[] {street, city, state, country, postalCode};
+			}
+		});
+	}
+}
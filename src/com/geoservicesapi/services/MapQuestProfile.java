@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+/**
+ * MapQuestProfile holds the query parameters added to each kind of MapQuest request, to make
+ * responses no larger than the services need. Instances are immutable; the <code>with</code>
+ * methods return modified copies.
+ * <p>
+ * The services read only the first location of a geocoding response and never its map
+ * thumbnails, and never read the addresses MapQuest reverse geocodes for the ends of a route,
+ * so {@link #LEAN} asks for none of them. Whether a route carries its narrative, maneuver map
+ * urls and shape is chosen per call by its {@link RouteFormat}. {@link #FULL} adds nothing and
+ * gets MapQuest's default responses. Parameters are given as url-encoded query text starting
+ * with <code>&amp;</code>.
+ */
+public final class MapQuestProfile {
+
+	/** The profile of the MapQuest providers constructed without one. */
+	public static final MapQuestProfile LEAN = new MapQuestProfile("&maxResults=1&thumbMaps=false", "&thumbMaps=false", "&doReverseGeocode=false");
+
+	/** A profile adding no parameters. */
+	public static final MapQuestProfile FULL = new MapQuestProfile("", "", "");
+
+	private final String geocodeParameters;
+	private final String reverseGeocodeParameters;
+	private final String routeParameters;
+
+	private MapQuestProfile(String geocodeParameters, String reverseGeocodeParameters, String routeParameters) {
+		this.geocodeParameters = geocodeParameters;
+		this.reverseGeocodeParameters = reverseGeocodeParameters;
+		this.routeParameters = routeParameters;
+	}
+
+	public String getGeocodeParameters() {
+		return geocodeParameters;
+	}
+
+	public String getReverseGeocodeParameters() {
+		return reverseGeocodeParameters;
+	}
+
+	public String getRouteParameters() {
+		return routeParameters;
+	}
+
+	public MapQuestProfile withGeocodeParameters(String geocodeParameters) {
+		return new MapQuestProfile(geocodeParameters, reverseGeocodeParameters, routeParameters);
+	}
+
+	public MapQuestProfile withReverseGeocodeParameters(String reverseGeocodeParameters) {
+		return new MapQuestProfile(geocodeParameters, reverseGeocodeParameters, routeParameters);
+	}
+
+	public MapQuestProfile withRouteParameters(String routeParameters) {
+		return new MapQuestProfile(geocodeParameters, reverseGeocodeParameters, routeParameters);
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+import com.geoservicesapi.geometry.GreatCircle;
+
+/**
+ * MeetingPointSearch looks for the place a group can reach soonest, either in least total
+ * travel time or with the longest trip as short as possible.
+ * <p>
+ * It is a compass pattern search over travel times. The first round evaluates the centroid of
+ * the group and eight points around it; each later round evaluates eight points around the
+ * best point so far, moving there if one of them is better and otherwise halving the radius.
+ * The candidates of a round are routed to in a single concurrent route matrix. The search
+ * stops once the radius falls below {@link #MIN_STEP} meters, or before a round that would
+ * exceed the budget of provider requests or start after the deadline, keeping the best point
+ * found. Travel times are not convex, so the result is a local optimum near the centroid.
+ */
+final class MeetingPointSearch {
+
+	/* Radius in meters below which the search has converged. */
+	static final double MIN_STEP = 250;
+
+	private final DirectionsServices services;
+	private final double[][] participants;
+	private final boolean fairest;
+	private final int maxRequests;
+	private final CallOptions options;
+
+	private double[] best;
+	private double[] bestDistances;
+	private double[] bestTimes;
+	private double bestCost = Double.POSITIVE_INFINITY;
+	private JSONObject lastError;
+	private int rounds;
+	private int requests;
+	private boolean converged;
+
+    /**
+     * Construct a MeetingPointSearch.
+     *
+     * @param services
+     *            Routes the participants to the candidates.
+     * @param participants
+     *            Latitude and longitude of each participant.
+     * @param fairest
+     *            Whether to minimize the longest travel time rather than the total.
+     * @param maxRequests
+     *            Most provider requests the search may make.
+     * @param options
+     *            Options of the service call.
+     */
+	MeetingPointSearch(DirectionsServices services, double[][] participants, boolean fairest, int maxRequests, CallOptions options) {
+		this.services = services;
+		this.participants = participants;
+		this.fairest = fairest;
+		this.maxRequests = maxRequests;
+		this.options = options;
+	}
+
+    /**
+     * Run the search.
+     *
+     * @return Whether any candidate could be reached by every participant.
+     */
+	boolean run() {
+		int n = participants.length;
+		double lat = 0, lng = 0;
+		for(double[] participant : participants) {
+			lat += participant[0];
+			lng += participant[1];
+		}
+		double[] center = {lat / n, lng / n};
+		double step = 2 * MIN_STEP;
+		for(double[] participant : participants) {
+			step = Math.max(step, GreatCircle.distance(center[0], center[1], participant[0], participant[1]) / 2);
+		}
+
+		double[][] candidates = ring(center, step, true);
+		while(true) {
+			int cost = DirectionsServices.matrixRequests(n, candidates.length);
+			if(requests + cost > maxRequests || options.isAborted()) {
+				break;
+			}
+			RouteMatrix matrix = services.matrix(participants, candidates, options);
+			requests += cost;
+			rounds++;
+
+			for(int j = 0; j < candidates.length; j++) {
+				evaluate(matrix, j, candidates[j]);
+			}
+			if(best == null) {
+				// Not even the centroid is reachable; searching around it would not help.
+				break;
+			}
+			if(best == center) {
+				step /= 2;
+				if(step < MIN_STEP) {
+					converged = true;
+					break;
+				}
+			} else {
+				center = best;
+			}
+			candidates = ring(center, step, false);
+		}
+		return best != null;
+	}
+
+	double[] getLocation() {
+		return best;
+	}
+
+	double[] getDistances() {
+		return bestDistances;
+	}
+
+	double[] getTimes() {
+		return bestTimes;
+	}
+
+    /**
+     * Get the error of the last candidate that could not be evaluated.
+     *
+     * @return The error, or null if every candidate was evaluated.
+     */
+	JSONObject getLastError() {
+		return lastError;
+	}
+
+	int getRounds() {
+		return rounds;
+	}
+
+	int getRequests() {
+		return requests;
+	}
+
+	boolean isConverged() {
+		return converged;
+	}
+
+	/* Score a candidate, keeping it if it beats the best so far. */
+	private void evaluate(RouteMatrix matrix, int column, double[] candidate) {
+		int n = participants.length;
+		double total = 0, longest = 0;
+		for(int i = 0; i < n; i++) {
+			if(matrix.getError(i, column) != null) {
+				lastError = matrix.getError(i, column);
+				return;
+			}
+			double time = matrix.getTime(i, column);
+			total += time;
+			longest = Math.max(longest, time);
+		}
+		// The other objective breaks ties, as it does between points of a flat region.
+		double cost = fairest ? longest + total * 1e-6 : total + longest * 1e-6;
+		if(cost >= bestCost) {
+			return;
+		}
+		bestCost = cost;
+		best = candidate;
+		bestDistances = new double[n];
+		bestTimes = new double[n];
+		for(int i = 0; i < n; i++) {
+			bestDistances[i] = matrix.getDistance(i, column);
+			bestTimes[i] = matrix.getTime(i, column);
+		}
+	}
+
+	/* The eight compass points around a center, optionally preceded by the center. */
+	private static double[][] ring(double[] center, double step, boolean withCenter) {
+		int offset = withCenter ? 1 : 0;
+		double[][] points = new double[8 + offset][];
+		if(withCenter) {
+			points[0] = center;
+		}
+		for(int k = 0; k < 8; k++) {
+			// Diagonal points are as far along each axis as the others, to form a square grid.
+			double distance = k % 2 == 0 ? step : step * Math.sqrt(2);
+			points[offset + k] = GreatCircle.destination(center[0], center[1], k * 45, distance);
+		}
+		return points;
+	}
+}
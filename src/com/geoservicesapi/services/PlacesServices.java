@@ -16,10 +16,34 @@
 
 package com.geoservicesapi.services;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import org.json.JSONObject;
 import org.json.JSONArray;
 
 import com.geoservicesapi.Yelp;
+import com.geoservicesapi.cache.Loader;
+import com.geoservicesapi.cache.ObjectSizes;
+import com.geoservicesapi.cache.ServiceCache;
+import com.geoservicesapi.cache.Weigher;
+import com.geoservicesapi.geometry.RouteShape;
+import com.geoservicesapi.metrics.LatencyTimer;
+import com.geoservicesapi.metrics.Metrics;
+import com.geoservicesapi.metrics.Outcome;
 import com.geoservicesapi.services.LocationServices;
 
 /**
@@ -31,11 +55,39 @@ import com.geoservicesapi.services.LocationServices;
 
 public class PlacesServices {
 	
+	private static final LatencyTimer GET_VENUES = Metrics.timer("method.PlacesServices.getVenues");
+	private static final LatencyTimer STREAM_VENUES = Metrics.timer("method.PlacesServices.getVenues.streaming");
+	private static final LatencyTimer FIRST_VENUE = Metrics.timer("method.PlacesServices.getVenues.firstVenue");
+	private static final LatencyTimer GET_VENUES_PAGE = Metrics.timer("method.PlacesServices.getVenuesPage");
+	private static final LatencyTimer SEARCH_VENUES = Metrics.timer("method.PlacesServices.searchVenues");
+	private static final LatencyTimer SEARCH_REGION = Metrics.timer("method.PlacesServices.searchRegion");
+	private static final LatencyTimer SEARCH_CORRIDOR = Metrics.timer("method.PlacesServices.searchCorridor");
+
+	private static final int DEFAULT_MAX_TILES = 64;
+	private static final int DEFAULT_MAX_SAMPLES = 32;
+	/* Widest corridor in meters, so that a sample's search stays within Yelp's largest radius. */
+	private static final double MAX_CORRIDOR_WIDTH = 5000;
+	private static final long PAGE_TTL = 60 * 1000L;
+
+	private static final Weigher<String, String> PAGE_WEIGHER = new Weigher<String, String>() {
+		public long weigh(String key, String value) {
+			return ObjectSizes.of(key) + ObjectSizes.of(value);
+		}
+	};
+
+	private static final Comparator<JSONObject> FARTHEST_FIRST = new Comparator<JSONObject>() {
+		public int compare(JSONObject a, JSONObject b) {
+			return Double.compare(b.optDouble("distance", Double.POSITIVE_INFINITY), a.optDouble("distance", Double.POSITIVE_INFINITY));
+		}
+	};
+
 	private String consumerKey;
 	private String consumerSecret;
 	private String token;
 	private String tokenSecret;
-	private String mapquestKey;
+	private VenueCatalog catalog;
+	private LocationServices locationServices;
+	private ServiceCache<String, String> pageCache;
 	
     /**
      * Construct a PlacesServices with your yelp api key and mapquest api key.
@@ -52,11 +104,61 @@ public class PlacesServices {
      *            Your key for mapquest api.
      */
 	public PlacesServices(String consumerKey, String consumerSecret, String token, String tokenSecret, String mapquestKey) {
+		this(consumerKey, consumerSecret, token, tokenSecret, mapquestKey, new VenueCatalog());
+	}
+	
+    /**
+     * Construct a PlacesServices that resolves venues through a shared catalog.
+     *
+     * @param consumerKey
+     *            Your consumer key for yelp api.
+     * @param consumerSecret
+     *            Your consumer secret for yelp api.
+     * @param token
+     *            Your token for yelp api.
+     * @param tokenSecret
+     *            Your token secret for yelp api.
+     * @param mapquestKey
+     *            Your key for mapquest api.
+     * @param catalog
+     *            Catalog of already geocoded venues.
+     */
+	public PlacesServices(String consumerKey, String consumerSecret, String token, String tokenSecret, String mapquestKey, VenueCatalog catalog) {
+		this(consumerKey, consumerSecret, token, tokenSecret, catalog, new LocationServices(mapquestKey, catalog.getBudget()));
+	}
+	
+    /**
+     * Construct a PlacesServices that geocodes venues through the providers of a router.
+     *
+     * @param consumerKey
+     *            Your consumer key for yelp api.
+     * @param consumerSecret
+     *            Your consumer secret for yelp api.
+     * @param token
+     *            Your token for yelp api.
+     * @param tokenSecret
+     *            Your token secret for yelp api.
+     * @param geocoders
+     *            Chooses the geocoder for each venue address.
+     * @param catalog
+     *            Catalog of already geocoded venues.
+     */
+	public PlacesServices(String consumerKey, String consumerSecret, String token, String tokenSecret, GeocoderRouter geocoders, VenueCatalog catalog) {
+		this(consumerKey, consumerSecret, token, tokenSecret, catalog, new LocationServices(geocoders, catalog.getBudget()));
+	}
+	
+	private PlacesServices(String consumerKey, String consumerSecret, String token, String tokenSecret, VenueCatalog catalog, LocationServices locationServices) {
 		this.consumerKey = consumerKey;
 		this.consumerSecret = consumerSecret;
 		this.token = token;
 		this.tokenSecret = tokenSecret;
-		this.mapquestKey = mapquestKey;
+		this.catalog = catalog;
+		this.locationServices = locationServices;
+		this.pageCache = new ServiceCache<String, String>("venue-page", catalog.getBudget(), PAGE_WEIGHER, PAGE_TTL);
+	}
+	
+	public VenueCatalog getCatalog() {
+		return catalog;
 	}
 	
     /**
@@ -69,9 +171,557 @@ public class PlacesServices {
      * @return The JSONObject associated with information about places.
      */
 	public JSONObject getVenues(String lat, String lng) {
-		
+		return getVenues(lat, lng, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the places around a location using its coordinates.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param options
+     *            Per-call options such as the traffic class and deadline. Venues whose
+     *            coordinates are not resolved by the deadline, or before the call is cancelled,
+     *            are left out and the result is marked <code>"partial": true</code>.
+     * @return The JSONObject associated with information about places.
+     */
+	public JSONObject getVenues(String lat, String lng, CallOptions options) {
+		return venues(GET_VENUES, lat, lng, around("restaurants"), null, options);
+	}
+	
+    /**
+     * Get the places around a location, streaming each one to a listener as soon as its
+     * coordinates are resolved. Venues arrive in the order their geocodes complete rather than
+     * in search order, so the first one is not held up by the slowest.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param listener
+     *            Receives the venues, then the result of the call.
+     * @param options
+     *            Per-call options such as the traffic class and deadline. Venues whose
+     *            coordinates are not resolved by the deadline, or before the call is cancelled,
+     *            are left out and the result is marked <code>"partial": true</code>.
+     * @return The JSONObject associated with the number of places delivered.
+     */
+	public JSONObject getVenues(String lat, String lng, VenueListener listener, CallOptions options) {
+		if(listener == null) {
+			throw new IllegalArgumentException("listener");
+		}
+		return venues(STREAM_VENUES, lat, lng, around("restaurants"), firstVenueTimed(listener), options);
+	}
+	
+	/* Record the time to the first venue, the latency a streaming caller actually sees. */
+	private static VenueListener firstVenueTimed(final VenueListener listener) {
+		final long start = System.nanoTime();
+		return new VenueListener() {
+			private boolean first = true;
+
+			public void onVenue(JSONObject venue) {
+				if(first) {
+					first = false;
+					FIRST_VENUE.record(Outcome.SUCCESS, System.nanoTime() - start);
+				}
+				listener.onVenue(venue);
+			}
+
+			public void onComplete(JSONObject result) {
+				listener.onComplete(result);
+			}
+		};
+	}
+	
+    /**
+     * Get the places matching any of several search terms around a location, nearest first.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param terms
+     *            Search terms or categories, such as "restaurants", "bars" and "cafes".
+     * @param limit
+     *            Most venues to return.
+     * @return The JSONObject associated with information about places.
+     */
+	public JSONObject searchVenues(String lat, String lng, List<String> terms, int limit) {
+		return searchVenues(lat, lng, terms, limit, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the places matching any of several search terms around a location, nearest first.
+     * The terms are searched concurrently; a business found by several terms is returned once.
+     * Only the nearest venues within the limit are geocoded.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param terms
+     *            Search terms or categories, such as "restaurants", "bars" and "cafes".
+     * @param limit
+     *            Most venues to return.
+     * @param options
+     *            Per-call options such as the traffic class and deadline. When a term could not
+     *            be searched, or venues were not resolved in time, the venues found are returned
+     *            and the result is marked <code>"partial": true</code>.
+     * @return The JSONObject associated with information about places.
+     */
+	public JSONObject searchVenues(String lat, String lng, List<String> terms, int limit, CallOptions options) {
+		return venues(SEARCH_VENUES, lat, lng, terms(terms, limit), null, options);
+	}
+	
+    /**
+     * Get one page of the places around a location.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param offset
+     *            Number of places before the page.
+     * @param limit
+     *            Size of the page, at most 20.
+     * @return The JSONObject associated with information about places.
+     */
+	public JSONObject getVenuesPage(String lat, String lng, int offset, int limit) {
+		return getVenuesPage(lat, lng, offset, limit, false, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get one page of the places around a location, optionally fetching the next page in the
+     * background so that it is ready when the client scrolls to it.
+     * <p>
+     * Search pages are kept for a minute, and a prefetch also resolves the coordinates of the
+     * next page's venues into the catalog, so a prefetched page is served without upstream
+     * calls. A request for a page still being prefetched waits for the prefetch instead of
+     * repeating it. Prefetches run as {@link TrafficClass#BULK} traffic.
+     *
+     * @param lat
+     *            Latitude of the location.
+     * @param lng
+     *            Longitude of the location.
+     * @param offset
+     *            Number of places before the page.
+     * @param limit
+     *            Size of the page, at most 20.
+     * @param prefetchNext
+     *            Whether to fetch the following page in the background.
+     * @param options
+     *            Per-call options such as the traffic class and deadline.
+     * @return The JSONObject associated with information about places, with the
+     *         <code>"offset"</code> and <code>"limit"</code> of the page and the
+     *         <code>"total"</code> number of places Yelp found.
+     */
+	public JSONObject getVenuesPage(String lat, String lng, int offset, int limit, boolean prefetchNext, CallOptions options) {
+		JSONObject result = venues(GET_VENUES_PAGE, lat, lng, page("restaurants", offset, limit), null, options);
+		JSONArray venues = result.optJSONArray("result");
+		if(prefetchNext && venues != null && venues.length() == limit && offset + limit < result.optInt("total")) {
+			prefetch("restaurants", Double.parseDouble(lat), Double.parseDouble(lng), offset + limit, limit);
+		}
+		return result;
+	}
+	
+	/* Fetch a search page and resolve its venues in the background, unless it is already cached or the background pool is full. */
+	private void prefetch(final String term, final double latitude, final double longitude, final int offset, final int limit) {
+		final String key = pageKey(term, latitude, longitude, offset, limit);
+		if(pageCache.getIfPresent(key) != null) {
+			return;
+		}
+		FanOut.submitDetached(new Callable<Void>() {
+			public Void call() throws Exception {
+				CallOptions options = CallOptions.bulk().withTimeout(PAGE_TTL, TimeUnit.MILLISECONDS);
+				JSONArray businesses = fetchPage(key, term, latitude, longitude, offset, limit, options).optJSONArray("businesses");
+				if(businesses != null) {
+					resolveVenues(businesses, new JSONArray(), null, options);
+				}
+				return null;
+			}
+		});
+	}
+	
+    /**
+     * Get a Yelp search page from the page cache, searching on a miss. Responses without
+     * businesses are not kept.
+     *
+     * @return The parsed Yelp response.
+     */
+	private JSONObject fetchPage(final String key, final String term, final double latitude, final double longitude,
+			final int offset, final int limit, final CallOptions options) {
+		Loader<String, String> loader = new Loader<String, String>() {
+			public String load(String key) {
+				return searchYelp(Yelp.searchAround(term, latitude, longitude, offset, limit), options).toString();
+			}
+		};
+		String text;
+		try {
+			// A prefetch this call waits for may run out of time; CachedLoads then searches again.
+			text = CachedLoads.get(pageCache, key, loader, options);
+		} catch(TimeoutException e) {
+			throw new CallAbortedException(CallAbortedException.DEADLINE_EXCEEDED);
+		} catch(RuntimeException e) {
+			throw e;
+		} catch(Exception e) {
+			throw new RuntimeException(e);
+		}
+		JSONObject response = new JSONObject(text);
+		if(!response.has("businesses")) {
+			pageCache.invalidate(key);
+		}
+		return response;
+	}
+	
+	private static String pageKey(String term, double latitude, double longitude, int offset, int limit) {
+		return term + "|" + latitude + "," + longitude + "|" + offset + "+" + limit;
+	}
+	
+	private Search around(final String term) {
+		return new Search() {
+			JSONObject run(double latitude, double longitude, CallOptions options) {
+				return searchYelp(term, latitude, longitude, options);
+			}
+		};
+	}
+	
+	private Search terms(final List<String> terms, final int limit) {
+		return new Search() {
+			JSONObject validate() {
+				if(terms == null || terms.isEmpty()) {
+					JSONObject error = new JSONObject();
+					error.put("message", "One or more parameters are missing in request.");
+					error.put("id", "MISSING_PARAMETER");
+					error.put("field", "terms");
+					return error;
+				} else if(limit < 1) {
+					JSONObject error = new JSONObject();
+					error.put("message", "One or more parameters are invalid in request.");
+					error.put("id", "INVALID_PARAMETER");
+					error.put("field", "limit");
+					return error;
+				}
+				return null;
+			}
+
+			JSONObject run(double latitude, double longitude, CallOptions options) {
+				return searchTerms(latitude, longitude, terms, limit, options);
+			}
+		};
+	}
+	
+	private Search page(final String term, final int offset, final int limit) {
+		return new Search() {
+			JSONObject validate() {
+				if(offset < 0) {
+					JSONObject error = new JSONObject();
+					error.put("message", "One or more parameters are invalid in request.");
+					error.put("id", "INVALID_PARAMETER");
+					error.put("field", "offset");
+					return error;
+				} else if(limit < 1 || limit > Yelp.MAX_LIMIT) {
+					JSONObject error = new JSONObject();
+					error.put("message", "One or more parameters are invalid in request.");
+					error.put("id", "INVALID_PARAMETER");
+					error.put("field", "limit");
+					return error;
+				}
+				return null;
+			}
+
+			JSONObject run(double latitude, double longitude, CallOptions options) {
+				return fetchPage(pageKey(term, latitude, longitude, offset, limit), term, latitude, longitude, offset, limit, options);
+			}
+
+			void describe(JSONObject response, JSONObject result) {
+				result.put("offset", offset);
+				result.put("limit", limit);
+				result.put("total", response.optInt("total"));
+			}
+		};
+	}
+	
+    /**
+     * Get the places within a region, streaming each one to a listener as it is found.
+     *
+     * @param south
+     *            Latitude of the southwest corner of the region.
+     * @param west
+     *            Longitude of the southwest corner of the region.
+     * @param north
+     *            Latitude of the northeast corner of the region.
+     * @param east
+     *            Longitude of the northeast corner of the region.
+     * @param term
+     *            Search term or category, such as "restaurants".
+     * @param listener
+     *            Receives the venues as they are found, or null to return them in the result.
+     * @return The JSONObject associated with the number of places found.
+     */
+	public JSONObject searchRegion(double south, double west, double north, double east, String term, VenueListener listener) {
+		return searchRegion(south, west, north, east, term, listener, DEFAULT_MAX_TILES, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the places within a region, streaming each one to a listener as it is found.
+     * <p>
+     * Yelp returns at most 20 businesses per search, so the region is covered by concurrent
+     * searches over tiles, and tiles returning a full page are split and searched again.
+     * Businesses found by several tiles are returned once. The distance of each venue is
+     * measured from the center of the region.
+     *
+     * @param south
+     *            Latitude of the southwest corner of the region.
+     * @param west
+     *            Longitude of the southwest corner of the region.
+     * @param north
+     *            Latitude of the northeast corner of the region.
+     * @param east
+     *            Longitude of the northeast corner of the region.
+     * @param term
+     *            Search term or category, such as "restaurants".
+     * @param listener
+     *            Receives the venues as they are found, or null to return them in the result.
+     * @param maxTiles
+     *            Most tile searches to make.
+     * @param options
+     *            Per-call options such as the traffic class and deadline. If the deadline or
+     *            failed searches leave part of the region uncovered, the result is marked
+     *            <code>"partial": true</code>; if the tile budget or the smallest tile size stop
+     *            the splitting of full tiles, it is marked <code>"truncated": true</code>.
+     * @return The JSONObject associated with the number of places found.
+     */
+	public JSONObject searchRegion(double south, double west, double north, double east, String term, VenueListener listener, int maxTiles, CallOptions options) {
+		ServiceCall call = new ServiceCall(SEARCH_REGION);
+		Outcome outcome = Outcome.SUCCESS;
+		JSONObject result = new JSONObject();
+		if(term == null || term.equals("")) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "term");
+			result.put("error", error);
+		} else if(!(south >= -90 && south < north && north <= 90 && west >= -180 && west < east && east <= 180)) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invalid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "bounds");
+			result.put("error", error);
+		} else if(maxTiles < 1) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invalid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "maxTiles");
+			result.put("error", error);
+		} else {
+			try {
+				result = new RegionSearch(this, term, south, west, north, east, maxTiles, listener, options).run();
+				outcome = statusOf(result, options);
+			} catch(RuntimeException e) {
+				result = new JSONObject();
+				outcome = UpstreamClient.failed(e, result);
+			}
+		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
+		if(listener != null) {
+			listener.onComplete(result);
+		}
+		return result;
+	}
+	
+    /**
+     * Get the places along a route.
+     *
+     * @param shape
+     *            The shape of the route as a precision 6 polyline, as returned by
+     *            {@link DirectionsServices#getRoute(String, String, RouteFormat, CallOptions)}.
+     * @param term
+     *            Search term or category, such as "restaurants".
+     * @param width
+     *            Largest distance in meters of a place from the route.
+     * @return The JSONObject associated with the places, nearest the route first.
+     */
+	public JSONObject searchCorridor(String shape, String term, double width) {
+		return searchCorridor(shape, term, width, DEFAULT_MAX_SAMPLES, CallOptions.DEFAULT);
+	}
+	
+    /**
+     * Get the places along a route.
+     * <p>
+     * Points sampled along the route are searched concurrently, and businesses farther than
+     * <code>width</code> from the route are dropped. Each venue has its
+     * <code>"distance"</code> from the route, the <code>"detour"</code> in meters to reach it
+     * and return, and how far <code>"along"</code> the route it is, and the venues are ranked
+     * by detour.
+     *
+     * @param shape
+     *            The shape of the route as a precision 6 polyline, as returned by
+     *            {@link DirectionsServices#getRoute(String, String, RouteFormat, CallOptions)}.
+     * @param term
+     *            Search term or category, such as "restaurants".
+     * @param width
+     *            Largest distance in meters of a place from the route, at most 5000.
+     * @param maxSamples
+     *            Most points of the route to search, at least 2; long routes are sampled
+     *            more sparsely.
+     * @param options
+     *            Per-call options such as the traffic class and deadline. If the deadline or
+     *            failed searches leave part of the route unsearched, the result is marked
+     *            <code>"partial": true</code>; if the samples are too sparse for the largest
+     *            Yelp search radius to reach the whole corridor, it is marked
+     *            <code>"truncated": true</code>.
+     * @return The JSONObject associated with the places, nearest the route first.
+     */
+	public JSONObject searchCorridor(String shape, String term, double width, int maxSamples, CallOptions options) {
+		ServiceCall call = new ServiceCall(SEARCH_CORRIDOR);
+		Outcome outcome = Outcome.SUCCESS;
+		JSONObject result = new JSONObject();
+		RouteShape route = null;
+		if(shape == null || shape.equals("")) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "shape");
+			result.put("error", error);
+		} else if(term == null || term.equals("")) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are missing in request.");
+			error.put("id", "MISSING_PARAMETER");
+			error.put("field", "term");
+			result.put("error", error);
+		} else if((route = parseShape(shape)) == null) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invalid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "shape");
+			result.put("error", error);
+		} else if(!(width > 0 && width <= MAX_CORRIDOR_WIDTH)) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invalid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "width");
+			result.put("error", error);
+		} else if(maxSamples < 2) {
+			JSONObject error = new JSONObject();
+			error.put("message", "One or more parameters are invalid in request.");
+			error.put("id", "INVALID_PARAMETER");
+			error.put("field", "maxSamples");
+			result.put("error", error);
+		} else {
+			try {
+				result = new CorridorSearch(this, term, route, width, maxSamples, options).run();
+				outcome = statusOf(result, options);
+			} catch(RuntimeException e) {
+				result = new JSONObject();
+				outcome = UpstreamClient.failed(e, result);
+			}
+		}
+		if(result.has("error") && outcome == Outcome.SUCCESS) {
+			outcome = Outcome.INVALID_REQUEST;
+		}
+		call.finish(outcome, result);
+		return result;
+	}
+	
+    /**
+     * Get the places along the route from a source to a destination.
+     *
+     * @param directions
+     *            Finds the route.
+     * @param source
+     *            A key string of the format "lat, lng".
+     * @param destination
+     *            A key string of the format "lat, lng".
+     * @param term
+     *            Search term or category, such as "restaurants".
+     * @param width
+     *            Largest distance in meters of a place from the route, at most 5000.
+     * @param maxSamples
+     *            Most points of the route to search, at least 2.
+     * @param options
+     *            Per-call options such as the traffic class and deadline, shared by the route
+     *            and the searches.
+     * @return The JSONObject associated with the places, nearest the route first, or with the
+     *         error of the route if it could not be found.
+     * @see #searchCorridor(String, String, double, int, CallOptions)
+     */
+	public JSONObject searchCorridor(DirectionsServices directions, String source, String destination, String term, double width, int maxSamples, CallOptions options) {
+		JSONObject route = directions.getRoute(source, destination, RouteFormat.compact().withNarrative(false), options);
+		if(!route.has("route")) {
+			// getRoute has already recorded the failure.
+			return route;
+		}
+		return searchCorridor(route.getJSONObject("route").getString("shape"), term, width, maxSamples, options);
+	}
+	
+	/* Decode a precision 6 polyline, or null if it is malformed. */
+	private static RouteShape parseShape(String shape) {
+		try {
+			return RouteShape.decode(shape, 6);
+		} catch(IllegalArgumentException e) {
+			return null;
+		}
+	}
+	
+	private JSONObject venues(LatencyTimer timer, String lat, String lng, Search search, VenueListener listener, CallOptions options) {
+		ServiceCall call = new ServiceCall(timer);
+		Outcome outcome = Outcome.SUCCESS;
+		JSONObject result = null;
+		try {
+			result = findVenues(lat, lng, search, listener, options);
+			outcome = statusOf(result, options);
+			return result;
+		} catch(UpstreamRejectedException | CallAbortedException e) {
+			result = new JSONObject();
+			outcome = UpstreamClient.failed(e, result);
+			return result;
+		} catch(RuntimeException e) {
+			if(listener == null) {
+				outcome = UpstreamClient.outcomeOf(e);
+				throw e;
+			}
+			// A streaming caller learns of the failure from onComplete.
+			result = new JSONObject();
+			outcome = UpstreamClient.failed(e, result);
+			return result;
+		} finally {
+			call.finish(outcome, result);
+			if(listener != null) {
+				listener.onComplete(result);
+			}
+		}
+	}
+	
+    /**
+     * Get the outcome of a search that returned a result.
+     *
+     * @return SUCCESS, INVALID_REQUEST or STATUS_ERROR for an error result, or the reason the
+     *         result is partial.
+     */
+	private static Outcome statusOf(JSONObject result, CallOptions options) {
+		JSONObject error = result.optJSONObject("error");
+		if(error != null) {
+			String id = error.optString("id");
+			return id.startsWith("MISSING_") || id.startsWith("INVALID_") ? Outcome.INVALID_REQUEST : Outcome.STATUS_ERROR;
+		} else if(result.optBoolean("partial")) {
+			CancellationToken cancellation = options.getCancellation();
+			if(cancellation != null && cancellation.isCancelled()) {
+				return Outcome.CANCELLED;
+			}
+			return options.isAborted() ? Outcome.TIMEOUT : Outcome.ERROR;
+		}
+		return Outcome.SUCCESS;
+	}
+	
+	private JSONObject findVenues(String lat, String lng, Search search, VenueListener listener, CallOptions options) {
 		JSONObject result = new JSONObject();
 		JSONArray venues = new JSONArray();
+		JSONObject invalid = search.validate();
 		if(lat == null) {
 			JSONObject error = new JSONObject();
 			error.put("message", "One or more parameters are missing in request.");
@@ -96,6 +746,8 @@ public class PlacesServices {
 			error.put("id", "INVALID_PARAMETER");
 			error.put("field", "lng");
 			result.put("error", error);
+		} else if(invalid != null) {
+			result.put("error", invalid);
 		} else {
 			boolean latError = false, lngError = false;
 			double latitude = 37.774929, longitude = -122.419416;
@@ -125,8 +777,7 @@ public class PlacesServices {
 				error.put("field", "lng");
 				result.put("error", error);
 			} else {
-				String response = Yelp.getResponse(consumerKey, consumerSecret, token, tokenSecret, latitude, longitude);
-				JSONObject responseJson = new JSONObject(response);
+				JSONObject responseJson = search.run(latitude, longitude, options);
 				JSONArray businesses = null;
 				try {
 					businesses = responseJson.getJSONArray("businesses");
@@ -139,76 +790,319 @@ public class PlacesServices {
 						result.put("error", error);
 					}
 				} else {
-					LocationServices lr = new LocationServices(mapquestKey);
-
-					for(int index=0; index<businesses.length(); index++) {
-						JSONObject business = businesses.getJSONObject(index);
-						String name = business.getString("name");
-						String displayPhone = "";
-						double distance = -1;
-						try {
-							distance = business.getDouble("distance");
-						} catch(Exception ignore) {
-						}
+					int count = resolveVenues(businesses, venues, listener, options);
+					if(listener == null) {
+						result.put("result", venues);
+					} else {
+						result.put("count", count);
+					}
+					if(count < businesses.length() || responseJson.optBoolean("partial")) {
+						result.put("partial", true);
+					}
+					search.describe(responseJson, result);
+				}
+			}
+		}
+		return result;
+	}
+	
+    /**
+     * Resolve the businesses of a search concurrently. Businesses that fail to resolve, or are
+     * still unresolved when the deadline passes or the call is cancelled, are left out;
+     * outstanding geocodes are then cancelled.
+     *
+     * @param businesses
+     *            Businesses from the Yelp search response.
+     * @param venues
+     *            Receives the venue objects in search order, when there is no listener.
+     * @param listener
+     *            Receives each venue as soon as it is resolved, or null.
+     * @param options
+     *            Options of the service call.
+     * @return The number of venues resolved.
+     */
+	private int resolveVenues(JSONArray businesses, JSONArray venues, VenueListener listener, CallOptions options) {
+		int size = businesses.length();
+		final VenueRecord[] records = new VenueRecord[size];
+		// Indexes of finished businesses; a negative index wakes the loop on cancellation.
+		final LinkedBlockingQueue<Integer> finished = new LinkedBlockingQueue<Integer>();
+		final CancellationToken fanOut = new CancellationToken();
+		final CallOptions taskOptions = options.withCancellation(fanOut);
+		final List<Future<?>> futures = new ArrayList<Future<?>>(size);
+		Runnable cancelAll = new Runnable() {
+			public void run() {
+				fanOut.cancel();
+				synchronized(futures) {
+					for(Future<?> future : futures) {
+						future.cancel(true);
+					}
+				}
+				finished.add(-1);
+			}
+		};
+		CancellationToken caller = options.getCancellation();
+		if(caller != null) {
+			caller.addListener(cancelAll);
+		}
 
+		boolean[] received = new boolean[size];
+		int count = 0;
+		try {
+			for(int index=0; index<size; index++) {
+				final JSONObject business = businesses.getJSONObject(index);
+				final int position = index;
+				Future<?> future = FanOut.submit(new Callable<Void>() {
+					public Void call() {
 						try {
-							displayPhone = business.getString("display_phone");
-						} catch(Exception ignore) {
-						}
-						
-						JSONObject location = business.getJSONObject("location");
-						JSONArray address = location.getJSONArray("address");
-						String addressString = "", city = "", state = "", postalCode = "", country = "";
-						
-						try {
-							addressString = address.getString(0);
-						} catch(Exception ignore) {
+							records[position] = resolveVenue(business, taskOptions);
+						} finally {
+							finished.add(position);
 						}
+						return null;
+					}
+				});
+				synchronized(futures) {
+					futures.add(future);
+				}
+			}
 
-						try {
-							city = location.getString("city");
-						} catch(Exception ignore) {
-						}
+			for(int remaining=size; remaining>0; remaining--) {
+				Integer index = null;
+				try {
+					index = finished.poll(Math.max(0, options.remainingNanos()), TimeUnit.NANOSECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if(index == null || index < 0) {
+					cancelAll.run();
+					break;
+				}
+				received[index] = true;
+				VenueRecord record = records[index];
+				if(record == null) {
+					continue;
+				}
+				count++;
+				if(listener != null) {
+					listener.onVenue(record.toJSON(distanceOf(businesses.getJSONObject(index))));
+				}
+			}
+		} finally {
+			if(caller != null) {
+				caller.removeListener(cancelAll);
+			}
+		}
 
-						try {
-							state = location.getString("state_code");
-						} catch(Exception ignore) {
-						}
+		if(listener == null) {
+			for(int index=0; index<size; index++) {
+				if(received[index] && records[index] != null) {
+					venues.put(records[index].toJSON(distanceOf(businesses.getJSONObject(index))));
+				}
+			}
+		}
+		return count;
+	}
 
-						try {
-							country = location.getString("country_code");
-						} catch(Exception ignore) {
-						}
+	private static double distanceOf(JSONObject business) {
+		double distance = -1;
+		try {
+			distance = business.getDouble("distance");
+		} catch(Exception ignore) {
+		}
+		return distance;
+	}
 
-						try {
-							postalCode = location.getString("postal_code");
-						} catch(Exception ignore) {
-						}
+    /**
+     * Search Yelp around a location, timing the call.
+     *
+     * @return The parsed Yelp response, which may hold an error object instead of businesses.
+     */
+	private JSONObject searchYelp(String term, double latitude, double longitude, CallOptions options) {
+		return searchYelp(Yelp.searchAround(term, latitude, longitude), options);
+	}
+	
+	JSONObject searchYelp(Map<String, String> parameters, CallOptions options) {
+		return UpstreamClient.yelpSearch(consumerKey, consumerSecret, token, tokenSecret, parameters, options);
+	}
+	
+    /**
+     * Search Yelp for several terms concurrently and merge the responses, keeping the nearest
+     * businesses and dropping those already found by another term.
+     *
+     * @return A response holding the merged businesses, nearest first, and
+     *         <code>"partial": true</code> if some terms could not be searched; or holding the
+     *         error of the first failed search if no term could be searched.
+     */
+	private JSONObject searchTerms(final double latitude, final double longitude, List<String> terms, int limit, final CallOptions options) {
+		List<Future<JSONObject>> futures = new ArrayList<Future<JSONObject>>();
+		for(final String term : new LinkedHashSet<String>(terms)) {
+			futures.add(FanOut.submit(new Callable<JSONObject>() {
+				public JSONObject call() {
+					return searchYelp(term, latitude, longitude, options);
+				}
+			}));
+		}
 
-						JSONObject venue = new JSONObject();
-						venue.put("name", name);
-						venue.put("address", addressString);
-						venue.put("city", city);
-						venue.put("state", state);
-						venue.put("postalCode", postalCode);
-						venue.put("country", country);
-						venue.put("distance", distance);
-						venue.put("formattedPhone", displayPhone);
-						
-						JSONObject latLng = lr.getCoordinatesUsingComponents(addressString, city, state, postalCode);
-						JSONObject loc = latLng.getJSONObject("location");
-						double mqrLat = loc.getDouble("lat");
-						double mqrLng = loc.getDouble("lng");
-						
-						venue.put("lat", mqrLat);
-						venue.put("lng", mqrLng);
-						
-						venues.put(index, venue);
-					}
-					result.put("result", venues);
+		// A max-heap on distance holding the nearest businesses seen so far.
+		PriorityQueue<JSONObject> nearest = new PriorityQueue<JSONObject>(Math.min(limit, 64) + 1, FARTHEST_FIRST);
+		Set<String> seen = new HashSet<String>();
+		JSONObject firstError = null;
+		RuntimeException failure = null;
+		boolean answered = false, partial = false;
+		for(Future<JSONObject> future : futures) {
+			JSONObject response;
+			try {
+				response = future.get(Math.max(0, options.remainingNanos()), TimeUnit.NANOSECONDS);
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause();
+				failure = cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+				partial = true;
+				continue;
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CallAbortedException(CallAbortedException.CANCELLED);
+			} catch(Exception e) {
+				// Timed out or cancelled.
+				future.cancel(true);
+				partial = true;
+				continue;
+			}
+			JSONArray businesses = response.optJSONArray("businesses");
+			if(businesses == null) {
+				if(firstError == null) {
+					firstError = response.optJSONObject("error");
+				}
+				partial = true;
+				continue;
+			}
+			answered = true;
+			for(int index=0; index<businesses.length(); index++) {
+				JSONObject business = businesses.getJSONObject(index);
+				String id = business.optString("id", null);
+				if(id != null && !seen.add(id)) {
+					continue;
+				}
+				nearest.add(business);
+				if(nearest.size() > limit) {
+					nearest.poll();
 				}
 			}
 		}
-		return result;
+
+		JSONObject merged = new JSONObject();
+		if(!answered) {
+			if(failure != null) {
+				throw failure;
+			}
+			options.check();
+			merged.put("error", firstError);
+			return merged;
+		}
+		JSONObject[] ranked = new JSONObject[nearest.size()];
+		for(int index=ranked.length-1; index>=0; index--) {
+			ranked[index] = nearest.poll();
+		}
+		merged.put("businesses", new JSONArray(Arrays.asList(ranked)));
+		if(partial) {
+			merged.put("partial", true);
+		}
+		return merged;
+	}
+	
+    /**
+     * Get the catalog record of a Yelp business, geocoding its address only when the business
+     * is new or its address has changed since it was last resolved.
+     *
+     * @param business
+     *            A business object from the Yelp search response.
+     * @param options
+     *            Options of the service call.
+     * @return The record of the business.
+     */
+	VenueRecord resolveVenue(JSONObject business, CallOptions options) {
+		String id = business.optString("id", null);
+		String name = business.getString("name");
+		String displayPhone = "";
+		try {
+			displayPhone = business.getString("display_phone");
+		} catch(Exception ignore) {
+		}
+		
+		JSONObject location = business.getJSONObject("location");
+		JSONArray address = location.getJSONArray("address");
+		String addressString = "", city = "", state = "", postalCode = "", country = "";
+		
+		try {
+			addressString = address.getString(0);
+		} catch(Exception ignore) {
+		}
+
+		try {
+			city = location.getString("city");
+		} catch(Exception ignore) {
+		}
+
+		try {
+			state = location.getString("state_code");
+		} catch(Exception ignore) {
+		}
+
+		try {
+			country = location.getString("country_code");
+		} catch(Exception ignore) {
+		}
+
+		try {
+			postalCode = location.getString("postal_code");
+		} catch(Exception ignore) {
+		}
+
+		VenueRecord cached = id == null ? null : catalog.get(id);
+		if(cached != null && cached.hasAddress(addressString, city, state, postalCode)) {
+			VenueRecord updated = cached.withDetails(name, country, displayPhone);
+			if(updated != cached) {
+				catalog.put(updated);
+			}
+			return updated;
+		}
+
+		long start = System.nanoTime();
+		JSONObject latLng = locationServices.getCoordinatesUsingComponents(addressString, city, state, postalCode, options);
+		JSONObject geocodeError = latLng.optJSONObject("error");
+		if(geocodeError != null) {
+			String errorId = geocodeError.optString("id");
+			if("UPSTREAM_OVERLOADED".equals(errorId)) {
+				throw new UpstreamRejectedException(UpstreamClient.GEOCODE_COMPONENTS.getName());
+			} else if(CallAbortedException.CANCELLED.equals(errorId) || CallAbortedException.DEADLINE_EXCEEDED.equals(errorId)) {
+				throw new CallAbortedException(errorId);
+			}
+		}
+		JSONObject loc = latLng.getJSONObject("location");
+		double mqrLat = loc.getDouble("lat");
+		double mqrLng = loc.getDouble("lng");
+
+		VenueRecord record = new VenueRecord(id, name, addressString, city, state, postalCode, country, displayPhone, mqrLat, mqrLng);
+		if(id != null) {
+			catalog.put(record, System.nanoTime() - start);
+		}
+		return record;
+	}
+
+	/**
+	 * A Yelp search run by the venue methods once the location is valid.
+	 */
+	private abstract class Search {
+
+		/* Check the parameters of the search; returns an error object, or null if they are valid. */
+		JSONObject validate() {
+			return null;
+		}
+
+		/* Run the search; the response may hold an error object instead of businesses. */
+		abstract JSONObject run(double latitude, double longitude, CallOptions options);
+
+		/* Add fields describing the search to a result holding its venues. */
+		void describe(JSONObject response, JSONObject result) {
+		}
 	}
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.geoservicesapi.Yelp;
+import com.geoservicesapi.geometry.GreatCircle;
+
+/**
+ * RegionSearch covers a bounding box with Yelp searches for {@link PlacesServices#searchRegion}.
+ * <p>
+ * The box is cut into a grid of tiles of about {@link #INITIAL_TILE_METERS}, which are searched
+ * concurrently, at most {@link #MAX_CONCURRENT_TILES} at a time. A tile returning a full page
+ * may hold more businesses than Yelp returned, so it is split into quarters that are searched in
+ * turn, down to {@link #MIN_TILE_METERS}. Businesses are deduplicated across tiles and resolved
+ * concurrently by {@link CoverageSearch}, and each venue is handed on as soon as it is resolved.
+ */
+final class RegionSearch extends CoverageSearch<RegionSearch.Tile> {
+
+	static final double INITIAL_TILE_METERS = 2000;
+	static final double MIN_TILE_METERS = 100;
+	static final int MAX_CONCURRENT_TILES = 4;
+
+	private final String term;
+	private final int maxTiles;
+	private final VenueListener listener;
+	private final double centerLat;
+	private final double centerLng;
+
+	private final JSONArray venues = new JSONArray();
+	private int tilesPlanned;
+	private int count;
+
+	RegionSearch(PlacesServices places, String term, double south, double west, double north, double east,
+			int maxTiles, VenueListener listener, CallOptions options) {
+		super(places, MAX_CONCURRENT_TILES, options);
+		this.term = term;
+		this.maxTiles = maxTiles;
+		this.listener = listener;
+		this.centerLat = (south + north) / 2;
+		this.centerLng = (west + east) / 2;
+		plan(south, west, north, east);
+	}
+
+	/* Cut a box into a grid of tiles, coarser if the grid would exceed the tile budget. */
+	private void plan(double south, double west, double north, double east) {
+		double height = GreatCircle.distance(south, centerLng, north, centerLng);
+		double width = GreatCircle.distance(centerLat, west, centerLat, east);
+		int rows = Math.max(1, (int) Math.ceil(height / INITIAL_TILE_METERS));
+		int cols = Math.max(1, (int) Math.ceil(width / INITIAL_TILE_METERS));
+		if(rows * cols > maxTiles) {
+			double scale = Math.sqrt((double) rows * cols / maxTiles);
+			rows = Math.max(1, (int) (rows / scale));
+			cols = Math.max(1, (int) (cols / scale));
+		}
+		double dLat = (north - south) / rows;
+		double dLng = (east - west) / cols;
+		for(int row=0; row<rows; row++) {
+			for(int col=0; col<cols; col++) {
+				waiting.add(new Tile(south + row * dLat, west + col * dLng, south + (row + 1) * dLat, west + (col + 1) * dLng));
+				tilesPlanned++;
+			}
+		}
+	}
+
+	JSONObject search(Tile tile) {
+		return places.searchYelp(Yelp.searchWithin(term, tile.south, tile.west, tile.north, tile.east), options);
+	}
+
+	void searched(Tile tile, JSONArray businesses) {
+		if(businesses.length() >= Yelp.MAX_LIMIT) {
+			split(tile);
+		}
+	}
+
+	/* Queue the quarters of a tile that returned a full page, if it is large enough and the budget allows. */
+	private void split(Tile tile) {
+		double height = GreatCircle.distance(tile.south, tile.west, tile.north, tile.west);
+		double width = GreatCircle.distance(tile.south, tile.west, tile.south, tile.east);
+		if(Math.min(height, width) / 2 < MIN_TILE_METERS || tilesPlanned + 4 > maxTiles) {
+			truncated = true;
+			return;
+		}
+		double midLat = (tile.south + tile.north) / 2;
+		double midLng = (tile.west + tile.east) / 2;
+		waiting.add(new Tile(tile.south, tile.west, midLat, midLng));
+		waiting.add(new Tile(tile.south, midLng, midLat, tile.east));
+		waiting.add(new Tile(midLat, tile.west, tile.north, midLng));
+		waiting.add(new Tile(midLat, midLng, tile.north, tile.east));
+		tilesPlanned += 4;
+	}
+
+	void found(VenueRecord record) {
+		JSONObject json = record.toJSON(GreatCircle.distance(centerLat, centerLng, record.getLat(), record.getLng()));
+		count++;
+		if(listener == null) {
+			venues.put(json);
+		} else {
+			listener.onVenue(json);
+		}
+	}
+
+	void answer(JSONObject result) {
+		if(listener == null) {
+			result.put("result", venues);
+		}
+		result.put("count", count);
+		result.put("tiles", tilesPlanned - waiting.size());
+	}
+
+	static final class Tile extends CoverageSearch.Query {
+		final double south;
+		final double west;
+		final double north;
+		final double east;
+
+		Tile(double south, double west, double north, double east) {
+			this.south = south;
+			this.west = west;
+			this.north = north;
+			this.east = east;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+/**
+ * RouteFormat selects what a route returned by {@link DirectionsServices#getRoute} contains
+ * beyond its summary. Instances are immutable; the <code>with</code> methods return modified
+ * copies.
+ * <p>
+ * The narrative is the <code>"directions"</code> of the route. Callers that only need the
+ * geometry or the totals of a route can leave it out, and providers then do not ask for it.
+ * <p>
+ * The shape is the full geometry of the route as an encoded polyline of precision 6 under
+ * <code>"shape"</code>; see {@link com.geoservicesapi.geometry.Polyline}. The map and icon urls
+ * of each maneuver are usually most of a route's size, and clients that draw the shape
+ * themselves do not need them. Routes are cached per format, so a lean format also keeps the
+ * cache lean.
+ * <p>
+ * The levels are simplified copies of the shape for drawing at lower zoom levels, as an
+ * array of <code>{"zoom", "shape"}</code> under <code>"levels"</code>, each accurate to about a
+ * pixel at its zoom. They are computed with the route and cached with it.
+ */
+public final class RouteFormat {
+
+	/** The format of routes from the methods that do not take one: maneuver urls, no shape. */
+	public static final RouteFormat DEFAULT = new RouteFormat(true, true, false, false);
+
+	private final boolean narrative;
+	private final boolean urls;
+	private final boolean shape;
+	private final boolean levels;
+
+	private RouteFormat(boolean narrative, boolean urls, boolean shape, boolean levels) {
+		this.narrative = narrative;
+		this.urls = urls;
+		this.shape = shape;
+		this.levels = levels;
+	}
+
+    /**
+     * Get the format suited to clients that draw routes themselves: the shape, no urls.
+     *
+     * @return The format.
+     */
+	public static RouteFormat compact() {
+		return new RouteFormat(true, false, true, false);
+	}
+
+	public boolean hasNarrative() {
+		return narrative;
+	}
+
+	public boolean hasUrls() {
+		return urls;
+	}
+
+	public boolean hasShape() {
+		return shape;
+	}
+
+	public boolean hasLevels() {
+		return levels;
+	}
+
+	public RouteFormat withNarrative(boolean narrative) {
+		return new RouteFormat(narrative, urls, shape, levels);
+	}
+
+	public RouteFormat withUrls(boolean urls) {
+		return new RouteFormat(narrative, urls, shape, levels);
+	}
+
+	public RouteFormat withShape(boolean shape) {
+		return new RouteFormat(narrative, urls, shape, levels);
+	}
+
+	public RouteFormat withLevels(boolean levels) {
+		return new RouteFormat(narrative, urls, shape, levels);
+	}
+
+	/* Distinguishes the formats in cache keys. */
+	String key() {
+		return (narrative ? "" : "-narrative") + (urls ? "+urls" : "") + (shape ? "+shape" : "") + (levels ? "+levels" : "");
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * RouteMatrix holds the travel distances and times from each of several origins to each of
+ * several destinations, as returned by {@link DirectionsServices#getRouteMatrix}.
+ * <p>
+ * Distances are in miles and times in seconds, like the routes of
+ * {@link DirectionsServices#getRoute}. A cell that could not be computed holds
+ * <code>NaN</code> and has an error object describing why.
+ */
+public final class RouteMatrix {
+
+	private final double[][] distances;
+	private final double[][] times;
+	private final JSONObject[][] errors;
+	private final JSONObject error;
+	private int failedCount;
+
+	RouteMatrix(int origins, int destinations) {
+		this.distances = new double[origins][destinations];
+		this.times = new double[origins][destinations];
+		this.errors = new JSONObject[origins][];
+		this.error = null;
+		for(int i = 0; i < origins; i++) {
+			Arrays.fill(distances[i], Double.NaN);
+			Arrays.fill(times[i], Double.NaN);
+		}
+	}
+
+	/* A matrix for a request whose parameters were rejected. */
+	RouteMatrix(JSONObject error) {
+		this.distances = new double[0][0];
+		this.times = new double[0][0];
+		this.errors = new JSONObject[0][];
+		this.error = error;
+	}
+
+	void set(int origin, int destination, double distance, double time) {
+		distances[origin][destination] = distance;
+		times[origin][destination] = time;
+	}
+
+	void fail(int origin, int destination, JSONObject error) {
+		if(errors[origin] == null) {
+			errors[origin] = new JSONObject[distances[origin].length];
+		}
+		if(errors[origin][destination] == null) {
+			failedCount++;
+		}
+		errors[origin][destination] = error;
+		distances[origin][destination] = Double.NaN;
+		times[origin][destination] = Double.NaN;
+	}
+
+	public int getOriginCount() {
+		return distances.length;
+	}
+
+	public int getDestinationCount() {
+		return distances.length == 0 ? 0 : distances[0].length;
+	}
+
+    /**
+     * Get the distances, indexed by origin and then by destination. The array is not copied.
+     *
+     * @return The distances in miles.
+     */
+	public double[][] getDistances() {
+		return distances;
+	}
+
+    /**
+     * Get the times, indexed by origin and then by destination. The array is not copied.
+     *
+     * @return The times in seconds.
+     */
+	public double[][] getTimes() {
+		return times;
+	}
+
+	public double getDistance(int origin, int destination) {
+		return distances[origin][destination];
+	}
+
+	public double getTime(int origin, int destination) {
+		return times[origin][destination];
+	}
+
+    /**
+     * Get the error of a cell.
+     *
+     * @param origin
+     *            Index of the origin.
+     * @param destination
+     *            Index of the destination.
+     * @return The error object, or null if the cell was computed.
+     */
+	public JSONObject getError(int origin, int destination) {
+		return errors[origin] == null ? null : errors[origin][destination];
+	}
+
+    /**
+     * Get the error of the request as a whole.
+     *
+     * @return The error object, or null if the parameters were valid.
+     */
+	public JSONObject getError() {
+		return error;
+	}
+
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+    /**
+     * Whether every cell was computed.
+     *
+     * @return true if the request was valid and no cell failed.
+     */
+	public boolean isComplete() {
+		return error == null && failedCount == 0;
+	}
+
+    /**
+     * Build the JSON form of the matrix, with <code>null</code> for the cells that failed and
+     * their errors listed under <code>"failures"</code>.
+     *
+     * @return The JSONObject associated with the matrix.
+     */
+	public JSONObject toJSON() {
+		JSONObject result = new JSONObject();
+		if(error != null) {
+			result.put("error", error);
+			return result;
+		}
+		JSONArray distanceRows = new JSONArray();
+		JSONArray timeRows = new JSONArray();
+		JSONArray failures = new JSONArray();
+		for(int i = 0; i < distances.length; i++) {
+			JSONArray distanceRow = new JSONArray();
+			JSONArray timeRow = new JSONArray();
+			for(int j = 0; j < distances[i].length; j++) {
+				JSONObject cellError = getError(i, j);
+				if(cellError == null) {
+					distanceRow.put(distances[i][j]);
+					timeRow.put(times[i][j]);
+				} else {
+					distanceRow.put(JSONObject.NULL);
+					timeRow.put(JSONObject.NULL);
+					JSONObject failure = new JSONObject();
+					failure.put("origin", i);
+					failure.put("destination", j);
+					failure.put("error", cellError);
+					failures.put(failure);
+				}
+			}
+			distanceRows.put(distanceRow);
+			timeRows.put(timeRow);
+		}
+		result.put("distance", distanceRows);
+		result.put("time", timeRows);
+		if(failures.length() > 0) {
+			result.put("failures", failures);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+import com.geoservicesapi.cache.ServiceCache;
+import com.geoservicesapi.metrics.LatencyTimer;
+import com.geoservicesapi.metrics.Outcome;
+
+/**
+ * ServiceCall measures one call of a public service method: it records the method's
+ * {@link LatencyTimer} and emits a {@link ServiceCallEvent} when Flight Recorder is on.
+ */
+final class ServiceCall {
+
+	private final LatencyTimer timer;
+	private final ServiceCallEvent event = new ServiceCallEvent();
+	private final long start;
+	private long dataReady;
+
+	ServiceCall(LatencyTimer timer) {
+		this.timer = timer;
+		ServiceCache.clearLastOutcome();
+		this.event.begin();
+		this.start = System.nanoTime();
+	}
+
+    /**
+     * Mark the point where the upstream data is available and result building starts.
+     */
+	void dataReady() {
+		dataReady = System.nanoTime();
+	}
+
+    /**
+     * Finish the call.
+     *
+     * @param outcome
+     *            How the call ended.
+     * @param result
+     *            The result returned to the caller, or null if the call failed with an exception.
+     */
+	void finish(Outcome outcome, JSONObject result) {
+		long end = System.nanoTime();
+		timer.record(outcome, end - start);
+		event.end();
+		if(event.shouldCommit()) {
+			event.method = timer.getName();
+			event.cacheOutcome = ServiceCache.lastOutcome().name();
+			event.buildTime = dataReady == 0 ? 0 : end - dataReady;
+			event.resultSize = result == null ? 0 : result.toString().length();
+			event.outcome = outcome.name();
+			event.commit();
+		}
+	}
+}
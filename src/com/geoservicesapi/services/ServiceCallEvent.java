@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one call of a public service method.
+ */
+@Name("com.geoservicesapi.ServiceCall")
+@Label("Service Call")
+@Category({"GeoServices", "Service"})
+@StackTrace(false)
+class ServiceCallEvent extends Event {
+
+	@Label("Method")
+	String method;
+
+	@Label("Cache Outcome")
+	String cacheOutcome;
+
+	@Label("Build Time")
+	@Description("Time spent building the result after the data was available")
+	@Timespan
+	long buildTime;
+
+	@Label("Result Size")
+	@Description("Length of the result serialized as JSON")
+	@DataAmount
+	long resultSize;
+
+	@Label("Outcome")
+	String outcome;
+}
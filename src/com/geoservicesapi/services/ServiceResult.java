@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * ServiceResult is an optional envelope around the result of a service method that also
+ * carries the {@link CallTiming} of every upstream call the method made.
+ * <p>
+ * Capture a call with {@link #timed(Callable)}, for example
+ * <code>ServiceResult.timed(() -&gt; directions.getRoute(source, destination))</code>.
+ * A call answered from a cache has no timings. Upstream calls made by the concurrent fan-out of
+ * a service method are captured too.
+ */
+public final class ServiceResult {
+
+	private static final ThreadLocal<List<CallTiming>> CAPTURE = new ThreadLocal<List<CallTiming>>();
+
+	private final JSONObject result;
+	private final List<CallTiming> timings;
+	private final long totalNanos;
+
+	private ServiceResult(JSONObject result, List<CallTiming> timings, long totalNanos) {
+		this.result = result;
+		this.timings = Collections.unmodifiableList(timings);
+		this.totalNanos = totalNanos;
+	}
+
+    /**
+     * Run a service call and capture the timings of the upstream calls it makes on the calling
+     * thread.
+     *
+     * @param call
+     *            The service call.
+     * @return The envelope holding the result and the timings.
+     * @throws Exception
+     *             Whatever the call throws.
+     */
+	public static ServiceResult timed(Callable<JSONObject> call) throws Exception {
+		List<CallTiming> outer = CAPTURE.get();
+		// Fan-out tasks of the call add to the list from other threads.
+		List<CallTiming> timings = Collections.synchronizedList(new ArrayList<CallTiming>());
+		CAPTURE.set(timings);
+		long start = System.nanoTime();
+		try {
+			JSONObject result = call.call();
+			long total = System.nanoTime() - start;
+			synchronized(timings) {
+				return new ServiceResult(result, new ArrayList<CallTiming>(timings), total);
+			}
+		} finally {
+			if(outer == null) {
+				CAPTURE.remove();
+			} else {
+				outer.addAll(timings);
+				CAPTURE.set(outer);
+			}
+		}
+	}
+
+    /**
+     * Get the list capturing the timings of the calling thread, so that tasks run for it on
+     * other threads can {@link #bind(List)} to it.
+     *
+     * @return The list, or null if the thread is not capturing.
+     */
+	static List<CallTiming> capture() {
+		return CAPTURE.get();
+	}
+
+    /**
+     * Make the calling thread capture into a list.
+     *
+     * @param timings
+     *            The list, or null to stop capturing.
+     * @return The list the thread captured into before.
+     */
+	static List<CallTiming> bind(List<CallTiming> timings) {
+		List<CallTiming> previous = CAPTURE.get();
+		if(timings == null) {
+			CAPTURE.remove();
+		} else {
+			CAPTURE.set(timings);
+		}
+		return previous;
+	}
+
+	/* Called by the upstream client after every call. */
+	static void captured(CallTiming timing) {
+		List<CallTiming> timings = CAPTURE.get();
+		if(timings != null) {
+			timings.add(timing);
+		}
+	}
+
+	public JSONObject getResult() {
+		return result;
+	}
+
+	public List<CallTiming> getTimings() {
+		return timings;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+    /**
+     * Get the result with the timings attached under <code>"timings"</code>.
+     *
+     * @return The JSONObject associated with the result and its timings.
+     */
+	public JSONObject toJSON() {
+		JSONObject envelope = new JSONObject();
+		envelope.put("result", result);
+		JSONArray calls = new JSONArray();
+		for(CallTiming timing : timings) {
+			calls.put(timing.toJSON());
+		}
+		envelope.put("timings", calls);
+		envelope.put("total", totalNanos / 1e6);
+		return envelope;
+	}
+}
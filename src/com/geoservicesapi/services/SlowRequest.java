@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+import com.geoservicesapi.metrics.Outcome;
+
+/**
+ * SlowRequest is an upstream call captured by the {@link SlowRequestLog}.
+ */
+public final class SlowRequest {
+
+	private final long timestamp;
+	private final String url;
+	private final Outcome outcome;
+	private final String error;
+	private final CallTiming timing;
+	private final String body;
+	private final boolean truncated;
+
+	SlowRequest(long timestamp, String url, Outcome outcome, String error, CallTiming timing, String body, boolean truncated) {
+		this.timestamp = timestamp;
+		this.url = url;
+		this.outcome = outcome;
+		this.error = error;
+		this.timing = timing;
+		this.body = body;
+		this.truncated = truncated;
+	}
+
+    /**
+     * Get when the call finished.
+     *
+     * @return Milliseconds since the epoch.
+     */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+    /**
+     * Get the request url with credentials replaced by <code>REDACTED</code>.
+     *
+     * @return The redacted url.
+     */
+	public String getUrl() {
+		return url;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+    /**
+     * Get the exception that ended the call.
+     *
+     * @return The exception's class and message, or null if the call succeeded.
+     */
+	public String getError() {
+		return error;
+	}
+
+	public CallTiming getTiming() {
+		return timing;
+	}
+
+    /**
+     * Get the response body, cut at the log's size limit.
+     *
+     * @return The body, or null if none was read.
+     */
+	public String getBody() {
+		return body;
+	}
+
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	public JSONObject toJSON() {
+		JSONObject request = new JSONObject();
+		request.put("timestamp", timestamp);
+		request.put("url", url);
+		request.put("outcome", outcome.name());
+		request.putOpt("error", error);
+		request.put("timing", timing.toJSON());
+		request.putOpt("body", body);
+		request.put("truncated", truncated);
+		return request;
+	}
+}
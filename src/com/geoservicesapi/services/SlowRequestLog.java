@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+
+import com.geoservicesapi.metrics.Outcome;
+
+/**
+ * SlowRequestLog keeps a sample of the upstream calls that were slower than a threshold or
+ * failed, with their redacted url, timing and the start of the response body, so that
+ * pathological payloads can be replayed offline.
+ * <p>
+ * The log is off until one is installed with {@link #install(SlowRequestLog)}. Calls are kept
+ * in a ring buffer of fixed capacity; the oldest are overwritten first.
+ */
+public class SlowRequestLog {
+
+	private static final Pattern CREDENTIALS = Pattern.compile("([?&](?:key|apiKey|oauth_[A-Za-z_]+|token)=)[^&]*", Pattern.CASE_INSENSITIVE);
+
+	private static volatile SlowRequestLog installed;
+
+	private final long thresholdNanos;
+	private final double sampleRate;
+	private final int maxBodyChars;
+	private final AtomicReferenceArray<SlowRequest> buffer;
+	private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Construct a SlowRequestLog.
+     *
+     * @param thresholdMillis
+     *            Calls taking at least this long are candidates for the log; failed calls
+     *            always are.
+     * @param sampleRate
+     *            Fraction of the candidates that are kept, between 0 and 1.
+     * @param capacity
+     *            Number of calls kept.
+     * @param maxBodyChars
+     *            Number of characters of each response body kept.
+     */
+	public SlowRequestLog(long thresholdMillis, double sampleRate, int capacity, int maxBodyChars) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.sampleRate = sampleRate;
+		this.maxBodyChars = maxBodyChars;
+		this.buffer = new AtomicReferenceArray<SlowRequest>(capacity);
+	}
+
+    /**
+     * Start logging slow and failed calls of all services to the given log.
+     *
+     * @param log
+     *            The log, or null to stop logging.
+     */
+	public static void install(SlowRequestLog log) {
+		installed = log;
+	}
+
+	public static SlowRequestLog installed() {
+		return installed;
+	}
+
+	/* Called by the upstream client after every call. */
+	static void offer(String apiUrl, Outcome outcome, Exception error, CallTiming timing, String body) {
+		SlowRequestLog log = installed;
+		if(log != null) {
+			log.record(apiUrl, outcome, error, timing, body);
+		}
+	}
+
+    /**
+     * Get how much of a response body the installed log keeps.
+     *
+     * @return The number of characters, or 0 if no log is installed.
+     */
+	static int bodyLimit() {
+		SlowRequestLog log = installed;
+		return log == null ? 0 : log.maxBodyChars;
+	}
+
+	void record(String apiUrl, Outcome outcome, Exception error, CallTiming timing, String body) {
+		if(outcome == Outcome.SUCCESS && timing.getTotalNanos() < thresholdNanos) {
+			return;
+		}
+		if(sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+			return;
+		}
+		boolean truncated = body != null && body.length() > maxBodyChars;
+		String kept = truncated ? body.substring(0, maxBodyChars) : body;
+		// Transport errors quote the request url, so the message is redacted like the url.
+		String message = error == null ? null : redact(error.getClass().getName() + ": " + error.getMessage());
+		SlowRequest request = new SlowRequest(System.currentTimeMillis(), redact(apiUrl), outcome, message, timing, kept, truncated);
+		buffer.set((int) (next.getAndIncrement() % buffer.length()), request);
+	}
+
+    /**
+     * Get the logged calls, oldest first.
+     *
+     * @return A copy of the log.
+     */
+	public List<SlowRequest> snapshot() {
+		long end = next.get();
+		long begin = Math.max(0, end - buffer.length());
+		List<SlowRequest> requests = new ArrayList<SlowRequest>();
+		for(long i=begin; i<end; i++) {
+			SlowRequest request = buffer.get((int) (i % buffer.length()));
+			if(request != null) {
+				requests.add(request);
+			}
+		}
+		return requests;
+	}
+
+    /**
+     * Dump the log as JSON, oldest call first.
+     *
+     * @return The JSONArray associated with the logged calls.
+     */
+	public JSONArray toJSON() {
+		JSONArray requests = new JSONArray();
+		for(SlowRequest request : snapshot()) {
+			requests.put(request.toJSON());
+		}
+		return requests;
+	}
+
+	public void clear() {
+		for(int i=0; i<buffer.length(); i++) {
+			buffer.set(i, null);
+		}
+	}
+
+	static String redact(String apiUrl) {
+		return CREDENTIALS.matcher(apiUrl).replaceAll("$1REDACTED");
+	}
+}
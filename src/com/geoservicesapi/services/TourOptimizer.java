@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * TourOptimizer orders the stops of a delivery run to minimize total travel time, given the
+ * travel times between every pair of stops. The first stop is always visited first, and the
+ * tour either returns to it or ends at whichever stop is cheapest.
+ * <p>
+ * Runs of up to 12 stops are solved exactly by dynamic programming over subsets. For longer
+ * runs, each worker on the common fork-join pool runs an iterated local search from its own random
+ * start: 2-opt and Or-opt moves until no move improves the tour, then a double-bridge kick,
+ * keeping the best tour found. Workers stop at the time budget, or earlier once they stop
+ * finding improvements. Times need not be symmetric.
+ */
+final class TourOptimizer {
+
+	/* Kicks without improvement, per stop, after which a worker gives up. */
+	private static final int PATIENCE_PER_STOP = 50;
+	/* Longest segment moved by an Or-opt move. */
+	private static final int MAX_SEGMENT = 3;
+	/* Most stops solved exactly; the table has 2^(n-1) * n entries. */
+	private static final int MAX_EXACT = 12;
+
+	private final double[][] times;
+	private final boolean roundTrip;
+	private final long deadline;
+	private final CallOptions options;
+
+    /**
+     * Construct a TourOptimizer.
+     *
+     * @param times
+     *            Travel time from each stop to each; unknown times should be given a large
+     *            penalty rather than NaN.
+     * @param roundTrip
+     *            Whether the tour returns to the first stop.
+     * @param deadline
+     *            {@link System#nanoTime()} by which the search must stop.
+     * @param options
+     *            Options of the service call, whose cancellation also stops the search.
+     */
+	TourOptimizer(double[][] times, boolean roundTrip, long deadline, CallOptions options) {
+		this.times = times;
+		this.roundTrip = roundTrip;
+		this.deadline = deadline;
+		this.options = options;
+	}
+
+    /**
+     * Find a short tour.
+     *
+     * @return The stop indexes in visiting order, starting with 0.
+     */
+	int[] solve() {
+		int n = times.length;
+		if(n <= MAX_EXACT) {
+			return exact();
+		}
+		int workers = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+		List<Worker> tasks = new ArrayList<Worker>();
+		long seed = System.nanoTime();
+		for(int i = 0; i < workers; i++) {
+			tasks.add(new Worker(seed + i * 0x9E3779B97F4A7C15L));
+		}
+		int[] best = null;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for(Worker task : tasks) {
+			ForkJoinPool.commonPool().execute(task);
+		}
+		for(Worker task : tasks) {
+			int[] tour = task.join();
+			double tourCost = cost(tour);
+			if(tourCost < bestCost) {
+				best = tour;
+				bestCost = tourCost;
+			}
+		}
+		return best;
+	}
+
+    /**
+     * Find the best tour by the Held-Karp recurrence: the cheapest path from the first stop
+     * through each subset of the others, ending at each stop of the subset.
+     *
+     * @return The stop indexes in visiting order, starting with 0.
+     */
+	private int[] exact() {
+		int n = times.length;
+		if(n == 1) {
+			return new int[] {0};
+		}
+		int others = n - 1;
+		int subsets = 1 << others;
+		double[] cost = new double[subsets * others];
+		int[] previous = new int[subsets * others];
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		for(int j = 0; j < others; j++) {
+			cost[(1 << j) * others + j] = times[0][j + 1];
+			previous[(1 << j) * others + j] = -1;
+		}
+		for(int mask = 1; mask < subsets; mask++) {
+			for(int j = 0; j < others; j++) {
+				double here = cost[mask * others + j];
+				if((mask & (1 << j)) == 0 || here == Double.POSITIVE_INFINITY) {
+					continue;
+				}
+				for(int k = 0; k < others; k++) {
+					if((mask & (1 << k)) != 0) {
+						continue;
+					}
+					int next = (mask | (1 << k)) * others + k;
+					double extended = here + times[j + 1][k + 1];
+					if(extended < cost[next]) {
+						cost[next] = extended;
+						previous[next] = j;
+					}
+				}
+			}
+		}
+		int full = subsets - 1;
+		int last = 0;
+		for(int j = 1; j < others; j++) {
+			if(cost[full * others + j] + closing(j + 1) < cost[full * others + last] + closing(last + 1)) {
+				last = j;
+			}
+		}
+		int[] order = new int[n];
+		for(int i = n - 1, mask = full, j = last; i > 0; i--) {
+			order[i] = j + 1;
+			int before = previous[mask * others + j];
+			mask &= ~(1 << j);
+			j = before;
+		}
+		return order;
+	}
+
+    /**
+     * Get the travel time of a tour.
+     *
+     * @param order
+     *            Stop indexes in visiting order.
+     * @return The total time, including the return to the first stop on a round trip.
+     */
+	double cost(int[] order) {
+		double total = 0;
+		for(int i = 0; i + 1 < order.length; i++) {
+			total += times[order[i]][order[i + 1]];
+		}
+		return total + closing(order[order.length - 1]);
+	}
+
+	/* Time from the last stop to the end of the tour. */
+	private double closing(int last) {
+		return roundTrip ? times[last][0] : 0;
+	}
+
+	private boolean expired() {
+		return System.nanoTime() - deadline >= 0 || options.isAborted();
+	}
+
+	private static int[] identity(int n) {
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		return order;
+	}
+
+	/**
+	 * One iterated local search. Its arrays are private to the worker.
+	 */
+	private final class Worker extends RecursiveTask<int[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Random random;
+		private final int n = times.length;
+		private final double[] forward = new double[n];
+		private final double[] backward = new double[n];
+		private final int[] scratch = new int[n];
+
+		Worker(long seed) {
+			this.random = new Random(seed);
+		}
+
+		protected int[] compute() {
+			int[] tour = identity(n);
+			for(int i = n - 1; i > 1; i--) {
+				int j = 1 + random.nextInt(i);
+				int swap = tour[i];
+				tour[i] = tour[j];
+				tour[j] = swap;
+			}
+			improve(tour);
+			int[] best = tour.clone();
+			double bestCost = cost(best);
+			int stale = 0;
+			while(n > 4 && stale < PATIENCE_PER_STOP * n && !expired()) {
+				kick(tour);
+				improve(tour);
+				double tourCost = cost(tour);
+				if(tourCost < bestCost - 1e-9) {
+					System.arraycopy(tour, 0, best, 0, n);
+					bestCost = tourCost;
+					stale = 0;
+				} else {
+					System.arraycopy(best, 0, tour, 0, n);
+					stale++;
+				}
+			}
+			return best;
+		}
+
+		/* Apply improving moves until there are none, or time runs out. */
+		private void improve(int[] tour) {
+			boolean improved = true;
+			while(improved && !expired()) {
+				improved = twoOpt(tour) || orOpt(tour);
+			}
+		}
+
+		/* Time of the edge out of position i, to the next stop or the end of the tour. */
+		private double out(int[] tour, int i) {
+			return i + 1 < n ? times[tour[i]][tour[i + 1]] : closing(tour[i]);
+		}
+
+		/* Reverse the first improving segment found; the prefix sums make each check O(1). */
+		private boolean twoOpt(int[] tour) {
+			forward[0] = 0;
+			backward[0] = 0;
+			for(int k = 1; k < n; k++) {
+				forward[k] = forward[k - 1] + times[tour[k - 1]][tour[k]];
+				backward[k] = backward[k - 1] + times[tour[k]][tour[k - 1]];
+			}
+			for(int i = 1; i < n - 1; i++) {
+				int before = tour[i - 1];
+				for(int j = i + 1; j < n; j++) {
+					double removed = times[before][tour[i]] + out(tour, j) + forward[j] - forward[i];
+					double after = j + 1 < n ? times[tour[i]][tour[j + 1]] : closing(tour[i]);
+					double added = times[before][tour[j]] + after + backward[j] - backward[i];
+					if(added < removed - 1e-9) {
+						for(int a = i, b = j; a < b; a++, b--) {
+							int swap = tour[a];
+							tour[a] = tour[b];
+							tour[b] = swap;
+						}
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		/* Move the first segment of up to three stops whose relocation improves the tour. */
+		private boolean orOpt(int[] tour) {
+			for(int length = 1; length <= MAX_SEGMENT; length++) {
+				for(int i = 1; i + length <= n; i++) {
+					int last = i + length - 1;
+					int before = tour[i - 1];
+					double removed = times[before][tour[i]] + out(tour, last);
+					double bridged = last + 1 < n ? times[before][tour[last + 1]] : closing(before);
+					for(int p = 0; p < n; p++) {
+						if(p >= i - 1 && p <= last) {
+							continue;
+						}
+						// Insert the segment between positions p and p + 1.
+						double gap = out(tour, p);
+						double into = times[tour[p]][tour[i]];
+						double from = p + 1 < n ? times[tour[last]][tour[p + 1]] : closing(tour[last]);
+						if(bridged + into + from - removed - gap < -1e-9) {
+							move(tour, i, last, p);
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		private void move(int[] tour, int first, int last, int p) {
+			int k = 0;
+			for(int i = 0; i < n; i++) {
+				if(i >= first && i <= last) {
+					continue;
+				}
+				scratch[k++] = tour[i];
+				if(i == p) {
+					for(int s = first; s <= last; s++) {
+						scratch[k++] = tour[s];
+					}
+				}
+			}
+			System.arraycopy(scratch, 0, tour, 0, n);
+		}
+
+		/* Double-bridge: cut the tour after the first stop into four parts and swap the middle two. */
+		private void kick(int[] tour) {
+			int a = 1 + random.nextInt(n - 3);
+			int b = a + 1 + random.nextInt(n - a - 2);
+			int c = b + 1 + random.nextInt(n - b - 1);
+			doubleBridge(tour, a, b, c, scratch);
+		}
+	}
+
+    /**
+     * Reorder a tour cut into the parts <code>[0, a)</code>, <code>[a, b)</code>,
+     * <code>[b, c)</code> and <code>[c, n)</code> so that the middle two are swapped.
+     *
+     * @param tour
+     *            The tour, reordered in place.
+     * @param a
+     *            Start of the second part, at least 1 so that the tour keeps its start.
+     * @param b
+     *            Start of the third part.
+     * @param c
+     *            Start of the fourth part.
+     * @param scratch
+     *            Room for a copy of the tour.
+     */
+	static void doubleBridge(int[] tour, int a, int b, int c, int[] scratch) {
+		int k = 0;
+		for(int i = 0; i < a; i++) {
+			scratch[k++] = tour[i];
+		}
+		for(int i = b; i < c; i++) {
+			scratch[k++] = tour[i];
+		}
+		for(int i = a; i < b; i++) {
+			scratch[k++] = tour[i];
+		}
+		for(int i = c; i < tour.length; i++) {
+			scratch[k++] = tour[i];
+		}
+		System.arraycopy(scratch, 0, tour, 0, tour.length);
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+/**
+ * Traffic class of a service call, which selects the {@link Bulkhead} lane its upstream requests
+ * wait in.
+ */
+public enum TrafficClass {
+
+	/** User-facing lookups; served before any waiting bulk request. */
+	INTERACTIVE,
+
+	/** Batch jobs; only run when no interactive request is waiting. */
+	BULK
+}
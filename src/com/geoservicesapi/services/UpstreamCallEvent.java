@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one HTTP request to an upstream, including parsing its response.
+ */
+@Name("com.geoservicesapi.UpstreamCall")
+@Label("Upstream Call")
+@Category({"GeoServices", "Upstream"})
+@Description("HTTP request to MapQuest or Yelp")
+@StackTrace(false)
+class UpstreamCallEvent extends Event {
+
+	@Label("Endpoint")
+	String endpoint;
+
+	@Label("URL Template")
+	@Description("Request url with the query parameter values removed")
+	String urlTemplate;
+
+	@Label("Bytes Read")
+	@DataAmount
+	long bytesRead;
+
+	@Label("Transfer Time")
+	@Description("Time until the whole response body was read")
+	@Timespan
+	long transferTime;
+
+	@Label("Parse Time")
+	@Timespan
+	long parseTime;
+
+	@Label("Outcome")
+	String outcome;
+}
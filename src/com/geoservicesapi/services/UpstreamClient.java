@@ -0,0 +1,623 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.geoservicesapi.Yelp;
+import com.geoservicesapi.metrics.LatencyTimer;
+import com.geoservicesapi.metrics.Metrics;
+import com.geoservicesapi.metrics.Outcome;
+
+/**
+ * UpstreamClient performs the HTTP requests of the services and times every call under the
+ * name of its endpoint. Each call is broken down into a {@link CallTiming} whose phases are
+ * recorded under <code>&lt;endpoint&gt;.&lt;phase&gt;</code> timers and handed to any
+ * {@link ServiceResult} capturing the call. Slow and failed calls are offered to the installed
+ * {@link SlowRequestLog}. Requests first wait for admission by the {@link Bulkhead} lane of
+ * their traffic class; requests beyond the {@link AdaptiveLimiter} of their endpoint are then
+ * rejected with an {@link UpstreamRejectedException}. Connect and read timeouts end at the
+ * deadline of the call, and cancelling the call disconnects its request. When Flight Recorder
+ * is on, each call also emits an {@link UpstreamCallEvent} and a {@link JsonParseEvent}.
+ */
+final class UpstreamClient {
+
+	static final LatencyTimer GEOCODE_ADDRESS = Metrics.timer("endpoint.mapquest.geocoding.address");
+	static final LatencyTimer GEOCODE_COMPONENTS = Metrics.timer("endpoint.mapquest.geocoding.components");
+	static final LatencyTimer GEOCODE_REVERSE = Metrics.timer("endpoint.mapquest.geocoding.reverse");
+	static final LatencyTimer DIRECTIONS_ROUTE = Metrics.timer("endpoint.mapquest.directions.route");
+	static final LatencyTimer DIRECTIONS_ROUTE_MATRIX = Metrics.timer("endpoint.mapquest.directions.routematrix");
+	static final LatencyTimer YELP_SEARCH = Metrics.timer("endpoint.yelp.search");
+
+	/* Reads a whole body as text. */
+	private static final BodyReader<String> TEXT = new BodyReader<String>() {
+		public String read(Reader body, CallTiming timing, CallOptions options) throws IOException {
+			StringBuilder sb = new StringBuilder();
+			char[] buffer = new char[8192];
+			int n;
+			while ((n = body.read(buffer)) != -1) {
+				sb.append(buffer, 0, n);
+				options.check();
+			}
+			timing.bytes = sb.length();
+			return sb.toString();
+		}
+	};
+
+	/* Parses a geocoding body only as far as its first location. */
+	private static final BodyReader<JSONObject> FIRST_LOCATION = new BodyReader<JSONObject>() {
+		public JSONObject read(Reader body, CallTiming timing, CallOptions options) throws IOException {
+			CountingReader counted = new CountingReader(body, options);
+			try {
+				return FirstLocationReader.read(new JSONTokener(counted));
+			} catch(JSONException e) {
+				// The tokener wraps failures of the connection, which are not parse errors.
+				if(e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw e;
+			} finally {
+				timing.bytes = counted.count;
+			}
+		}
+	};
+
+	private UpstreamClient() {
+	}
+
+    /**
+     * Fetch a MapQuest response and check its status code.
+     *
+     * @param endpoint
+     *            Timer of the endpoint being called.
+     * @param apiUrl
+     *            Request url.
+     * @param options
+     *            Options of the service call making the request.
+     * @return The parsed response.
+     * @throws UpstreamStatusException
+     *             If the response has an HTTP error status or <code>info.statuscode</code> is
+     *             not 0.
+     */
+	static JSONObject getMapQuest(LatencyTimer endpoint, String apiUrl, CallOptions options) throws Exception {
+		return getMapQuest(endpoint, apiUrl, options, new ResponseReader<JSONObject>() {
+			public JSONObject read(JSONObject response) {
+				return response;
+			}
+		});
+	}
+
+    /**
+     * Fetch a MapQuest response, check its status code and extract the caller's data from it.
+     * Failures of the reader count as parse errors of the call.
+     *
+     * @param endpoint
+     *            Timer of the endpoint being called.
+     * @param apiUrl
+     *            Request url.
+     * @param options
+     *            Options of the service call making the request.
+     * @param reader
+     *            Extracts the data from the response.
+     * @return The extracted data.
+     * @throws UpstreamStatusException
+     *             If the response has an HTTP error status or <code>info.statuscode</code> is
+     *             not 0.
+     */
+	static <T> T getMapQuest(LatencyTimer endpoint, String apiUrl, CallOptions options, ResponseReader<T> reader) throws Exception {
+		TrafficClass trafficClass = options.getTrafficClass();
+		AdaptiveLimiter limiter = acquire(endpoint, options);
+		UpstreamCallEvent event = new UpstreamCallEvent();
+		event.begin();
+		CallTiming timing = new CallTiming(endpoint.getName());
+		long start = System.nanoTime();
+		Outcome outcome = Outcome.SUCCESS;
+		Exception error = null;
+		String text = null;
+		try {
+			text = read(apiUrl, timing, options);
+			long transferred = System.nanoTime();
+			JSONObject res = parse(endpoint, text);
+			JSONObject info = res.getJSONObject("info");
+			int statusCode = info.getInt("statuscode");
+			if(statusCode != 0) {
+				throw new UpstreamStatusException(statusCode);
+			}
+			T data = reader.read(res);
+			timing.parse = System.nanoTime() - transferred;
+			return data;
+		} catch(Exception e) {
+			outcome = outcomeOf(e);
+			error = e;
+			throw e;
+		} finally {
+			timing.total = System.nanoTime() - start;
+			release(limiter, timing.total, outcome, error);
+			Bulkhead.forEndpoint(endpoint.getName()).release(trafficClass);
+			finish(endpoint, timing, outcome, event, apiUrl, error, text);
+		}
+	}
+
+    /**
+     * Fetch the first location of a MapQuest geocoding response and check its status code,
+     * without reading the rest of the response.
+     * <p>
+     * The response is parsed as it arrives and the connection is closed as soon as the first
+     * location has been read, so the other candidates of an ambiguous address are neither
+     * downloaded in full nor parsed; see {@link FirstLocationReader}. Parsing is timed as part
+     * of the body, and only the body of an HTTP error response is kept for the
+     * {@link SlowRequestLog}.
+     *
+     * @param endpoint
+     *            Timer of the endpoint being called.
+     * @param apiUrl
+     *            Request url.
+     * @param options
+     *            Options of the service call making the request.
+     * @param reader
+     *            Extracts the data from the first location of the first result.
+     * @return The extracted data.
+     * @throws UpstreamStatusException
+     *             If the response has an HTTP error status or <code>info.statuscode</code> is
+     *             not 0.
+     * @throws JSONException
+     *             If the response is malformed or matched no location.
+     */
+	static <T> T getMapQuestFirstLocation(LatencyTimer endpoint, String apiUrl, CallOptions options, ResponseReader<T> reader) throws Exception {
+		TrafficClass trafficClass = options.getTrafficClass();
+		AdaptiveLimiter limiter = acquire(endpoint, options);
+		UpstreamCallEvent event = new UpstreamCallEvent();
+		event.begin();
+		CallTiming timing = new CallTiming(endpoint.getName());
+		long start = System.nanoTime();
+		Outcome outcome = Outcome.SUCCESS;
+		Exception error = null;
+		try {
+			JSONObject location = read(apiUrl, timing, options, FIRST_LOCATION);
+			if(location == null) {
+				throw new JSONException("No location in response");
+			}
+			return reader.read(location);
+		} catch(Exception e) {
+			outcome = outcomeOf(e);
+			error = e;
+			throw e;
+		} finally {
+			timing.total = System.nanoTime() - start;
+			release(limiter, timing.total, outcome, error);
+			Bulkhead.forEndpoint(endpoint.getName()).release(trafficClass);
+			finish(endpoint, timing, outcome, event, apiUrl, error, null);
+		}
+	}
+
+    /**
+     * Search Yelp.
+     *
+     * @param parameters
+     *            Query parameters of the search.
+     * @return The parsed Yelp response, which may hold an error object instead of businesses.
+     */
+	static JSONObject yelpSearch(String consumerKey, String consumerSecret, String token, String tokenSecret, Map<String, String> parameters, CallOptions options) {
+		TrafficClass trafficClass = options.getTrafficClass();
+		AdaptiveLimiter limiter = acquire(YELP_SEARCH, options);
+		UpstreamCallEvent event = new UpstreamCallEvent();
+		event.begin();
+		CallTiming timing = new CallTiming(YELP_SEARCH.getName());
+		long start = System.nanoTime();
+		Outcome outcome = Outcome.SUCCESS;
+		Exception error = null;
+		String response = null;
+		try {
+			response = Yelp.getResponse(consumerKey, consumerSecret, token, tokenSecret, parameters, options.timeoutMillis(0));
+			timing.bytes = response.length();
+			long transferred = System.nanoTime();
+			JSONObject responseJson = parse(YELP_SEARCH, response);
+			timing.parse = System.nanoTime() - transferred;
+			if(responseJson.has("error")) {
+				outcome = Outcome.STATUS_ERROR;
+			}
+			return responseJson;
+		} catch(RuntimeException e) {
+			if(options.isAborted() && !(e instanceof CallAbortedException)) {
+				e = aborted(options);
+			}
+			outcome = outcomeOf(e);
+			error = e;
+			throw e;
+		} finally {
+			timing.total = System.nanoTime() - start;
+			release(limiter, timing.total, outcome, error);
+			Bulkhead.forEndpoint(YELP_SEARCH.getName()).release(trafficClass);
+			StringBuilder apiUrl = new StringBuilder("http://api.yelp.com/v2/search");
+			char separator = '?';
+			for(Map.Entry<String, String> parameter : parameters.entrySet()) {
+				apiUrl.append(separator).append(parameter.getKey()).append('=').append(parameter.getValue());
+				separator = '&';
+			}
+			finish(YELP_SEARCH, timing, outcome, event, apiUrl.toString(), error, response);
+		}
+	}
+
+	private static AdaptiveLimiter acquire(LatencyTimer endpoint, CallOptions options) {
+		long start = System.nanoTime();
+		TrafficClass trafficClass = options.getTrafficClass();
+		Bulkhead bulkhead = Bulkhead.forEndpoint(endpoint.getName());
+		try {
+			options.check();
+			bulkhead.acquire(options);
+		} catch(RuntimeException e) {
+			endpoint.record(outcomeOf(e), System.nanoTime() - start);
+			throw e;
+		}
+		AdaptiveLimiter limiter = AdaptiveLimiter.forEndpoint(endpoint.getName());
+		if(!limiter.tryAcquire()) {
+			bulkhead.release(trafficClass);
+			endpoint.record(Outcome.REJECTED, System.nanoTime() - start);
+			throw new UpstreamRejectedException(endpoint.getName());
+		}
+		return limiter;
+	}
+
+    /**
+     * Return the slot of a call to the limiter of its endpoint. Only successful responses and
+     * signs of congestion adjust the limit.
+     */
+	private static void release(AdaptiveLimiter limiter, long rttNanos, Outcome outcome, Exception error) {
+		if(isCongestion(outcome, error)) {
+			limiter.release(rttNanos, true);
+		} else if(outcome == Outcome.SUCCESS) {
+			limiter.release(rttNanos, false);
+		} else {
+			limiter.release();
+		}
+	}
+
+    /**
+     * Whether a failed call should shrink the concurrency limit of its endpoint. Calls abandoned
+     * because of their own deadline or a cancellation say nothing about the upstream.
+     */
+	private static boolean isCongestion(Outcome outcome, Exception error) {
+		if(error instanceof CallAbortedException) {
+			return false;
+		}
+		UpstreamStatusException status = httpStatus(error);
+		if(status != null) {
+			return status.getStatusCode() == 429 || status.getStatusCode() >= 500;
+		}
+		return outcome == Outcome.TIMEOUT || outcome == Outcome.ERROR;
+	}
+
+	/* The HTTP error status a call failed with, if any. */
+	private static UpstreamStatusException httpStatus(Throwable e) {
+		for(Throwable t = e; t != null; t = t.getCause()) {
+			if(t instanceof UpstreamStatusException && ((UpstreamStatusException) t).isHttpStatus()) {
+				return (UpstreamStatusException) t;
+			}
+		}
+		return null;
+	}
+
+	private static CallAbortedException aborted(CallOptions options) {
+		CancellationToken cancellation = options.getCancellation();
+		return new CallAbortedException(cancellation != null && cancellation.isCancelled()
+				? CallAbortedException.CANCELLED : CallAbortedException.DEADLINE_EXCEEDED);
+	}
+
+	private static void finish(LatencyTimer endpoint, CallTiming timing, Outcome outcome, UpstreamCallEvent event,
+			String apiUrl, Exception error, String body) {
+		endpoint.record(outcome, timing.total);
+		String name = endpoint.getName();
+		recordPhase(name + ".resolve", outcome, timing.resolve);
+		recordPhase(name + ".connect", outcome, timing.connect);
+		recordPhase(name + ".handshake", outcome, timing.handshake);
+		recordPhase(name + ".firstByte", outcome, timing.firstByte);
+		recordPhase(name + ".body", outcome, timing.body);
+		recordPhase(name + ".parse", outcome, timing.parse);
+		ServiceResult.captured(timing);
+		UpstreamStatusException status = httpStatus(error);
+		if(body == null && status != null) {
+			body = status.getBody();
+		}
+		SlowRequestLog.offer(apiUrl, outcome, error, timing, body);
+
+		event.end();
+		if(event.shouldCommit()) {
+			event.endpoint = name;
+			event.urlTemplate = templateOf(apiUrl);
+			event.bytesRead = timing.bytes;
+			event.transferTime = timing.parse < 0 ? timing.total : timing.total - timing.parse;
+			event.parseTime = Math.max(0, timing.parse);
+			event.outcome = outcome.name();
+			event.commit();
+		}
+	}
+
+	private static void recordPhase(String name, Outcome outcome, long nanos) {
+		if(nanos >= 0) {
+			Metrics.timer(name).record(outcome, nanos);
+		}
+	}
+
+	private static JSONObject parse(LatencyTimer endpoint, String text) {
+		JsonParseEvent event = new JsonParseEvent();
+		event.begin();
+		JSONObject res = new JSONObject(text);
+		event.end();
+		if(event.shouldCommit()) {
+			event.endpoint = endpoint.getName();
+			event.characters = text.length();
+			event.commit();
+		}
+		return res;
+	}
+
+    /**
+     * Replace the query parameter values of a url with <code>{}</code>, which keeps api keys
+     * and addresses out of recordings and groups calls by request shape.
+     *
+     * @param apiUrl
+     *            Request url.
+     * @return The url template.
+     */
+	static String templateOf(String apiUrl) {
+		int query = apiUrl.indexOf('?');
+		if(query < 0) {
+			return apiUrl;
+		}
+		StringBuilder sb = new StringBuilder(apiUrl.length());
+		sb.append(apiUrl, 0, query + 1);
+		String[] params = apiUrl.substring(query + 1).split("&");
+		for(String param : params) {
+			if(param.length() == 0) {
+				continue;
+			}
+			if(sb.charAt(sb.length() - 1) != '?') {
+				sb.append('&');
+			}
+			int eq = param.indexOf('=');
+			sb.append(eq < 0 ? param : param.substring(0, eq)).append("={}");
+		}
+		return sb.toString();
+	}
+
+    /**
+     * Classify the exception that ended a call.
+     *
+     * @param e
+     *            The exception.
+     * @return The outcome to record.
+     */
+	static Outcome outcomeOf(Exception e) {
+		// Scribe wraps transport failures, so look through the causes.
+		for(Throwable t = e; t != null; t = t.getCause()) {
+			if(t instanceof CallAbortedException) {
+				String id = ((CallAbortedException) t).getId();
+				return CallAbortedException.CANCELLED.equals(id) ? Outcome.CANCELLED : Outcome.TIMEOUT;
+			} else if(t instanceof TimeoutException) {
+				return Outcome.TIMEOUT;
+			} else if(t instanceof UpstreamStatusException) {
+				return Outcome.STATUS_ERROR;
+			} else if(t instanceof UpstreamRejectedException) {
+				return Outcome.REJECTED;
+			} else if(t instanceof SocketTimeoutException) {
+				return Outcome.TIMEOUT;
+			} else if(t instanceof JSONException) {
+				return Outcome.PARSE_ERROR;
+			}
+		}
+		return Outcome.ERROR;
+	}
+
+    /**
+     * Turn the exception that ended a service call into its outcome, adding the matching error
+     * object to the result. Status errors leave the result empty.
+     *
+     * @param e
+     *            The exception.
+     * @param result
+     *            Result of the service call.
+     * @return The outcome to record.
+     */
+	static Outcome failed(Exception e, JSONObject result) {
+		Outcome outcome = outcomeOf(e);
+		if(outcome == Outcome.STATUS_ERROR && httpStatus(e) == null) {
+			return outcome;
+		}
+		JSONObject error = new JSONObject();
+		if(outcome == Outcome.REJECTED) {
+			error.put("message", "Too many requests to the upstream service. Try again shortly.");
+			error.put("id", "UPSTREAM_OVERLOADED");
+		} else if(outcome == Outcome.CANCELLED) {
+			error.put("message", "The request was cancelled.");
+			error.put("id", CallAbortedException.CANCELLED);
+		} else if(outcome == Outcome.TIMEOUT && isAborted(e)) {
+			error.put("message", "The request did not complete before its deadline.");
+			error.put("id", CallAbortedException.DEADLINE_EXCEEDED);
+		} else {
+			error.put("message", "Error processing request. Try again after some time");
+		}
+		result.put("error", error);
+		return outcome;
+	}
+
+	private static boolean isAborted(Throwable e) {
+		for(Throwable t = e; t != null; t = t.getCause()) {
+			if(t instanceof CallAbortedException || t instanceof TimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String read(String apiUrl, CallTiming timing, CallOptions options) throws Exception {
+		return read(apiUrl, timing, options, TEXT);
+	}
+
+	private static <T> T read(String apiUrl, CallTiming timing, CallOptions options, BodyReader<T> reader) throws Exception {
+		URL url = new URL(apiUrl);
+		long mark = System.nanoTime();
+		// Resolving up front warms the JVM's address cache, which the connection then uses.
+		InetAddress.getAllByName(url.getHost());
+		long now = System.nanoTime();
+		timing.resolve = now - mark;
+		options.check();
+
+		mark = now;
+		final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setConnectTimeout(options.timeoutMillis(0));
+		// The read timeout applies to each read, so the body loop below checks the deadline too.
+		connection.setReadTimeout(options.timeoutMillis(0));
+		CancellationToken cancellation = options.getCancellation();
+		Runnable abort = new Runnable() {
+			public void run() {
+				connection.disconnect();
+			}
+		};
+		if(cancellation != null) {
+			cancellation.addListener(abort);
+		}
+		try {
+			return read(connection, url, timing, options, now, reader);
+		} catch(IOException e) {
+			if(options.isAborted()) {
+				throw aborted(options);
+			}
+			throw e;
+		} finally {
+			if(cancellation != null) {
+				cancellation.removeListener(abort);
+			}
+		}
+	}
+
+	private static <T> T read(HttpURLConnection connection, URL url, CallTiming timing, CallOptions options, long mark, BodyReader<T> reader) throws IOException {
+		connection.connect();
+		long now = System.nanoTime();
+		timing.connect = now - mark;
+		if("http".equalsIgnoreCase(url.getProtocol())) {
+			timing.handshake = 0;
+		}
+
+		mark = now;
+		int responseCode = connection.getResponseCode();
+		now = System.nanoTime();
+		timing.firstByte = now - mark;
+		if(responseCode >= 400) {
+			// getInputStream would throw an IOException quoting the url, and with it the api key.
+			String body = errorBody(connection.getErrorStream(), SlowRequestLog.bodyLimit());
+			timing.body = System.nanoTime() - now;
+			throw new UpstreamStatusException(responseCode, true, body);
+		}
+
+		mark = now;
+		InputStream is = connection.getInputStream();
+		try {
+			BufferedReader rd = new BufferedReader(new InputStreamReader(is, Charset.forName("UTF-8")));
+			T body = reader.read(rd, timing, options);
+			timing.body = System.nanoTime() - mark;
+			return body;
+		} finally {
+			is.close();
+		}
+	}
+
+    /**
+     * Read the start of the body of an HTTP error response for the {@link SlowRequestLog}. One
+     * character more than the log keeps is read, so that the log can tell the body was cut.
+     *
+     * @param error
+     *            The error stream of the connection, possibly null.
+     * @param limit
+     *            Number of characters the log keeps.
+     * @return The redacted start of the body, or null if there is none or no log wants it.
+     */
+	private static String errorBody(InputStream error, int limit) throws IOException {
+		if(error == null) {
+			return null;
+		}
+		try {
+			if(limit <= 0) {
+				return null;
+			}
+			Reader rd = new InputStreamReader(error, Charset.forName("UTF-8"));
+			char[] buffer = new char[limit + 1];
+			int length = 0, n;
+			while(length < buffer.length && (n = rd.read(buffer, length, buffer.length - length)) != -1) {
+				length += n;
+			}
+			return SlowRequestLog.redact(new String(buffer, 0, length));
+		} finally {
+			error.close();
+		}
+	}
+
+	/**
+	 * Consumes the body of a response as it is received.
+	 */
+	private interface BodyReader<T> {
+		T read(Reader body, CallTiming timing, CallOptions options) throws IOException;
+	}
+
+	/**
+	 * Counts the characters read through it and checks the deadline of the call after each read.
+	 */
+	private static final class CountingReader extends Reader {
+		private final Reader in;
+		private final CallOptions options;
+		long count;
+
+		CountingReader(Reader in, CallOptions options) {
+			this.in = in;
+			this.options = options;
+		}
+
+		public int read(char[] buffer, int offset, int length) throws IOException {
+			int n = in.read(buffer, offset, length);
+			if(n > 0) {
+				count += n;
+				options.check();
+			}
+			return n;
+		}
+
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Extracts the data a service needs from an upstream response.
+	 */
+	interface ResponseReader<T> {
+		T read(JSONObject response) throws Exception;
+	}
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+/**
+ * Thrown when a request is shed because too many requests to its upstream are already in flight.
+ */
+class UpstreamRejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	UpstreamRejectedException(String endpoint) {
+		super("Too many requests in flight to " + endpoint);
+	}
+}
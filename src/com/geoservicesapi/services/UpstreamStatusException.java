@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an upstream answers a request with a non-zero status code, or with an HTTP error
+ * status.
+ */
+class UpstreamStatusException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+	private final boolean http;
+	private final String body;
+
+	UpstreamStatusException(int statusCode) {
+		this(statusCode, false, null);
+	}
+
+	UpstreamStatusException(int statusCode, boolean http, String body) {
+		super((http ? "Upstream returned HTTP status " : "Upstream returned status code ") + statusCode);
+		this.statusCode = statusCode;
+		this.http = http;
+		this.body = body;
+	}
+
+	int getStatusCode() {
+		return statusCode;
+	}
+
+    /**
+     * Whether the status is the HTTP status of the response rather than one reported in its body.
+     *
+     * @return true for an HTTP error status.
+     */
+	boolean isHttpStatus() {
+		return http;
+	}
+
+    /**
+     * Get the start of the body of an HTTP error response, kept for the {@link SlowRequestLog}.
+     *
+     * @return The body, or null if none was read.
+     */
+	String getBody() {
+		return body;
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import com.geoservicesapi.cache.CacheBudget;
+import com.geoservicesapi.cache.ObjectSizes;
+import com.geoservicesapi.cache.ServiceCache;
+import com.geoservicesapi.cache.Weigher;
+
+/**
+ * VenueCatalog is an in-process store of {@link VenueRecord}s keyed by Yelp business id.
+ * <p>
+ * A business is geocoded the first time it is seen and again only when its address changes,
+ * so repeated searches over the same area cost a single Yelp call. A catalog is safe for
+ * concurrent use and may be shared between several {@link PlacesServices}. Records do not
+ * expire, but are evicted like any other entry when the memory budget is exceeded.
+ */
+public class VenueCatalog {
+
+	private static final Weigher<String, VenueRecord> RECORD_WEIGHER = new Weigher<String, VenueRecord>() {
+		public long weigh(String key, VenueRecord value) {
+			// The key is the record's own id string.
+			return ObjectSizes.OBJECT + 8 * 4 + 16
+					+ ObjectSizes.of(value.getId()) + ObjectSizes.of(value.getName())
+					+ ObjectSizes.of(value.getAddress()) + ObjectSizes.of(value.getCity())
+					+ ObjectSizes.of(value.getState()) + ObjectSizes.of(value.getPostalCode())
+					+ ObjectSizes.of(value.getCountry()) + ObjectSizes.of(value.getFormattedPhone());
+		}
+	};
+
+	private final ServiceCache<String, VenueRecord> records;
+
+	public VenueCatalog() {
+		this(CacheBudget.shared());
+	}
+
+    /**
+     * Construct a VenueCatalog charged against the given memory budget.
+     *
+     * @param budget
+     *            Memory budget shared with other service caches.
+     */
+	public VenueCatalog(CacheBudget budget) {
+		this.records = new ServiceCache<String, VenueRecord>("venue", budget, RECORD_WEIGHER, 0);
+	}
+
+    /**
+     * Get the record of a business.
+     *
+     * @param id
+     *            Yelp business id.
+     * @return The record, or null if the business is not in the catalog.
+     */
+	public VenueRecord get(String id) {
+		return records.getIfPresent(id);
+	}
+
+    /**
+     * Add or replace the record of a business.
+     *
+     * @param record
+     *            The record to store.
+     */
+	public void put(VenueRecord record) {
+		records.put(record.getId(), record);
+	}
+
+    /**
+     * Add or replace the record of a business that has just been geocoded.
+     *
+     * @param record
+     *            The record to store.
+     * @param costNanos
+     *            How long resolving the record took, used to rank it for eviction.
+     */
+	public void put(VenueRecord record, long costNanos) {
+		records.put(record.getId(), record, costNanos);
+	}
+
+	public CacheBudget getBudget() {
+		return records.getBudget();
+	}
+
+    /**
+     * Remove a business from the catalog so that it is geocoded again on the next search.
+     *
+     * @param id
+     *            Yelp business id.
+     */
+	public void invalidate(String id) {
+		records.invalidate(id);
+	}
+
+	public void clear() {
+		records.clear();
+	}
+
+	public int size() {
+		return records.size();
+	}
+}
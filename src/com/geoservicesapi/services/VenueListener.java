@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+/**
+ * VenueListener receives the venues of a streaming {@link PlacesServices} search as they are
+ * resolved, instead of all at once in the result. Calls to a listener are never concurrent and
+ * are made on the thread that called the search method.
+ */
+public interface VenueListener {
+
+    /**
+     * Receive one venue.
+     *
+     * @param venue
+     *            The venue, in the same form as the entries of a <code>"result"</code> array.
+     */
+	void onVenue(JSONObject venue);
+
+    /**
+     * Receive the end of the search, exactly once and after every venue.
+     *
+     * @param result
+     *            The object the search method returns: counts and a <code>"partial"</code>
+     *            flag, or an <code>"error"</code> object if the search failed.
+     */
+	void onComplete(JSONObject result);
+}
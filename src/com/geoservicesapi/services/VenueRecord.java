@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import org.json.JSONObject;
+
+/**
+ * VenueRecord is the normalized, immutable form of a Yelp business together with
+ * the coordinates MapQuest resolved for its address.
+ */
+public final class VenueRecord {
+
+	private final String id;
+	private final String name;
+	private final String address;
+	private final String city;
+	private final String state;
+	private final String postalCode;
+	private final String country;
+	private final String formattedPhone;
+	private final double lat;
+	private final double lng;
+
+    /**
+     * Construct a VenueRecord.
+     *
+     * @param id
+     *            Yelp business id.
+     * @param name
+     *            Name of the business.
+     * @param address
+     *            First line of the street address.
+     * @param city
+     *            City of the business.
+     * @param state
+     *            State code of the business.
+     * @param postalCode
+     *            Postal code of the business.
+     * @param country
+     *            Country code of the business.
+     * @param formattedPhone
+     *            Display phone of the business.
+     * @param lat
+     *            Resolved latitude.
+     * @param lng
+     *            Resolved longitude.
+     */
+	public VenueRecord(String id, String name, String address, String city, String state, String postalCode,
+			String country, String formattedPhone, double lat, double lng) {
+		this.id = id;
+		this.name = name;
+		this.address = address;
+		this.city = city;
+		this.state = state;
+		this.postalCode = postalCode;
+		this.country = country;
+		this.formattedPhone = formattedPhone;
+		this.lat = lat;
+		this.lng = lng;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public String getCity() {
+		return city;
+	}
+
+	public String getState() {
+		return state;
+	}
+
+	public String getPostalCode() {
+		return postalCode;
+	}
+
+	public String getCountry() {
+		return country;
+	}
+
+	public String getFormattedPhone() {
+		return formattedPhone;
+	}
+
+	public double getLat() {
+		return lat;
+	}
+
+	public double getLng() {
+		return lng;
+	}
+
+    /**
+     * Whether this record was geocoded from the given address components.
+     *
+     * @return true if the coordinates of this record are still valid for the address.
+     */
+	public boolean hasAddress(String address, String city, String state, String postalCode) {
+		return this.address.equals(address) && this.city.equals(city)
+				&& this.state.equals(state) && this.postalCode.equals(postalCode);
+	}
+
+    /**
+     * Copy of this record with new descriptive fields but the same address and coordinates.
+     *
+     * @return The updated record, or this record if nothing changed.
+     */
+	public VenueRecord withDetails(String name, String country, String formattedPhone) {
+		if(this.name.equals(name) && this.country.equals(country) && this.formattedPhone.equals(formattedPhone)) {
+			return this;
+		}
+		return new VenueRecord(id, name, address, city, state, postalCode, country, formattedPhone, lat, lng);
+	}
+
+    /**
+     * Build the venue JSON returned by {@link PlacesServices}.
+     *
+     * @param distance
+     *            Distance of the venue from the searched location, as reported by Yelp.
+     * @return The JSONObject associated with the venue.
+     */
+	public JSONObject toJSON(double distance) {
+		JSONObject venue = new JSONObject();
+		venue.put("name", name);
+		venue.put("address", address);
+		venue.put("city", city);
+		venue.put("state", state);
+		venue.put("postalCode", postalCode);
+		venue.put("country", country);
+		venue.put("distance", distance);
+		venue.put("formattedPhone", formattedPhone);
+		venue.put("lat", lat);
+		venue.put("lng", lng);
+		return venue;
+	}
+}
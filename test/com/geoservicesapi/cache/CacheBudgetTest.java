@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CacheBudgetTest {
+
+	/* Charges each entry ObjectSizes.ENTRY plus the length of its value. */
+	static final Weigher<String, String> LENGTH = new Weigher<String, String>() {
+		public long weigh(String key, String value) {
+			return value.length();
+		}
+	};
+
+	static String ofLength(int length) {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<length; i++) {
+			sb.append('x');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void sharedBudgetAcceptsEntries() {
+		ServiceCache<String, String> cache = new ServiceCache<String, String>("test-shared", CacheBudget.shared(), LENGTH, 0);
+		cache.put("key", "value");
+		assertEquals("value", cache.getIfPresent("key"));
+		cache.clear();
+	}
+
+	@Test
+	public void evictsCheapLargeEntriesFirst() {
+		CacheBudget budget = new CacheBudget(4 * ObjectSizes.ENTRY + 1000);
+		ServiceCache<String, String> routes = new ServiceCache<String, String>("test-routes", budget, LENGTH, 0);
+		ServiceCache<String, String> geocodes = new ServiceCache<String, String>("test-geocodes", budget, LENGTH, 0);
+		routes.put("slow", ofLength(100), 200000000L);
+		geocodes.put("large", ofLength(700), 1000000L);
+		geocodes.put("small", ofLength(100), 1000000L);
+		routes.put("another", ofLength(200), 200000000L);
+
+		assertNull(geocodes.getIfPresent("large"));
+		assertNotNull(geocodes.getIfPresent("small"));
+		assertNotNull(routes.getIfPresent("slow"));
+		assertNotNull(routes.getIfPresent("another"));
+		assertEquals(1, geocodes.getStats().getEvictionCount());
+		assertTrue(budget.getWeight() <= budget.getMaxWeight());
+	}
+
+	@Test
+	public void frequentlyUsedEntriesSurvive() {
+		CacheBudget budget = new CacheBudget(2 * ObjectSizes.ENTRY + 200);
+		ServiceCache<String, String> cache = new ServiceCache<String, String>("test-frequency", budget, LENGTH, 0);
+		cache.put("popular", ofLength(100), 1000000L);
+		cache.put("rare", ofLength(100), 1000000L);
+		for(int i=0; i<5; i++) {
+			cache.getIfPresent("popular");
+		}
+		cache.put("new", ofLength(100), 1000000L);
+
+		assertNotNull(cache.getIfPresent("popular"));
+		assertNull(cache.getIfPresent("rare"));
+	}
+
+	@Test
+	public void shrinkingEvicts() {
+		CacheBudget budget = new CacheBudget(10 * (ObjectSizes.ENTRY + 100));
+		ServiceCache<String, String> cache = new ServiceCache<String, String>("test-shrink", budget, LENGTH, 0);
+		for(int i=0; i<10; i++) {
+			cache.put("key" + i, ofLength(100));
+		}
+		assertEquals(10, cache.size());
+
+		budget.setMaxWeight(3 * (ObjectSizes.ENTRY + 100));
+		assertEquals(3, cache.size());
+		assertEquals(budget.getWeight(), cache.weight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyBudget() {
+		new CacheBudget(0);
+	}
+}
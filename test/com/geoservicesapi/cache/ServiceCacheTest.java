@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ServiceCacheTest {
+
+	private static ServiceCache<String, String> cache(String name, long ttlMillis) {
+		return new ServiceCache<String, String>(name, new CacheBudget(1 << 20), CacheBudgetTest.LENGTH, ttlMillis);
+	}
+
+	@Test
+	public void loadsOnceAndHits() throws Exception {
+		ServiceCache<String, String> cache = cache("test-hits", 0);
+		final AtomicInteger loads = new AtomicInteger();
+		Loader<String, String> loader = new Loader<String, String>() {
+			public String load(String key) {
+				loads.incrementAndGet();
+				return key.toUpperCase();
+			}
+		};
+		assertEquals("A", cache.get("a", loader));
+		assertEquals(CacheOutcome.MISS, ServiceCache.lastOutcome());
+		assertEquals("A", cache.get("a", loader));
+		assertEquals(CacheOutcome.HIT, ServiceCache.lastOutcome());
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getStats().getHitCount());
+		assertEquals(1, cache.getStats().getMissCount());
+	}
+
+	@Test
+	public void nullValuesAreNotCached() throws Exception {
+		ServiceCache<String, String> cache = cache("test-null", 0);
+		assertNull(cache.get("a", new Loader<String, String>() {
+			public String load(String key) {
+				return null;
+			}
+		}));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void coalescesConcurrentMisses() throws Exception {
+		final ServiceCache<String, String> cache = cache("test-coalesce", 0);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Loader<String, String> loader = new Loader<String, String>() {
+			public String load(String key) throws Exception {
+				loads.incrementAndGet();
+				started.countDown();
+				release.await();
+				return "value";
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<String> first = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return cache.get("key", loader);
+				}
+			});
+			started.await();
+			Future<String> second = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return cache.get("key", loader);
+				}
+			});
+			while(cache.getStats().getCoalescedWaitCount() == 0) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			assertEquals("value", first.get(5, TimeUnit.SECONDS));
+			assertEquals("value", second.get(5, TimeUnit.SECONDS));
+			assertEquals(1, loads.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void waitForAnotherLoadIsBounded() throws Exception {
+		final ServiceCache<String, String> cache = cache("test-timeout", 0);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return cache.get("key", new Loader<String, String>() {
+						public String load(String key) throws Exception {
+							started.countDown();
+							release.await();
+							return "value";
+						}
+					});
+				}
+			});
+			started.await();
+			try {
+				cache.get("key", null, TimeUnit.MILLISECONDS.toNanos(20));
+				fail("Expected a timeout");
+			} catch(TimeoutException expected) {
+			}
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void doesNotWaitForLowerPriorityLoad() throws Exception {
+		final ServiceCache<String, String> cache = cache("test-priority", 0);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> low = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return cache.get("key", new Loader<String, String>() {
+						public String load(String key) throws Exception {
+							started.countDown();
+							release.await();
+							return "low";
+						}
+					}, Long.MAX_VALUE, 0);
+				}
+			});
+			started.await();
+			String high = cache.get("key", new Loader<String, String>() {
+				public String load(String key) {
+					return "high";
+				}
+			}, TimeUnit.SECONDS.toNanos(5), 1);
+			assertEquals("high", high);
+			assertEquals(CacheOutcome.MISS, ServiceCache.lastOutcome());
+			release.countDown();
+			assertEquals("low", low.get(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void servesStaleValueWhenReloadFails() throws Exception {
+		ServiceCache<String, String> cache = cache("test-stale", 1);
+		cache.put("key", "old");
+		Thread.sleep(5);
+		String value = cache.get("key", new Loader<String, String>() {
+			public String load(String key) throws Exception {
+				throw new IOException("upstream down");
+			}
+		});
+		assertEquals("old", value);
+		assertEquals(CacheOutcome.STALE, ServiceCache.lastOutcome());
+		assertEquals(1, cache.getStats().getLoadFailureCount());
+	}
+
+	@Test
+	public void loadFailureWithoutStaleValueIsThrown() throws Exception {
+		ServiceCache<String, String> cache = cache("test-failure", 0);
+		final IOException failure = new IOException("upstream down");
+		try {
+			cache.get("key", new Loader<String, String>() {
+				public String load(String key) throws Exception {
+					throw failure;
+				}
+			});
+			fail("Expected the loader's exception");
+		} catch(IOException e) {
+			assertSame(failure, e);
+		}
+	}
+
+	@Test
+	public void perCacheLimitEvictsOnlyWithinTheCache() {
+		CacheBudget budget = new CacheBudget(1 << 20);
+		ServiceCache<String, String> limited = new ServiceCache<String, String>("test-limited", budget, CacheBudgetTest.LENGTH, 0,
+				2 * (ObjectSizes.ENTRY + 10));
+		ServiceCache<String, String> other = new ServiceCache<String, String>("test-other", budget, CacheBudgetTest.LENGTH, 0);
+		other.put("kept", "0123456789");
+		for(int i=0; i<5; i++) {
+			limited.put("key" + i, "0123456789");
+		}
+		assertEquals(2, limited.size());
+		assertEquals(1, other.size());
+		assertEquals(limited.weight() + other.weight(), budget.getWeight());
+	}
+
+	@Test
+	public void invalidateRemovesEntry() {
+		ServiceCache<String, String> cache = cache("test-invalidate", 0);
+		cache.put("key", "value");
+		cache.invalidate("key");
+		assertNull(cache.getIfPresent("key"));
+		assertEquals(0, cache.weight());
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CorridorIndexTest {
+
+	private static final double METERS_PER_MICRO = Math.toRadians(1e-6) * GreatCircle.EARTH_RADIUS;
+
+	/* A winding route of a few hundred meters per step. */
+	private static RouteShape route(int count, long seed) {
+		Random random = new Random(seed);
+		int[] lats = new int[count], lngs = new int[count];
+		lats[0] = 37700000;
+		lngs[0] = -122400000;
+		for(int i=1; i<count; i++) {
+			lats[i] = lats[i - 1] + random.nextInt(6001) - 1000;
+			lngs[i] = lngs[i - 1] + random.nextInt(6001) - 3000;
+		}
+		return new RouteShape(lats, lngs, count);
+	}
+
+	/* Nearest segment by scanning all of them, on the projection of CorridorIndex. */
+	private static double[] scan(RouteShape shape, double width, double lat, double lng) {
+		int count = shape.getPointCount();
+		long sum = 0;
+		for(int i=0; i<count; i++) {
+			sum += shape.lat(i);
+		}
+		double xScale = METERS_PER_MICRO * Math.cos(Math.toRadians(sum / (count * 1e6)));
+		double px = lng * 1e6 * xScale, py = lat * 1e6 * METERS_PER_MICRO;
+		double best = Double.POSITIVE_INFINITY, bestAlong = 0;
+		for(int s=0; s+1<count; s++) {
+			double ax = shape.lng(s) * xScale, ay = shape.lat(s) * METERS_PER_MICRO;
+			double dx = shape.lng(s + 1) * xScale - ax, dy = shape.lat(s + 1) * METERS_PER_MICRO - ay;
+			double lengthSquared = dx * dx + dy * dy;
+			double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+			double distance = Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+			if(distance < best) {
+				best = distance;
+				bestAlong = shape.distanceTo(s) + (shape.distanceTo(s + 1) - shape.distanceTo(s)) * t;
+			}
+		}
+		return best <= width ? new double[] {best, bestAlong} : null;
+	}
+
+	@Test
+	public void matchesScanOfAllSegments() {
+		for(double width : new double[] {50, 500, 5000}) {
+			RouteShape shape = route(400, (long) width);
+			CorridorIndex index = new CorridorIndex(shape, width);
+			Random random = new Random(1);
+			int found = 0;
+			for(int q=0; q<5000; q++) {
+				double[] near = shape.pointAt(random.nextDouble());
+				double lat = near[0] + (random.nextDouble() - 0.5) * width / 5e4;
+				double lng = near[1] + (random.nextDouble() - 0.5) * width / 5e4;
+				double[] expected = scan(shape, width, lat, lng);
+				double[] actual = index.locate(lat, lng);
+				if(expected == null) {
+					assertNull(actual);
+					continue;
+				}
+				assertNotNull(actual);
+				assertEquals(expected[0], actual[0], 1e-6);
+				found++;
+			}
+			assertTrue(found > 0 && found < 5000);
+		}
+	}
+
+	@Test
+	public void pointsOnRouteAreFoundInOrder() {
+		RouteShape shape = route(200, 7);
+		CorridorIndex index = new CorridorIndex(shape, 1);
+		double[][] points = shape.evenlySpaced(50);
+		double previous = -1;
+		for(int k=0; k<points.length; k++) {
+			double[] location = index.locate(points[k][0], points[k][1]);
+			assertNotNull(location);
+			assertEquals(0, location[0], 1e-3);
+			assertTrue(location[1] > previous);
+			previous = location[1];
+		}
+		double[] start = index.locate(points[0][0], points[0][1]);
+		double[] end = index.locate(points[49][0], points[49][1]);
+		assertEquals(0, start[1], 1e-6);
+		assertEquals(shape.getLength(), end[1], 1e-6);
+	}
+
+	@Test
+	public void farPointIsNotFound() {
+		CorridorIndex index = new CorridorIndex(route(50, 3), 100);
+		assertNull(index.locate(0, 0));
+		assertNull(index.locate(-37.7, 57.6));
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PolylineTest {
+
+	/* The example of Google's Encoded Polyline Algorithm Format documentation. */
+	private static final int[] EXAMPLE_LATS = {38500000, 40700000, 43252000};
+	private static final int[] EXAMPLE_LNGS = {-120200000, -120950000, -126453000};
+	private static final String EXAMPLE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+
+	@Test
+	public void encodesReferenceExample() {
+		assertEquals(EXAMPLE, Polyline.encode(EXAMPLE_LATS, EXAMPLE_LNGS, 3, 5));
+	}
+
+	@Test
+	public void decodesReferenceExample() {
+		assertEquals(3, Polyline.count(EXAMPLE));
+		int[] lats = new int[3], lngs = new int[3];
+		assertEquals(3, Polyline.decode(EXAMPLE, 5, lats, lngs));
+		assertArrayEquals(EXAMPLE_LATS, lats);
+		assertArrayEquals(EXAMPLE_LNGS, lngs);
+	}
+
+	@Test
+	public void precisionSixRoundTripsExactly() {
+		Random random = new Random(5);
+		int count = 1000;
+		int[] lats = new int[count], lngs = new int[count];
+		for(int i=0; i<count; i++) {
+			lats[i] = random.nextInt(180000001) - 90000000;
+			lngs[i] = random.nextInt(360000001) - 180000000;
+		}
+		String encoded = Polyline.encode(lats, lngs, count, 6);
+		assertEquals(count, Polyline.count(encoded));
+		int[] decodedLats = new int[count], decodedLngs = new int[count];
+		Polyline.decode(encoded, 6, decodedLats, decodedLngs);
+		assertArrayEquals(lats, decodedLats);
+		assertArrayEquals(lngs, decodedLngs);
+	}
+
+	@Test
+	public void precisionFiveRoundsToTenMicrodegrees() {
+		int[] lats = {40123456, -33999995}, lngs = {-73987654, 151000004};
+		String encoded = Polyline.encode(lats, lngs, 2, 5);
+		int[] decodedLats = new int[2], decodedLngs = new int[2];
+		Polyline.decode(encoded, 5, decodedLats, decodedLngs);
+		assertArrayEquals(new int[] {40123460, -33999990}, decodedLats);
+		assertArrayEquals(new int[] {-73987650, 151000000}, decodedLngs);
+	}
+
+	@Test
+	public void encodesRangeAsItsOwnLine() {
+		StringBuilder out = new StringBuilder();
+		Polyline.encode(EXAMPLE_LATS, EXAMPLE_LNGS, 1, 3, 5, out);
+		int[] lats = {EXAMPLE_LATS[1], EXAMPLE_LATS[2]}, lngs = {EXAMPLE_LNGS[1], EXAMPLE_LNGS[2]};
+		assertEquals(Polyline.encode(lats, lngs, 2, 5), out.toString());
+	}
+
+	@Test
+	public void emptyLine() {
+		assertEquals("", Polyline.encode(new int[0], new int[0], 0, 6));
+		assertEquals(0, Polyline.count(""));
+		assertEquals(0, Polyline.decode("", 6, new int[0], new int[0]));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTruncatedLine() {
+		Polyline.decode(EXAMPLE.substring(0, EXAMPLE.length() - 1), 5, new int[3], new int[3]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnsupportedPrecision() {
+		Polyline.encode(EXAMPLE_LATS, EXAMPLE_LNGS, 3, 7);
+	}
+}
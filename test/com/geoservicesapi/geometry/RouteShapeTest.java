@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RouteShapeTest {
+
+	private static final int[] LATS = {40000000, 40010000, 40010000, 40030000};
+	private static final int[] LNGS = {-74000000, -74000000, -74020000, -74020000};
+
+	private static double segment(int i) {
+		return GreatCircle.distance(LATS[i] / 1e6, LNGS[i] / 1e6, LATS[i + 1] / 1e6, LNGS[i + 1] / 1e6);
+	}
+
+	@Test
+	public void lengthIsSumOfSegments() {
+		RouteShape shape = new RouteShape(LATS, LNGS, 4);
+		assertEquals(4, shape.getPointCount());
+		assertEquals(segment(0) + segment(1) + segment(2), shape.getLength(), 1e-6);
+		assertEquals(segment(0), shape.distanceTo(1), 1e-6);
+	}
+
+	@Test
+	public void pointAtDistanceInterpolatesWithinSegment() {
+		RouteShape shape = new RouteShape(LATS, LNGS, 4);
+		assertArrayEquals(new double[] {40.005, -74.0}, shape.pointAtDistance(segment(0) / 2), 1e-9);
+		assertArrayEquals(new double[] {40.01, -74.01}, shape.pointAtDistance(segment(0) + segment(1) / 2), 1e-9);
+		assertArrayEquals(new double[] {40.01, -74.0}, shape.pointAtDistance(shape.distanceTo(1)), 1e-9);
+	}
+
+	@Test
+	public void pointAtDistanceClampsToLine() {
+		RouteShape shape = new RouteShape(LATS, LNGS, 4);
+		assertArrayEquals(new double[] {40.0, -74.0}, shape.pointAtDistance(-5), 0);
+		assertArrayEquals(new double[] {40.0, -74.0}, shape.pointAtDistance(Double.NaN), 0);
+		assertArrayEquals(new double[] {40.03, -74.02}, shape.pointAtDistance(shape.getLength() + 5), 0);
+		assertArrayEquals(new double[] {40.03, -74.02}, shape.pointAt(2), 0);
+	}
+
+	@Test
+	public void pointAtFraction() {
+		RouteShape shape = new RouteShape(LATS, LNGS, 4);
+		assertArrayEquals(shape.pointAtDistance(shape.getLength() * 0.3), shape.pointAt(0.3), 0);
+	}
+
+	@Test
+	public void evenlySpacedPointsMatchPointAtDistance() {
+		RouteShape shape = new RouteShape(LATS, LNGS, 4);
+		double[][] points = shape.evenlySpaced(7);
+		assertEquals(7, points.length);
+		assertArrayEquals(new double[] {40.0, -74.0}, points[0], 0);
+		assertArrayEquals(new double[] {40.03, -74.02}, points[6], 0);
+		for(int k=1; k<6; k++) {
+			assertArrayEquals(shape.pointAtDistance(k * shape.getLength() / 6), points[k], 1e-9);
+		}
+	}
+
+	@Test
+	public void singlePoint() {
+		RouteShape shape = new RouteShape(new int[] {1000000}, new int[] {2000000}, 1);
+		assertEquals(0, shape.getLength(), 0);
+		assertArrayEquals(new double[] {1.0, 2.0}, shape.pointAt(0.5), 0);
+		double[][] points = shape.evenlySpaced(3);
+		for(double[] point : points) {
+			assertArrayEquals(new double[] {1.0, 2.0}, point, 0);
+		}
+	}
+
+	@Test
+	public void decodesPolyline() {
+		RouteShape shape = RouteShape.decode(Polyline.encode(LATS, LNGS, 4, 6), 6);
+		assertEquals(new RouteShape(LATS, LNGS, 4).getLength(), shape.getLength(), 0);
+		assertEquals(LNGS[3], shape.lng(3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyShape() {
+		new RouteShape(new int[0], new int[0], 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSingleEvenlySpacedPoint() {
+		new RouteShape(LATS, LNGS, 4).evenlySpaced(1);
+	}
+}
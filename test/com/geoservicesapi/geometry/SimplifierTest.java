@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.geometry;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SimplifierTest {
+
+	private static final double METERS_PER_MICRO = Math.toRadians(1e-6) * GreatCircle.EARTH_RADIUS;
+
+	/* A random walk of about ten meters per step, like a route shape. */
+	private static int[][] walk(int count, long seed) {
+		Random random = new Random(seed);
+		int[] lats = new int[count], lngs = new int[count];
+		lats[0] = 40000000;
+		lngs[0] = -74000000;
+		for(int i=1; i<count; i++) {
+			lats[i] = lats[i - 1] + random.nextInt(201) - 50;
+			lngs[i] = lngs[i - 1] + random.nextInt(201) - 100;
+		}
+		return new int[][] {lats, lngs};
+	}
+
+	/* Classic recursive Douglas-Peucker on the same projection as Simplifier. */
+	private static void simplify(double[] x, double[] y, int first, int last, double tolerance, boolean[] kept) {
+		int farthest = -1;
+		double max = -1;
+		for(int i=first+1; i<last; i++) {
+			double d = distance(x[i], y[i], x[first], y[first], x[last], y[last]);
+			if(d > max) {
+				max = d;
+				farthest = i;
+			}
+		}
+		if(farthest >= 0 && max >= tolerance) {
+			kept[farthest] = true;
+			simplify(x, y, first, farthest, tolerance, kept);
+			simplify(x, y, farthest, last, tolerance, kept);
+		}
+	}
+
+	private static double distance(double px, double py, double ax, double ay, double bx, double by) {
+		double dx = bx - ax, dy = by - ay;
+		double lengthSquared = dx * dx + dy * dy;
+		double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSquared));
+		return Math.hypot(px - (ax + t * dx), py - (ay + t * dy));
+	}
+
+	@Test
+	public void ranksMatchDouglasPeuckerAtEveryTolerance() {
+		for(long seed=1; seed<=5; seed++) {
+			int count = 2000;
+			int[][] line = walk(count, seed);
+			int[] lats = line[0], lngs = line[1];
+			double[] ranks = Simplifier.rank(lats, lngs, count);
+
+			long sum = 0;
+			for(int lat : lats) {
+				sum += lat;
+			}
+			double xScale = METERS_PER_MICRO * Math.cos(Math.toRadians(sum / (count * 1e6)));
+			double[] x = new double[count], y = new double[count];
+			for(int i=0; i<count; i++) {
+				x[i] = lngs[i] * xScale;
+				y[i] = lats[i] * METERS_PER_MICRO;
+			}
+
+			int[] keptLats = new int[count], keptLngs = new int[count];
+			for(double tolerance : new double[] {0.5, 2, 5, 20, 100, 1000}) {
+				boolean[] kept = new boolean[count];
+				kept[0] = true;
+				kept[count - 1] = true;
+				simplify(x, y, 0, count - 1, tolerance, kept);
+				int expected = 0;
+				for(int i=0; i<count; i++) {
+					if(kept[i]) {
+						expected++;
+					}
+				}
+				int actual = Simplifier.keep(lats, lngs, ranks, count, tolerance, keptLats, keptLngs);
+				assertEquals(expected, actual);
+				int k = 0;
+				for(int i=0; i<count; i++) {
+					if(kept[i]) {
+						assertEquals(lats[i], keptLats[k]);
+						assertEquals(lngs[i], keptLngs[k]);
+						k++;
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void endsAreAlwaysKept() {
+		int[] lats = {0, 10, 20}, lngs = {0, 0, 0};
+		double[] ranks = Simplifier.rank(lats, lngs, 3);
+		assertEquals(Double.POSITIVE_INFINITY, ranks[0], 0);
+		assertEquals(Double.POSITIVE_INFINITY, ranks[2], 0);
+		// The middle point is on the line between the ends.
+		assertEquals(0, ranks[1], 1e-9);
+		int[] keptLats = new int[3], keptLngs = new int[3];
+		assertEquals(2, Simplifier.keep(lats, lngs, ranks, 3, 1, keptLats, keptLngs));
+		assertArrayEquals(new int[] {0, 20}, Arrays.copyOf(keptLats, 2));
+	}
+
+	@Test
+	public void shortLines() {
+		assertEquals(0, Simplifier.rank(new int[0], new int[0], 0).length);
+		double[] ranks = Simplifier.rank(new int[] {1, 2}, new int[] {3, 4}, 2);
+		assertEquals(Double.POSITIVE_INFINITY, ranks[0], 0);
+		assertEquals(Double.POSITIVE_INFINITY, ranks[1], 0);
+	}
+
+	@Test
+	public void keepMayWriteInPlace() {
+		int[][] line = walk(500, 9);
+		int[] lats = line[0].clone(), lngs = line[1].clone();
+		double[] ranks = Simplifier.rank(lats, lngs, 500);
+		int[] keptLats = new int[500], keptLngs = new int[500];
+		int kept = Simplifier.keep(lats, lngs, ranks, 500, 10, keptLats, keptLngs);
+		assertEquals(kept, Simplifier.keep(lats, lngs, ranks, 500, 10, lats, lngs));
+		assertArrayEquals(Arrays.copyOf(keptLats, kept), Arrays.copyOf(lats, kept));
+		assertArrayEquals(Arrays.copyOf(keptLngs, kept), Arrays.copyOf(lngs, kept));
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void smallValuesHaveTheirOwnBuckets() {
+		for(long value=0; value<64; value++) {
+			assertEquals(value, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value)));
+		}
+	}
+
+	@Test
+	public void bucketsAreOrderedAndWithinThreePercent() {
+		Random random = new Random(42);
+		long previous = -1;
+		int previousIndex = -1;
+		for(int i=0; i<100000; i++) {
+			long value = previous + 1 + (long) (random.nextDouble() * Math.max(1, previous / 8));
+			if(value > 1L << 42) {
+				break;
+			}
+			int index = LatencyHistogram.indexOf(value);
+			long highest = LatencyHistogram.highestValueOf(index);
+			assertTrue(index >= previousIndex);
+			assertTrue(highest >= value);
+			assertTrue(highest - value <= value / 32 + 1);
+			previous = value;
+			previousIndex = index;
+		}
+	}
+
+	@Test
+	public void bucketBoundaries() {
+		for(int exponent=5; exponent<=42; exponent++) {
+			long power = 1L << exponent;
+			assertEquals(LatencyHistogram.indexOf(power - 1) + 1, LatencyHistogram.indexOf(power));
+			assertEquals(power - 1, LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(power - 1)));
+		}
+	}
+
+	@Test
+	public void hugeValuesAreClamped() {
+		int last = LatencyHistogram.indexOf((1L << 43) - 1);
+		assertEquals(last, LatencyHistogram.indexOf(1L << 43));
+		assertEquals(last, LatencyHistogram.indexOf(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void percentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentileMillis(50), 0);
+		for(int millis=1; millis<=100; millis++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMeanMillis(), 1e-9);
+		assertEquals(100, histogram.getMax(TimeUnit.MILLISECONDS));
+		assertEquals(50, histogram.getPercentileMillis(50), 50 * 0.035);
+		assertEquals(99, histogram.getPercentileMillis(99), 99 * 0.035);
+		// The top percentile never exceeds the largest recorded value.
+		assertEquals(100, histogram.getPercentileMillis(100), 0);
+	}
+
+	@Test
+	public void negativeDurationsCountAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getPercentileMillis(100), 0);
+	}
+
+	@Test
+	public void addToMergesCounts() {
+		LatencyHistogram a = new LatencyHistogram(), b = new LatencyHistogram(), total = new LatencyHistogram();
+		a.record(TimeUnit.MILLISECONDS.toNanos(10));
+		b.record(TimeUnit.MILLISECONDS.toNanos(30));
+		b.record(TimeUnit.MILLISECONDS.toNanos(20));
+		a.addTo(total);
+		b.addTo(total);
+		assertEquals(3, total.getCount());
+		assertEquals(20, total.getMeanMillis(), 1e-9);
+		assertEquals(30, total.getMax(TimeUnit.MILLISECONDS));
+		assertEquals(10, total.getPercentileMillis(0), 10 * 0.035);
+	}
+}
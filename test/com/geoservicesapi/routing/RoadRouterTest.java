@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RoadRouterTest {
+
+	private static final int SIZE = 40;
+
+	@ClassRule
+	public static final TemporaryFolder FOLDER = new TemporaryFolder();
+
+	private static RoadGraph graph;
+	private static int island;
+
+	/* A grid of two-way streets with faster avenues, some one-way streets and one unconnected node. */
+	@BeforeClass
+	public static void buildGraph() throws Exception {
+		Random random = new Random(7);
+		RoadGraphBuilder builder = new RoadGraphBuilder();
+		int[][] nodes = new int[SIZE][SIZE];
+		for(int i=0; i<SIZE; i++) {
+			for(int j=0; j<SIZE; j++) {
+				nodes[i][j] = builder.addNode(40 + i * 0.001, -74 + j * 0.001);
+			}
+		}
+		for(int i=0; i<SIZE; i++) {
+			for(int j=0; j<SIZE; j++) {
+				if(j + 1 < SIZE) {
+					double speed = i % 8 == 0 ? 25 : 10;
+					builder.addRoad(nodes[i][j], nodes[i][j + 1], 85, 85 / speed * (0.8 + 0.4 * random.nextDouble()), "Street " + i);
+				}
+				if(i + 1 < SIZE) {
+					if(j % 5 == 2) {
+						builder.addEdge(nodes[i][j], nodes[i + 1][j], 111, 11.1, "Avenue " + j);
+					} else {
+						builder.addRoad(nodes[i][j], nodes[i + 1][j], 111, 111 / (10 * (0.8 + 0.4 * random.nextDouble())), "Avenue " + j);
+					}
+				}
+			}
+		}
+		island = builder.addNode(41, -73);
+		File file = FOLDER.newFile("grid.graph");
+		builder.write(file, 4);
+		graph = RoadGraph.open(file);
+	}
+
+	/* Plain Dijkstra search over the graph. */
+	private static int[] dijkstra(int source) {
+		final int[] time = new int[graph.getNodeCount()];
+		Arrays.fill(time, Integer.MAX_VALUE);
+		time[source] = 0;
+		PriorityQueue<long[]> queue = new PriorityQueue<long[]>(16, new Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return Long.compare(a[0], b[0]);
+			}
+		});
+		queue.add(new long[] {0, source});
+		while(!queue.isEmpty()) {
+			long[] top = queue.poll();
+			int node = (int) top[1];
+			if(top[0] > time[node]) {
+				continue;
+			}
+			for(int edge = graph.firstOut(node), end = graph.firstOut(node + 1); edge < end; edge++) {
+				int next = graph.getHead(edge);
+				int nextTime = time[node] + graph.getTime(edge);
+				if(nextTime < time[next]) {
+					time[next] = nextTime;
+					queue.add(new long[] {nextTime, next});
+				}
+			}
+		}
+		return time;
+	}
+
+	@Test
+	public void fastestPathsMatchDijkstra() {
+		RoadRouter router = new RoadRouter(graph);
+		Random random = new Random(11);
+		for(int q=0; q<50; q++) {
+			int source = random.nextInt(SIZE * SIZE);
+			int[] expected = dijkstra(source);
+			for(int k=0; k<10; k++) {
+				int target = random.nextInt(SIZE * SIZE);
+				RoadPath path = router.route(source, target);
+				assertNotNull(path);
+				assertEquals(expected[target], path.getTime());
+				assertConnected(path);
+			}
+		}
+	}
+
+	/* The edges of a path lead from its source to its target and add up to its length and time. */
+	private static void assertConnected(RoadPath path) {
+		int node = path.getSource();
+		long length = 0, time = 0;
+		for(int edge : path.getEdges()) {
+			assertEquals(node, graph.getTail(edge));
+			node = graph.getHead(edge);
+			length += graph.getLength(edge);
+			time += graph.getTime(edge);
+		}
+		assertEquals(path.getTarget(), node);
+		assertEquals(path.getLength(), length);
+		assertEquals(path.getTime(), time);
+	}
+
+	@Test
+	public void tableMatchesRoutesInBothDirections() {
+		RoadRouter router = new RoadRouter(graph);
+		Random random = new Random(13);
+		int fixed = random.nextInt(SIZE * SIZE);
+		int[] others = new int[20];
+		for(int k=0; k<others.length; k++) {
+			others[k] = random.nextInt(SIZE * SIZE);
+		}
+		int[] times = new int[others.length], lengths = new int[others.length];
+
+		router.table(fixed, others, false, times, lengths);
+		for(int k=0; k<others.length; k++) {
+			RoadPath path = router.route(fixed, others[k]);
+			assertEquals(path.getTime(), times[k]);
+		}
+		router.table(fixed, others, true, times, lengths);
+		for(int k=0; k<others.length; k++) {
+			RoadPath path = router.route(others[k], fixed);
+			assertEquals(path.getTime(), times[k]);
+		}
+	}
+
+	@Test
+	public void unreachableTargets() {
+		RoadRouter router = new RoadRouter(graph);
+		assertNull(router.route(0, island));
+		int[] times = new int[2], lengths = new int[2];
+		router.table(0, new int[] {island, 0}, false, times, lengths);
+		assertEquals(-1, times[0]);
+		assertEquals(-1, lengths[0]);
+		assertEquals(0, times[1]);
+	}
+
+	@Test
+	public void nearestNode() {
+		RoadRouter router = new RoadRouter(graph);
+		RoadPath path = router.route(40.0001, -73.9999, 40.0051, -73.9949);
+		assertEquals(0, path.getSource());
+		assertEquals(5 * SIZE + 5, path.getTarget());
+	}
+
+	@Test
+	public void concurrentQueriesShareFewSearchStates() throws Exception {
+		final RoadRouter shared = new RoadRouter(graph, 2);
+		final RoadRouter single = new RoadRouter(graph, 1);
+		final Random random = new Random(17);
+		final int[][] queries = new int[400][2];
+		for(int[] query : queries) {
+			query[0] = random.nextInt(SIZE * SIZE);
+			query[1] = random.nextInt(SIZE * SIZE);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Long>> results = new ArrayList<Future<Long>>();
+			for(final int[] query : queries) {
+				results.add(executor.submit(new Callable<Long>() {
+					public Long call() {
+						return shared.route(query[0], query[1]).getTime();
+					}
+				}));
+			}
+			for(int q=0; q<queries.length; q++) {
+				assertEquals(single.route(queries[q][0], queries[q][1]).getTime(), results.get(q).get().longValue());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyPool() {
+		new RoadRouter(graph, 0);
+	}
+}
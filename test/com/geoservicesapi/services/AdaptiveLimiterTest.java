@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AdaptiveLimiterTest {
+
+	private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+	private static final long NORMAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static void call(AdaptiveLimiter limiter, long rttNanos, boolean congested) {
+		assertTrue(limiter.tryAcquire());
+		limiter.release(rttNanos, congested);
+	}
+
+	@Test
+	public void abandonedCallDoesNotSetBaseline() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter("test");
+		// A call cancelled after a millisecond only returns its slot.
+		assertTrue(limiter.tryAcquire());
+		limiter.release();
+		assertEquals(0, limiter.getInFlight());
+		for(int i=0; i<40; i++) {
+			call(limiter, NORMAL, false);
+		}
+		assertEquals(20, limiter.getLimit());
+	}
+
+	@Test
+	public void slowResponseAfterFastBaselineIsCongestion() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter("test");
+		call(limiter, FAST, false);
+		call(limiter, NORMAL, false);
+		assertEquals(18, limiter.getLimit());
+	}
+
+	@Test
+	public void congestionBacksOffOncePerRoundTrip() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter("test");
+		call(limiter, NORMAL, true);
+		assertEquals(18, limiter.getLimit());
+		call(limiter, NORMAL, true);
+		assertEquals(18, limiter.getLimit());
+	}
+
+	@Test
+	public void backsOffToMinimum() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter("test");
+		limiter.setLimits(2, 200);
+		// Round trips of a nanosecond let every call back off.
+		for(int i=0; i<200; i++) {
+			call(limiter, 1, true);
+		}
+		assertEquals(2, limiter.getLimit());
+	}
+
+	@Test
+	public void growsWhileBusy() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter("test");
+		for(int i=0; i<10; i++) {
+			assertTrue(limiter.tryAcquire());
+		}
+		for(int i=0; i<100; i++) {
+			call(limiter, NORMAL, false);
+		}
+		assertTrue(limiter.getLimit() > 20);
+	}
+
+	@Test
+	public void rejectsAtLimit() {
+		AdaptiveLimiter limiter = new AdaptiveLimiter("test");
+		limiter.setLimits(2, 2);
+		assertTrue(limiter.tryAcquire());
+		assertTrue(limiter.tryAcquire());
+		assertFalse(limiter.tryAcquire());
+		assertEquals(1, limiter.getRejectedCount());
+		limiter.release();
+		assertTrue(limiter.tryAcquire());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsInvertedLimits() {
+		new AdaptiveLimiter("test").setLimits(10, 5);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.geoservicesapi.cache.CacheBudget;
+import com.geoservicesapi.cache.Loader;
+import com.geoservicesapi.cache.ServiceCache;
+import com.geoservicesapi.cache.Weigher;
+
+public class CachedLoadsTest {
+
+	private static final Weigher<String, String> FIXED = new Weigher<String, String>() {
+		public long weigh(String key, String value) {
+			return 16;
+		}
+	};
+
+	/* A loader that waits until released, checking the options of its own call. */
+	private static Loader<String, String> blocking(final String value, final CallOptions options,
+			final CountDownLatch started, final CountDownLatch release) {
+		return new Loader<String, String>() {
+			public String load(String key) throws Exception {
+				started.countDown();
+				while(!release.await(1, TimeUnit.MILLISECONDS)) {
+					options.check();
+				}
+				return value;
+			}
+		};
+	}
+
+	private static Loader<String, String> constant(final String value) {
+		return new Loader<String, String>() {
+			public String load(String key) {
+				return value;
+			}
+		};
+	}
+
+	@Test
+	public void waiterReloadsWhenFirstCallerIsCancelled() throws Exception {
+		final ServiceCache<String, String> cache = new ServiceCache<String, String>("test-cancelled", new CacheBudget(1 << 20), FIXED, 0);
+		CancellationToken token = new CancellationToken();
+		final CallOptions first = CallOptions.DEFAULT.withCancellation(token);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> firstResult = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return CachedLoads.get(cache, "key", blocking("first", first, started, release), first);
+				}
+			});
+			started.await();
+			final CallOptions second = CallOptions.DEFAULT.withTimeout(5, TimeUnit.SECONDS);
+			Future<String> secondResult = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return CachedLoads.get(cache, "key", constant("second"), second);
+				}
+			});
+			while(cache.getStats().getCoalescedWaitCount() == 0) {
+				Thread.sleep(1);
+			}
+			token.cancel();
+
+			assertEquals("second", secondResult.get(5, TimeUnit.SECONDS));
+			assertEquals("second", cache.getIfPresent("key"));
+			try {
+				firstResult.get(5, TimeUnit.SECONDS);
+				fail("Expected the first call to be cancelled");
+			} catch(ExecutionException e) {
+				assertEquals(CallAbortedException.class, e.getCause().getClass());
+			}
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void interactiveCallDoesNotWaitForBulkLoad() throws Exception {
+		final ServiceCache<String, String> cache = new ServiceCache<String, String>("test-bulk", new CacheBudget(1 << 20), FIXED, 0);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final CallOptions bulk = CallOptions.bulk();
+			Future<String> bulkResult = executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					return CachedLoads.get(cache, "key", blocking("bulk", bulk, started, release), bulk);
+				}
+			});
+			started.await();
+			assertEquals("interactive", CachedLoads.get(cache, "key", constant("interactive"), CallOptions.interactive()));
+			release.countDown();
+			assertEquals("bulk", bulkResult.get(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+}
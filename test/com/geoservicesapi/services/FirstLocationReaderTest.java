@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.junit.Test;
+
+public class FirstLocationReaderTest {
+
+	private static final String OK = "\"info\":{\"statuscode\":0,\"messages\":[]}";
+
+	private static JSONObject read(String response) throws UpstreamStatusException {
+		return FirstLocationReader.read(new JSONTokener(response));
+	}
+
+	@Test
+	public void readsFirstLocationAfterInfo() throws Exception {
+		JSONObject location = read("{" + OK + ",\"options\":{\"maxResults\":-1,\"thumbMaps\":true},"
+				+ "\"results\":[{\"providedLocation\":{\"location\":\"Springfield\"},"
+				+ "\"locations\":[{\"adminArea5\":\"Springfield\",\"latLng\":{\"lat\":39.8,\"lng\":-89.6}},"
+				+ "{\"adminArea5\":\"Springfield\",\"latLng\":{\"lat\":42.1,\"lng\":-72.5}}]}]}");
+		assertEquals(39.8, location.getJSONObject("latLng").getDouble("lat"), 0);
+	}
+
+	@Test
+	public void stopsReadingAfterFirstLocation() throws Exception {
+		// Anything after the first location is never read, even if it is cut off.
+		JSONObject location = read("{" + OK + ",\"results\":[{\"locations\":[{\"adminArea5\":\"Salem\"},{\"adminAr");
+		assertEquals("Salem", location.getString("adminArea5"));
+	}
+
+	@Test
+	public void readsInfoAfterResults() throws Exception {
+		JSONObject location = read("{\"results\":[{\"locations\":[{\"adminArea5\":\"Salem\"},{\"adminArea5\":\"Portland\"}],"
+				+ "\"providedLocation\":{}},{\"locations\":[{\"adminArea5\":\"Eugene\"}]}]," + OK + "}");
+		assertEquals("Salem", location.getString("adminArea5"));
+	}
+
+	@Test
+	public void skipsEscapedStrings() throws Exception {
+		JSONObject location = read("{\"copyright\":{\"text\":\"\\\"}{][\\\\\"}," + OK
+				+ ",\"results\":[{\"providedLocation\":{\"location\":\"a \\\"]}\\\" b\"},"
+				+ "\"locations\":[{\"street\":\"1 \\\"Main\\\" St\"}]}]}");
+		assertEquals("1 \"Main\" St", location.getString("street"));
+	}
+
+	@Test
+	public void noResultsOrLocations() throws Exception {
+		assertNull(read("{" + OK + ",\"results\":[]}"));
+		assertNull(read("{" + OK + ",\"results\":[{\"locations\":[]}]}"));
+		assertNull(read("{\"results\":[{\"locations\":[],\"providedLocation\":{}}]," + OK + "}"));
+		assertNull(read("{" + OK + "}"));
+	}
+
+	@Test
+	public void rejectsErrorStatus() throws Exception {
+		try {
+			read("{\"info\":{\"statuscode\":403,\"messages\":[\"Bad key\"]},\"results\":[]}");
+			fail();
+		} catch(UpstreamStatusException e) {
+			assertEquals(403, e.getStatusCode());
+		}
+	}
+
+	@Test
+	public void checksStatusBeforeReturningEarlierResults() throws Exception {
+		try {
+			read("{\"results\":[{\"locations\":[{\"adminArea5\":\"Salem\"}]}],\"info\":{\"statuscode\":500}}");
+			fail();
+		} catch(UpstreamStatusException e) {
+			assertEquals(500, e.getStatusCode());
+		}
+	}
+
+	@Test(expected = JSONException.class)
+	public void rejectsMissingInfo() throws Exception {
+		read("{\"results\":[{\"locations\":[{\"adminArea5\":\"Salem\"}]}]}");
+	}
+
+	@Test(expected = JSONException.class)
+	public void rejectsMalformedResponse() throws Exception {
+		read("[" + OK + "]");
+	}
+}
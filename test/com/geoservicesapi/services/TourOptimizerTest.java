@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 Saurabh Rane
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geoservicesapi.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TourOptimizerTest {
+
+	private static long in(long seconds) {
+		return System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+	}
+
+	private static double[][] randomTimes(int n, long seed) {
+		Random random = new Random(seed);
+		double[][] times = new double[n][n];
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++) {
+				times[i][j] = i == j ? 0 : 1 + random.nextInt(100);
+			}
+		}
+		return times;
+	}
+
+	/* Travel times between points evenly spaced on a circle, given in shuffled order. */
+	private static double[][] circle(int n, int[] positions) {
+		double[][] times = new double[n][n];
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++) {
+				double a = 2 * Math.PI * positions[i] / n, b = 2 * Math.PI * positions[j] / n;
+				times[i][j] = Math.hypot(Math.cos(a) - Math.cos(b), Math.sin(a) - Math.sin(b));
+			}
+		}
+		return times;
+	}
+
+	/* Cheapest tour by trying every order of the stops after the first. */
+	private static double bruteForce(TourOptimizer optimizer, int[] order, int k) {
+		if(k == order.length) {
+			return optimizer.cost(order);
+		}
+		double best = Double.POSITIVE_INFINITY;
+		for(int i=k; i<order.length; i++) {
+			int swap = order[k];
+			order[k] = order[i];
+			order[i] = swap;
+			best = Math.min(best, bruteForce(optimizer, order, k + 1));
+			order[i] = order[k];
+			order[k] = swap;
+		}
+		return best;
+	}
+
+	private static void assertTour(int n, int[] tour) {
+		assertEquals(n, tour.length);
+		assertEquals(0, tour[0]);
+		boolean[] seen = new boolean[n];
+		for(int stop : tour) {
+			assertTrue(!seen[stop]);
+			seen[stop] = true;
+		}
+	}
+
+	@Test
+	public void exactSolutionIsOptimal() {
+		for(long seed=1; seed<=5; seed++) {
+			for(boolean roundTrip : new boolean[] {true, false}) {
+				double[][] times = randomTimes(8, seed);
+				TourOptimizer optimizer = new TourOptimizer(times, roundTrip, in(10), CallOptions.DEFAULT);
+				int[] tour = optimizer.solve();
+				assertTour(8, tour);
+				int[] order = {0, 1, 2, 3, 4, 5, 6, 7};
+				assertEquals(bruteForce(optimizer, order, 1), optimizer.cost(tour), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void singleStop() {
+		int[] tour = new TourOptimizer(new double[][] {{0}}, true, in(10), CallOptions.DEFAULT).solve();
+		assertEquals(1, tour.length);
+		assertEquals(0, tour[0]);
+	}
+
+	@Test
+	public void localSearchFindsTheCircle() {
+		int n = 40;
+		int[] positions = new int[n];
+		for(int i=0; i<n; i++) {
+			positions[i] = i;
+		}
+		Random random = new Random(3);
+		for(int i=n-1; i>1; i--) {
+			int j = 1 + random.nextInt(i);
+			int swap = positions[i];
+			positions[i] = positions[j];
+			positions[j] = swap;
+		}
+		double[][] times = circle(n, positions);
+		TourOptimizer optimizer = new TourOptimizer(times, true, in(10), CallOptions.DEFAULT);
+		int[] tour = optimizer.solve();
+		assertTour(n, tour);
+		assertEquals(n * 2 * Math.sin(Math.PI / n), optimizer.cost(tour), 1e-6);
+	}
+
+	@Test
+	public void openTourEndsAtTheFarEnd() {
+		int n = 20;
+		double[][] times = new double[n][n];
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++) {
+				// Stops on a line in index order, the first at one end.
+				times[i][j] = Math.abs(i - j);
+			}
+		}
+		TourOptimizer optimizer = new TourOptimizer(times, false, in(10), CallOptions.DEFAULT);
+		int[] tour = optimizer.solve();
+		assertTour(n, tour);
+		assertEquals(n - 1, optimizer.cost(tour), 1e-9);
+	}
+
+	@Test
+	public void expiredSearchStillReturnsATour() {
+		int n = 30;
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		int[] tour = new TourOptimizer(randomTimes(n, 9), true, in(10), CallOptions.DEFAULT.withCancellation(token)).solve();
+		assertTour(n, tour);
+		tour = new TourOptimizer(randomTimes(n, 9), true, System.nanoTime(), CallOptions.DEFAULT).solve();
+		assertTour(n, tour);
+	}
+
+	@Test
+	public void costIncludesTheReturnOnRoundTrips() {
+		double[][] times = {{0, 1, 5}, {7, 0, 2}, {3, 9, 0}};
+		assertEquals(6, new TourOptimizer(times, true, in(10), CallOptions.DEFAULT).cost(new int[] {0, 1, 2}), 0);
+		assertEquals(3, new TourOptimizer(times, false, in(10), CallOptions.DEFAULT).cost(new int[] {0, 1, 2}), 0);
+	}
+
+	@Test
+	public void doubleBridgeSwapsMiddleParts() {
+		int[] tour = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+		TourOptimizer.doubleBridge(tour, 2, 4, 7, new int[9]);
+		// A B C D becomes A C B D.
+		assertArrayEquals(new int[] {0, 1, 4, 5, 6, 2, 3, 7, 8}, tour);
+	}
+}